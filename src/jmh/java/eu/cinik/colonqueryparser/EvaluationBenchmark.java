@@ -0,0 +1,81 @@
+package eu.cinik.colonqueryparser;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringReader;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures evaluation of a parsed query against records in the style of {@code Example.example2}:
+ * the tree is converted with {@link Parser#toStack(Parser.Node)} and evaluated with a stack of booleans.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark {
+
+    @Param({"1", "10"})
+    public int terms;
+
+    private Parser.Node node;
+    private List<Map<String, String>> records;
+    private List<String> texts;
+    private int idx;
+
+    @Setup
+    public void setup() {
+        QueryGenerator generator = new QueryGenerator(7);
+        try (StringReader r = new StringReader(generator.query(terms))) {
+            node = new Parser(r).statement();
+        }
+        records = new ArrayList<>();
+        texts = new ArrayList<>();
+        for (int i = 0; i < 1024; i++) {
+            records.add(generator.record());
+            texts.add(generator.text(8));
+        }
+    }
+
+    @Benchmark
+    public Deque<Boolean> stackEvaluation() {
+        int i = idx++ & 1023;
+        return evaluate(node, records.get(i), texts.get(i));
+    }
+
+    static Deque<Boolean> evaluate(Parser.Node root, Map<String, String> dataToMatch, String someTextToMatch) {
+        Deque<Boolean> calcStack = new LinkedList<>();
+        Deque<Parser.Node> stack = Parser.toStack(root);
+        while (!stack.isEmpty()) {
+            Parser.Node node = stack.pop();
+            if (node instanceof Parser.Text) {
+                calcStack.push(someTextToMatch.contains(((Parser.Text) node).getText()));
+            } else if (node instanceof Parser.KeyValue) {
+                String key = ((Parser.KeyValue) node).getKey();
+                String value = ((Parser.KeyValue) node).getValue();
+                boolean neg = ((Parser.KeyValue) node).isNeg();
+                calcStack.push(neg != Objects.equals(dataToMatch.get(key), value));
+            } else if (node instanceof Parser.AND) {
+                Boolean left = calcStack.pop();
+                Boolean right = calcStack.pop();
+                calcStack.push(left && right);
+            } else if (node instanceof Parser.OR) {
+                Boolean left = calcStack.pop();
+                Boolean right = calcStack.pop();
+                calcStack.push(left || right);
+            } else if (node instanceof Parser.BinaryComparision) {
+                // operands were already pushed as text terms, replace them with the comparison result
+                Parser.BinaryComparision bc = (Parser.BinaryComparision) node;
+                calcStack.pop();
+                calcStack.pop();
+                calcStack.push(bc.getLeft() instanceof Parser.Text && bc.getRight() instanceof Parser.Text
+                        && Evaluator.compare(dataToMatch.get(((Parser.Text) bc.getLeft()).getText()), bc.getOperator(),
+                        ((Parser.Text) bc.getRight()).getText()));
+            }
+        }
+        return calcStack;
+    }
+}
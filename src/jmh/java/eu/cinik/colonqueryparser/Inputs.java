@@ -0,0 +1,49 @@
+package eu.cinik.colonqueryparser;
+
+/**
+ * Representative benchmark inputs
+ */
+public enum Inputs {
+    /**
+     * Short query as typed by users
+     */
+    SHORT {
+        @Override
+        String query() {
+            return "tenant:42 -status:deleted timeout AND (region:eu OR region:us)";
+        }
+    },
+    /**
+     * Long free text without any key values
+     */
+    LONG_TEXT {
+        @Override
+        String query() {
+            return new QueryGenerator(1).text(2_000);
+        }
+    },
+    /**
+     * Quoted strings with escaped quotes inside
+     */
+    QUOTED {
+        @Override
+        String query() {
+            StringBuilder b = new StringBuilder();
+            for (int i = 0; i < 200; i++) {
+                b.append("\"quoted \\\"phrase\\\" number ").append(i).append("\" ");
+            }
+            return b.toString();
+        }
+    },
+    /**
+     * Generated query with 100k top level terms
+     */
+    GENERATED_100K {
+        @Override
+        String query() {
+            return new QueryGenerator(42).query(100_000);
+        }
+    };
+
+    abstract String query();
+}
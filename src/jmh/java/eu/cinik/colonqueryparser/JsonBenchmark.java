@@ -0,0 +1,64 @@
+package eu.cinik.colonqueryparser;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link JsonMatcher} over raw JSON with the full parse of every record by {@link JsonMatcher#fields(byte[])}
+ * followed by {@link Evaluator}. Records have padding fields and a nested object the query doesn't reference.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    @Param({"tenant:42 -status:deleted", "status:open level>3", "timeout OR region:eu"})
+    public String query;
+
+    private Evaluator evaluator;
+    private JsonMatcher matcher;
+    private List<byte[]> records;
+    private int idx;
+
+    @Setup
+    public void setup() {
+        Parser.Node node;
+        try (StringReader r = new StringReader(query)) {
+            node = new Parser(r).statement();
+        }
+        evaluator = new Evaluator(node);
+        matcher = new JsonMatcher(node, "message");
+        QueryGenerator generator = new QueryGenerator(7);
+        records = new ArrayList<>();
+        for (int i = 0; i < 1024; i++) {
+            StringBuilder json = new StringBuilder("{");
+            for (Map.Entry<String, String> e : generator.record().entrySet()) {
+                json.append('"').append(e.getKey()).append("\":\"").append(e.getValue()).append("\",");
+            }
+            json.append("\"tenant\":").append(i % 50).append(",\"status\":\"").append(i % 3 == 0 ? "open" : "deleted")
+                    .append("\",\"context\":{\"host\":\"node-").append(i).append("\",\"tags\":[\"a\",\"b\",{\"c\":1}]},")
+                    .append("\"message\":\"").append(generator.text(20)).append("\"}");
+            records.add(json.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Benchmark
+    public boolean fullParse() {
+        Map<String, String> data = JsonMatcher.fields(records.get(idx++ & 1023));
+        return evaluator.matches(data, data.get("message"));
+    }
+
+    @Benchmark
+    public boolean rawBytes() {
+        return matcher.matches(records.get(idx++ & 1023));
+    }
+}
@@ -0,0 +1,70 @@
+package eu.cinik.colonqueryparser;
+
+/**
+ * <p>High dynamic range histogram of latencies in nanoseconds with a relative error below 1/64 (1.6%) over the whole
+ * range of long values, in the spirit of HdrHistogram: every power of two range is split into 64 linear sub-buckets.</p>
+ *
+ * <p>Coordinated omission is corrected by {@link LoadTest}, which measures latency from the scheduled start of an
+ * operation. Not thread safe, every load test thread records into its own histogram and they are merged with
+ * {@link #add(LatencyHistogram)}.</p>
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+
+    private final long[] counts = new long[SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * HALF];
+    private long total;
+    private long max;
+
+    void record(long value) {
+        if (value < 0) value = 0;
+        counts[index(value)]++;
+        total++;
+        max = Math.max(max, value);
+    }
+
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) counts[i] += other.counts[i];
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    long count() {
+        return total;
+    }
+
+    long max() {
+        return max;
+    }
+
+    /**
+     * @param percentile percentile between 0 and 100
+     * @return upper bound of the bucket holding the percentile, at most the maximum recorded value
+     */
+    long percentile(double percentile) {
+        if (total == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) return Math.min(max, upperBound(i));
+        }
+        return max;
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - SUB_BUCKET_BITS + 1;
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) ((value >>> shift) - HALF);
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int k = index - SUB_BUCKETS;
+        int shift = k / HALF + 1;
+        long m = k % HALF + HALF;
+        return ((m + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,41 @@
+package eu.cinik.colonqueryparser;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Lexer#next(java.io.Reader)} over a whole input until EOF token
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerBenchmark {
+
+    @Param
+    public Inputs input;
+
+    private String query;
+
+    @Setup
+    public void setup() {
+        query = input.query();
+    }
+
+    @Benchmark
+    public void next(Blackhole bh) {
+        Lexer lexer = new Lexer();
+        try (StringReader r = new StringReader(query)) {
+            Token t;
+            do {
+                t = lexer.next(r);
+                bh.consume(t);
+            } while (t.getTokenType() != TokenType.EOF);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package eu.cinik.colonqueryparser;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.StringReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>Load generator which parses, compiles and evaluates synthetic queries (see {@link QueryGenerator}) from several
+ * threads at a fixed total rate and reports latency percentiles, GC pauses and allocation rate.</p>
+ *
+ * <p>Operations are scheduled at fixed intervals and response time is measured from the scheduled start, so an
+ * operation delayed by a slow predecessor or a GC pause is accounted for (coordinated omission correction). Service
+ * time, measured from the actual start, is reported alongside. Achieved throughput and allocation rate are computed
+ * over the time until the last operation scheduled in the measured window finished, which exceeds the window when the
+ * threads can't keep up with the target rate; the lag is reported then.</p>
+ *
+ * <p>Run with {@code mvn -P jmh test-compile exec:exec@load -Dload.args="--threads 8 --rate 50000 --duration 60"}.
+ * Options:</p>
+ * <ul>
+ * <li>{@code --threads} number of threads, default 4</li>
+ * <li>{@code --rate} total target operations per second, default 10000</li>
+ * <li>{@code --duration} measured seconds, default 30</li>
+ * <li>{@code --warmup} seconds before measuring, default 10</li>
+ * <li>{@code --records} records evaluated per parsed query, default 16</li>
+ * <li>{@code --seed} seed of generated queries and records, default 43</li>
+ * </ul>
+ */
+public class LoadTest {
+    private static final int POOL = 4096;
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final int threads;
+    private final double rate;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final int recordsPerQuery;
+    private final long seed;
+
+    LoadTest(Map<String, String> options) {
+        this.threads = Integer.parseInt(options.getOrDefault("threads", "4"));
+        this.rate = Double.parseDouble(options.getOrDefault("rate", "10000"));
+        this.durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "30")));
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("warmup", "10")));
+        this.recordsPerQuery = Integer.parseInt(options.getOrDefault("records", "16"));
+        this.seed = Long.parseLong(options.getOrDefault("seed", "43"));
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) throw new IllegalArgumentException("Unknown option " + args[i]);
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        new LoadTest(options).run();
+    }
+
+    /**
+     * Queries and records of one thread, generated up front so generation is not measured
+     */
+    private static final class Workload {
+        final String[] queries = new String[POOL];
+        final List<Map<String, String>> records = new ArrayList<>(POOL);
+        final List<String> texts = new ArrayList<>(POOL);
+
+        Workload(long seed) {
+            QueryGenerator generator = new QueryGenerator(seed);
+            for (int i = 0; i < POOL; i++) {
+                queries[i] = generator.userQuery();
+                records.add(generator.record());
+                texts.add(generator.text(12));
+            }
+        }
+    }
+
+    private final class Worker extends Thread {
+        final Workload workload;
+        final LatencyHistogram response = new LatencyHistogram();
+        final LatencyHistogram service = new LatencyHistogram();
+        final CountDownLatch done;
+        final long start;
+        long allocated;
+        long operations;
+        /**
+         * time the last measured operation finished, it's after the end of the window when the worker fell behind
+         */
+        long lastFinished;
+        long matches;
+
+        Worker(int id, long start, CountDownLatch done) {
+            super("load-" + id);
+            setDaemon(true);
+            this.workload = new Workload(seed + id);
+            this.start = start;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long interval = (long) (TimeUnit.SECONDS.toNanos(1) * threads / rate);
+            // spread threads over the interval so they don't fire together
+            long intended = start + interval * Long.parseLong(getName().substring(5)) / threads;
+            long measureFrom = start + warmupNanos;
+            long end = measureFrom + durationNanos;
+            long allocatedAtStart = -1;
+            int i = 0;
+            while (intended < end) {
+                long now = System.nanoTime();
+                if (now < intended) {
+                    // parking overshoots by tens of microseconds, yield for the last part of the wait
+                    if (intended - now > SPIN_NANOS) LockSupport.parkNanos(intended - now - SPIN_NANOS);
+                    else Thread.yield();
+                    continue;
+                }
+                if (allocatedAtStart < 0 && intended >= measureFrom) {
+                    allocatedAtStart = bean.getThreadAllocatedBytes(getId());
+                }
+                long actual = System.nanoTime();
+                operation(i++);
+                long finished = System.nanoTime();
+                if (intended >= measureFrom) {
+                    response.record(finished - intended);
+                    service.record(finished - actual);
+                    operations++;
+                    lastFinished = finished;
+                }
+                intended += interval;
+            }
+            allocated = allocatedAtStart < 0 ? 0 : bean.getThreadAllocatedBytes(getId()) - allocatedAtStart;
+            done.countDown();
+        }
+
+        private void operation(int i) {
+            Parser.Node node;
+            try (StringReader r = new StringReader(workload.queries[i & (POOL - 1)])) {
+                node = new Parser(r).statement();
+            }
+            Evaluator evaluator = new Evaluator(node);
+            for (int j = 0; j < recordsPerQuery; j++) {
+                int idx = (i + j) & (POOL - 1);
+                if (evaluator.matches(workload.records.get(idx), workload.texts.get(idx))) matches++;
+            }
+        }
+    }
+
+    void run() throws InterruptedException {
+        LatencyHistogram pauses = new LatencyHistogram();
+        AtomicBoolean measuring = new AtomicBoolean();
+        List<NotificationEmitter> emitters = new ArrayList<>();
+        NotificationListener listener = (notification, handback) -> {
+            if (!measuring.get() || !GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            synchronized (pauses) {
+                pauses.record(TimeUnit.MILLISECONDS.toNanos(info.getGcInfo().getDuration()));
+            }
+        };
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                ((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+                emitters.add((NotificationEmitter) gc);
+            }
+        }
+        System.out.printf("threads %d, target rate %.0f ops/s, warmup %d s, duration %d s, %d records per query%n",
+                threads, rate, TimeUnit.NANOSECONDS.toSeconds(warmupNanos), TimeUnit.NANOSECONDS.toSeconds(durationNanos),
+                recordsPerQuery);
+        CountDownLatch done = new CountDownLatch(threads);
+        List<Worker> workers = new ArrayList<>();
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100) * threads;
+        for (int t = 0; t < threads; t++) workers.add(new Worker(t, start, done));
+        long gcCountBefore = 0, gcTimeBefore = 0;
+        for (Worker w : workers) w.start();
+        LockSupport.parkNanos(start + warmupNanos - System.nanoTime());
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCountBefore += gc.getCollectionCount();
+            gcTimeBefore += gc.getCollectionTime();
+        }
+        measuring.set(true);
+        done.await();
+        measuring.set(false);
+        long gcCount = -gcCountBefore, gcTime = -gcTimeBefore;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += gc.getCollectionCount();
+            gcTime += gc.getCollectionTime();
+        }
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(listener);
+            } catch (javax.management.ListenerNotFoundException ignored) {
+            }
+        }
+        LatencyHistogram response = new LatencyHistogram();
+        LatencyHistogram service = new LatencyHistogram();
+        long allocated = 0;
+        long operations = 0;
+        long measureFrom = start + warmupNanos;
+        long finished = measureFrom + durationNanos;
+        for (Worker w : workers) {
+            response.add(w.response);
+            service.add(w.service);
+            allocated += w.allocated;
+            operations += w.operations;
+            if (w.operations > 0) finished = Math.max(finished, w.lastFinished);
+        }
+        // operations scheduled in the window may finish after it, rates are over the real elapsed time
+        double seconds = (finished - measureFrom) / 1e9;
+        System.out.printf("achieved %.0f ops/s (%d operations in %.2f s)%n", operations / seconds, operations, seconds);
+        long lag = finished - measureFrom - durationNanos;
+        if (lag > 0) {
+            System.out.printf("behind schedule: last operation finished %.1f ms after the window, target rate not sustained%n",
+                    lag / 1e6);
+        }
+        report("response time (corrected)", response);
+        report("service time", service);
+        System.out.printf("gc: %d collections, %d ms total, max pause %.1f ms%n", gcCount, gcTime,
+                pauses.max() / 1e6);
+        System.out.printf("allocation rate: %.1f MB/s, %d bytes per operation%n",
+                allocated / seconds / (1 << 20), operations == 0 ? 0 : allocated / operations);
+    }
+
+    private static void report(String name, LatencyHistogram h) {
+        System.out.printf("%-26s p50 %8.1f us  p90 %8.1f us  p99 %8.1f us  p99.9 %8.1f us  p99.99 %8.1f us  max %8.1f us%n",
+                name, h.percentile(50) / 1e3, h.percentile(90) / 1e3, h.percentile(99) / 1e3, h.percentile(99.9) / 1e3,
+                h.percentile(99.99) / 1e3, h.max() / 1e3);
+    }
+}
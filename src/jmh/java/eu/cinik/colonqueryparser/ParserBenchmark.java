@@ -0,0 +1,51 @@
+package eu.cinik.colonqueryparser;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringReader;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Parser#statement()} and conversions of parsed tree
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param
+    public Inputs input;
+
+    private String query;
+    private Parser.Node node;
+
+    @Setup
+    public void setup() {
+        query = input.query();
+        try (StringReader r = new StringReader(query)) {
+            node = new Parser(r).statement();
+        }
+    }
+
+    @Benchmark
+    public Parser.Node statement() {
+        try (StringReader r = new StringReader(query)) {
+            return new Parser(r).statement();
+        }
+    }
+
+    @Benchmark
+    public Deque<Parser.Node> toStack() {
+        return Parser.toStack(node);
+    }
+
+    @Benchmark
+    public List<String> toPolishNotation() {
+        return Parser.toPolishNotation(node);
+    }
+}
@@ -0,0 +1,253 @@
+package eu.cinik.colonqueryparser;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>Evaluator which reorders operands of {@link Parser.AND}/{@link Parser.OR}/{@link Parser.Statement} at runtime
+ * according to observed selectivity and cost, for standing queries evaluated against many records.</p>
+ *
+ * <p>One in {@code sampleRate} evaluations of a junction evaluates all its operands without short-circuiting and records
+ * their pass rate and time. After every {@code reorderInterval} samples a new evaluation plan is computed which puts
+ * first the operands most likely to short-circuit per unit of cost: cost / P(false) for AND, cost / P(true) for OR.
+ * Counters are halved on every reorder, so the plan follows changing data. Plans are immutable and published through a
+ * volatile field, concurrent evaluations use either the previous or the new plan, never a mix of them.</p>
+ *
+ * <p>Semantics are the same as of {@link Evaluator}. Sampled evaluations count all operands towards
+ * {@link ParserLimits#getMaxLeafEvaluations()}.</p>
+ */
+public class AdaptiveEvaluator {
+    /**
+     * Default number of evaluations per sample
+     */
+    public static final int DEFAULT_SAMPLE_RATE = 64;
+    /**
+     * Default number of samples between reorders
+     */
+    public static final int DEFAULT_REORDER_INTERVAL = 256;
+    /**
+     * Minimal cost of an operand in nanoseconds, so operands too fast for the clock are still ranked by selectivity
+     */
+    private static final double MIN_COST = 1;
+
+    private final Evaluator.Condition condition;
+    private final ParserLimits limits;
+    private final int wildcardSlots;
+    private final int sampleRate;
+    private final int reorderInterval;
+    private final LongSupplier clock;
+
+    /**
+     * Creates new adaptive evaluator without limits and with default sampling
+     *
+     * @param node parsed query, may be null
+     */
+    public AdaptiveEvaluator(Parser.Node node) {
+        this(node, ParserLimits.UNLIMITED, DEFAULT_SAMPLE_RATE, DEFAULT_REORDER_INTERVAL);
+    }
+
+    /**
+     * Creates new adaptive evaluator
+     *
+     * @param node            parsed query, may be null
+     * @param limits          limits to enforce
+     * @param sampleRate      number of evaluations of a junction per sample, 1 samples every evaluation
+     * @param reorderInterval number of samples of a junction between reorders
+     */
+    public AdaptiveEvaluator(Parser.Node node, ParserLimits limits, int sampleRate, int reorderInterval) {
+        this(node, limits, sampleRate, reorderInterval, System::nanoTime);
+    }
+
+    /**
+     * Creates new adaptive evaluator measuring cost of operands with a given clock
+     *
+     * @param clock source of nanoseconds, {@link System#nanoTime()} by default
+     */
+    AdaptiveEvaluator(Parser.Node node, ParserLimits limits, int sampleRate, int reorderInterval, LongSupplier clock) {
+        if (sampleRate <= 0 || reorderInterval <= 0) {
+            throw new IllegalArgumentException("sampleRate and reorderInterval must be positive");
+        }
+        this.limits = limits;
+        this.sampleRate = sampleRate;
+        this.reorderInterval = reorderInterval;
+        this.clock = clock;
+        Map<Parser.Wildcard, Evaluator.WildcardCondition> wildcards = node == null ? Collections.emptyMap() : Evaluator.wildcards(node);
+        this.condition = node == null ? Evaluator.Condition.TRUE : compile(node, wildcards);
+        int slots = 0;
+        for (Evaluator.WildcardCondition w : wildcards.values()) slots = Math.max(slots, w.slot + 1);
+        this.wildcardSlots = slots;
+    }
+
+    /**
+     * Evaluates the query against a record
+     *
+     * @param data key values of the record
+     * @param text text of the record matched by {@link Parser.Text} terms, may be null
+     * @return true when the record matches the query
+     */
+    public boolean matches(Map<String, String> data, String text) {
+        return condition.test(new Evaluator.Context(data, text, limits, wildcardSlots));
+    }
+
+    /**
+     * @return current evaluation plan, junctions as AND(...)/OR(...) with operands in evaluation order and terms in
+     * their canonical form
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        render(condition, sb);
+        return sb.toString();
+    }
+
+    private static void render(Evaluator.Condition condition, StringBuilder sb) {
+        if (condition instanceof Junction) {
+            Junction junction = (Junction) condition;
+            Plan plan = junction.plan;
+            sb.append(junction.and ? "AND(" : "OR(");
+            for (int i = 0; i < plan.order.length; i++) {
+                if (i > 0) sb.append(' ');
+                render(plan.operands[i], sb);
+            }
+            sb.append(')');
+        } else if (condition instanceof Leaf) {
+            sb.append(((Leaf) condition).form);
+        } else {
+            sb.append("TRUE");
+        }
+    }
+
+    private Evaluator.Condition compile(Parser.Node node, Map<Parser.Wildcard, Evaluator.WildcardCondition> wildcards) {
+        if (node instanceof Parser.AND || node instanceof Parser.Statement || node instanceof Parser.OR) {
+            boolean and = !(node instanceof Parser.OR);
+            List<Parser.Node> operands = new ArrayList<>();
+            Canonicalizer.flatten(node, and, operands);
+            if (operands.size() == 1) return compile(operands.get(0), wildcards);
+            Evaluator.Condition[] conditions = new Evaluator.Condition[operands.size()];
+            for (int i = 0; i < conditions.length; i++) {
+                conditions[i] = compile(operands.get(i), wildcards);
+            }
+            return new Junction(and, conditions);
+        }
+        return new Leaf(Evaluator.compile(node, wildcards), Canonicalizer.canonicalForm(node));
+    }
+
+    /**
+     * Term of the query, keeps its canonical form for {@link #toString()}
+     */
+    private static final class Leaf extends Evaluator.Condition {
+        final Evaluator.Condition condition;
+        final String form;
+
+        Leaf(Evaluator.Condition condition, String form) {
+            this.condition = condition;
+            this.form = form;
+        }
+
+        @Override
+        boolean test(Evaluator.Context c) {
+            return condition.test(c);
+        }
+    }
+
+    /**
+     * Immutable evaluation order of operands of a junction
+     */
+    private static final class Plan {
+        /**
+         * original indexes of operands in evaluation order
+         */
+        final int[] order;
+        final Evaluator.Condition[] operands;
+
+        Plan(int[] order, Evaluator.Condition[] conditions) {
+            this.order = order;
+            this.operands = new Evaluator.Condition[order.length];
+            for (int i = 0; i < order.length; i++) {
+                operands[i] = conditions[order[i]];
+            }
+        }
+    }
+
+    private final class Junction extends Evaluator.Condition {
+        final boolean and;
+        final Evaluator.Condition[] conditions;
+        /**
+         * evaluations, passes and nanos of every operand by its original index
+         */
+        final AtomicLongArray counters;
+        final AtomicInteger samples = new AtomicInteger();
+        volatile Plan plan;
+
+        Junction(boolean and, Evaluator.Condition[] conditions) {
+            this.and = and;
+            this.conditions = conditions;
+            this.counters = new AtomicLongArray(conditions.length * 3);
+            int[] order = new int[conditions.length];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            this.plan = new Plan(order, conditions);
+        }
+
+        @Override
+        boolean test(Evaluator.Context c) {
+            Plan p = plan;
+            if (sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0) {
+                return sample(p, c);
+            }
+            for (Evaluator.Condition condition : p.operands) {
+                if (condition.test(c) != and) return !and;
+            }
+            return and;
+        }
+
+        private boolean sample(Plan p, Evaluator.Context c) {
+            boolean result = and;
+            for (int i = 0; i < p.operands.length; i++) {
+                int index = p.order[i];
+                long start = clock.getAsLong();
+                boolean pass = p.operands[i].test(c);
+                long nanos = clock.getAsLong() - start;
+                counters.incrementAndGet(index * 3);
+                if (pass) counters.incrementAndGet(index * 3 + 1);
+                counters.addAndGet(index * 3 + 2, nanos);
+                if (pass != and) result = !and;
+            }
+            if (samples.incrementAndGet() % reorderInterval == 0) {
+                reorder(p);
+            }
+            return result;
+        }
+
+        private void reorder(Plan current) {
+            int n = conditions.length;
+            double[] rank = new double[n];
+            for (int i = 0; i < n; i++) {
+                long evaluations = counters.get(i * 3);
+                long passes = counters.get(i * 3 + 1);
+                long nanos = counters.get(i * 3 + 2);
+                double cost = Math.max(evaluations == 0 ? 0 : (double) nanos / evaluations, MIN_COST);
+                double shortCircuit = evaluations == 0 ? 0 : (double) (and ? evaluations - passes : passes) / evaluations;
+                rank[i] = cost / Math.max(shortCircuit, 1e-6);
+                for (int j = 0; j < 3; j++) {
+                    long v = counters.get(i * 3 + j);
+                    counters.addAndGet(i * 3 + j, -(v / 2));
+                }
+            }
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) order[i] = current.order[i];
+            Arrays.sort(order, Comparator.comparingDouble(i -> rank[i]));
+            int[] next = new int[n];
+            boolean changed = false;
+            for (int i = 0; i < n; i++) {
+                next[i] = order[i];
+                changed |= next[i] != current.order[i];
+            }
+            if (changed) {
+                plan = new Plan(next, conditions);
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package eu.cinik.colonqueryparser;
+
+import java.util.*;
+
+/**
+ * <p>Evaluates many queries against the same records at once.</p>
+ *
+ * <p>Queries are merged into a single DAG: structurally equal terms and sub-expressions (after flattening nested
+ * {@link Parser.AND}/{@link Parser.OR}/{@link Parser.Statement}s and ignoring order of their operands) become a single node.
+ * Every node is evaluated at most once per record and its result is shared by all queries referring to it, so total work
+ * scales with the number of distinct sub-expressions rather than the number of queries.</p>
+ *
+ * <p>Semantics of queries are the same as of {@link Evaluator}. A batch evaluator is immutable and can be shared by threads.</p>
+ */
+public class BatchEvaluator {
+    private static final byte UNKNOWN = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+
+    private final List<DagNode> nodes = new ArrayList<>();
+    private final int[] roots;
+    private final ParserLimits limits;
+
+    /**
+     * Creates new batch evaluator without limits
+     *
+     * @param queries parsed queries, null elements match everything
+     */
+    public BatchEvaluator(List<Parser.Node> queries) {
+        this(queries, ParserLimits.UNLIMITED);
+    }
+
+    /**
+     * Creates new batch evaluator which enforces evaluation limits for every record across all queries
+     *
+     * @param queries parsed queries, null elements match everything
+     * @param limits  limits to enforce
+     */
+    public BatchEvaluator(List<Parser.Node> queries, ParserLimits limits) {
+        this.limits = limits;
+        this.roots = new int[queries.size()];
+        Map<String, Integer> interned = new HashMap<>();
+        for (int i = 0; i < roots.length; i++) {
+            Parser.Node query = queries.get(i);
+            roots[i] = query == null ? intern(interned, "TRUE", new DagNode(Evaluator.Condition.TRUE))
+                    : compile(query, interned);
+        }
+    }
+
+    /**
+     * @return number of queries
+     */
+    public int size() {
+        return roots.length;
+    }
+
+    /**
+     * @return number of distinct nodes shared by all queries
+     */
+    public int distinctNodes() {
+        return nodes.size();
+    }
+
+    /**
+     * Evaluates all queries against a record
+     *
+     * @param data key values of the record
+     * @param text text of the record matched by {@link Parser.Text} terms, may be null
+     * @return set of indexes of matching queries
+     */
+    public BitSet matches(Map<String, String> data, String text) {
+        Evaluator.Context context = new Evaluator.Context(data, text, limits);
+        byte[] results = new byte[nodes.size()];
+        BitSet matching = new BitSet(roots.length);
+        for (int i = 0; i < roots.length; i++) {
+            if (evaluate(roots[i], context, results)) matching.set(i);
+        }
+        return matching;
+    }
+
+    private boolean evaluate(int id, Evaluator.Context context, byte[] results) {
+        byte result = results[id];
+        if (result != UNKNOWN) return result == TRUE;
+        DagNode node = nodes.get(id);
+        boolean value;
+        if (node.leaf != null) {
+            value = node.leaf.test(context);
+        } else if (node.and) {
+            value = true;
+            for (int child : node.children) {
+                if (!evaluate(child, context, results)) {
+                    value = false;
+                    break;
+                }
+            }
+        } else {
+            value = false;
+            for (int child : node.children) {
+                if (evaluate(child, context, results)) {
+                    value = true;
+                    break;
+                }
+            }
+        }
+        results[id] = value ? TRUE : FALSE;
+        return value;
+    }
+
+    private int compile(Parser.Node node, Map<String, Integer> interned) {
+        boolean and = node instanceof Parser.AND || node instanceof Parser.Statement;
+        if (and || node instanceof Parser.OR) {
+            List<Parser.Node> operands = new ArrayList<>();
+            Canonicalizer.flatten(node, and, operands);
+            TreeSet<Integer> children = new TreeSet<>();
+            for (Parser.Node operand : operands) {
+                children.add(compile(operand, interned));
+            }
+            if (children.size() == 1) return children.first();
+            int[] ids = new int[children.size()];
+            int i = 0;
+            for (int child : children) ids[i++] = child;
+            return intern(interned, (and ? "AND" : "OR") + Arrays.toString(ids), new DagNode(and, ids));
+        }
+        return intern(interned, Canonicalizer.canonicalForm(node), new DagNode(Evaluator.compile(node)));
+    }
+
+    private int intern(Map<String, Integer> interned, String key, DagNode node) {
+        Integer id = interned.get(key);
+        if (id == null) {
+            id = nodes.size();
+            nodes.add(node);
+            interned.put(key, id);
+        }
+        return id;
+    }
+
+    /**
+     * Node of the shared DAG, either a leaf condition or a conjunction/disjunction of other nodes
+     */
+    private static final class DagNode {
+        final Evaluator.Condition leaf;
+        final boolean and;
+        final int[] children;
+
+        DagNode(Evaluator.Condition leaf) {
+            this.leaf = leaf;
+            this.and = false;
+            this.children = null;
+        }
+
+        DagNode(boolean and, int[] children) {
+            this.leaf = null;
+            this.and = and;
+            this.children = children;
+        }
+    }
+}
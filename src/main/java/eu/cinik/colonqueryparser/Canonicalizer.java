@@ -0,0 +1,248 @@
+package eu.cinik.colonqueryparser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * <p>Turns semantically equivalent queries into the same tree and the same {@link Fingerprint}.</p>
+ *
+ * <p>Canonicalization:</p>
+ * <ul>
+ * <li>flattens nested {@link Parser.AND}s and {@link Parser.Statement}s (a statement matches when all its nodes match)
+ * into a single conjunction and nested {@link Parser.OR}s into a single disjunction</li>
+ * <li>sorts operands of conjunctions and disjunctions and removes duplicates</li>
+ * <li>rebuilds them as balanced chains of {@link Parser.AND}/{@link Parser.OR}, so the keywords are always upper case
+ * in the canonical form (parser already accepts them in any case)</li>
+ * </ul>
+ * <p>So {@code a:1 AND b:2}, {@code b:2 a:1} and {@code (a:1) AND b:2} have the same canonical form
+ * {@code AND("a":"1","b":"2")}.</p>
+ */
+public class Canonicalizer {
+
+    private Canonicalizer() {
+    }
+
+    /**
+     * Canonicalizes a parsed query
+     *
+     * @param node parsed query, may be null
+     * @return canonical query, null for null
+     */
+    static public Parser.Node canonicalize(Parser.Node node) {
+        return node == null ? null : canonical(node).node;
+    }
+
+    /**
+     * Canonical text form of a query, the same for all equivalent queries
+     *
+     * @param node parsed query, may be null
+     * @return canonical form, empty for null
+     */
+    static public String canonicalForm(Parser.Node node) {
+        return node == null ? "" : canonical(node).form;
+    }
+
+    /**
+     * Stable 128-bit fingerprint of the canonical form of a query
+     *
+     * @param node parsed query, may be null
+     * @return fingerprint
+     */
+    static public Fingerprint fingerprint(Parser.Node node) {
+        byte[] bytes = canonicalForm(node).getBytes(StandardCharsets.UTF_8);
+        return Fingerprint.of(bytes);
+    }
+
+    private static final class Canonical {
+        final Parser.Node node;
+        final String form;
+
+        Canonical(Parser.Node node, String form) {
+            this.node = node;
+            this.form = form;
+        }
+    }
+
+    private static Canonical canonical(Parser.Node node) {
+        if (node instanceof Parser.Text) {
+            return new Canonical(node, quote(((Parser.Text) node).getText()));
+        } else if (node instanceof Parser.KeyValue) {
+            Parser.KeyValue kv = (Parser.KeyValue) node;
+            return new Canonical(node, (kv.isNeg() ? "-" : "") + quote(kv.getKey()) + ":" + quote(kv.getValue()));
+        } else if (node instanceof Parser.Wildcard) {
+            Parser.Wildcard w = (Parser.Wildcard) node;
+            return new Canonical(node, (w.isNeg() ? "-" : "") + (w.getKey() == null ? "" : quote(w.getKey()) + ":")
+                    + "*" + quote(w.getPattern()));
+        } else if (node instanceof Parser.BinaryComparision) {
+            Parser.BinaryComparision bc = (Parser.BinaryComparision) node;
+            Canonical left = canonical(bc.getLeft());
+            Canonical right = canonical(bc.getRight());
+            return new Canonical(new Parser.BinaryComparision(bc.getOperator(), left.node, right.node),
+                    "(" + left.form + bc.getOperator().getLabel() + right.form + ")");
+        } else if (node instanceof Parser.OR) {
+            return junction(node, false);
+        } else if (node instanceof Parser.AND || node instanceof Parser.Statement) {
+            return junction(node, true);
+        } else throw new IllegalArgumentException("unknown token node " + node);
+    }
+
+    private static Canonical junction(Parser.Node node, boolean and) {
+        List<Parser.Node> operands = new ArrayList<>();
+        flatten(node, and, operands);
+        TreeMap<String, Parser.Node> sorted = new TreeMap<>();
+        for (Parser.Node operand : operands) {
+            Canonical c = canonical(operand);
+            sorted.put(c.form, c.node);
+        }
+        if (sorted.size() == 1) {
+            Map.Entry<String, Parser.Node> only = sorted.firstEntry();
+            return new Canonical(only.getValue(), only.getKey());
+        }
+        List<Parser.Node> nodes = new ArrayList<>(sorted.values());
+        return new Canonical(Parser.chain(and, nodes, 0, nodes.size()),
+                (and ? "AND(" : "OR(") + String.join(",", sorted.keySet()) + ")");
+    }
+
+    /**
+     * Collects operands of a conjunction or disjunction, without recursion into operands of the same kind
+     */
+    static void flatten(Parser.Node node, boolean and, List<Parser.Node> operands) {
+        Deque<Parser.Node> pending = new ArrayDeque<>();
+        pending.push(node);
+        while (!pending.isEmpty()) {
+            Parser.Node n = pending.pop();
+            if (and && n instanceof Parser.AND || !and && n instanceof Parser.OR) {
+                pending.push(((Parser.Binary) n).getRight());
+                pending.push(((Parser.Binary) n).getLeft());
+            } else if (and && n instanceof Parser.Statement) {
+                List<Parser.Node> nodes = ((Parser.Statement) n).getNodes();
+                for (int i = nodes.size() - 1; i >= 0; i--) {
+                    pending.push(nodes.get(i));
+                }
+            } else {
+                operands.add(n);
+            }
+        }
+    }
+
+    private static String quote(String s) {
+        StringBuilder b = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') b.append('\\');
+            b.append(c);
+        }
+        return b.append('"').toString();
+    }
+
+    /**
+     * 128-bit fingerprint of a canonical query (MurmurHash3 x64 128 of its UTF-8 canonical form)
+     */
+    static public final class Fingerprint {
+        private final long high;
+        private final long low;
+
+        public Fingerprint(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        public long getHigh() {
+            return high;
+        }
+
+        public long getLow() {
+            return low;
+        }
+
+        static Fingerprint of(byte[] data) {
+            final long c1 = 0x87c37b91114253d5L;
+            final long c2 = 0x4cf5ad432745937fL;
+            long h1 = 0;
+            long h2 = 0;
+            int blocks = data.length / 16;
+            for (int i = 0; i < blocks; i++) {
+                long k1 = getLong(data, i * 16);
+                long k2 = getLong(data, i * 16 + 8);
+                k1 *= c1;
+                k1 = Long.rotateLeft(k1, 31);
+                k1 *= c2;
+                h1 ^= k1;
+                h1 = Long.rotateLeft(h1, 27);
+                h1 += h2;
+                h1 = h1 * 5 + 0x52dce729;
+                k2 *= c2;
+                k2 = Long.rotateLeft(k2, 33);
+                k2 *= c1;
+                h2 ^= k2;
+                h2 = Long.rotateLeft(h2, 31);
+                h2 += h1;
+                h2 = h2 * 5 + 0x38495ab5;
+            }
+            long k1 = 0;
+            long k2 = 0;
+            int tail = blocks * 16;
+            for (int i = data.length - 1; i >= tail; i--) {
+                long b = data[i] & 0xffL;
+                if (i - tail >= 8) k2 ^= b << ((i - tail - 8) * 8);
+                else k1 ^= b << ((i - tail) * 8);
+            }
+            if (k2 != 0) {
+                k2 *= c2;
+                k2 = Long.rotateLeft(k2, 33);
+                k2 *= c1;
+                h2 ^= k2;
+            }
+            if (k1 != 0) {
+                k1 *= c1;
+                k1 = Long.rotateLeft(k1, 31);
+                k1 *= c2;
+                h1 ^= k1;
+            }
+            h1 ^= data.length;
+            h2 ^= data.length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix(h1);
+            h2 = fmix(h2);
+            h1 += h2;
+            h2 += h1;
+            return new Fingerprint(h1, h2);
+        }
+
+        private static long getLong(byte[] data, int offset) {
+            long result = 0;
+            for (int i = 7; i >= 0; i--) {
+                result = (result << 8) | (data[offset + i] & 0xffL);
+            }
+            return result;
+        }
+
+        private static long fmix(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Fingerprint that = (Fingerprint) o;
+            return high == that.high && low == that.low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high ^ low);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%016x%016x", high, low);
+        }
+    }
+}
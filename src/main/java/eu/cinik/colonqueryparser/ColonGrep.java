@@ -0,0 +1,484 @@
+package eu.cinik.colonqueryparser;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Grep-like filter of log files with colon queries, the {@code Main-Class} of the jar:</p>
+ * <pre>
+ * java -jar colonqueryparser.jar [-c] [-h] [-j threads] 'service:api level&gt;warn -env:dev' /var/log/*.log
+ * </pre>
+ *
+ * <p>Every line is a record: a line starting with {@code {} is a JSON object read by {@link JsonMatcher}, any other
+ * line is logfmt ({@code key=value key2="quoted value"}, words without {@code =} are not fields).
+ * {@link Parser.Text} terms and wildcards without a key match the whole line, like grep patterns.</p>
+ *
+ * <p>Comparisons with a log level ({@code trace < debug < info < warn = warning < error = err < fatal = critical}, in
+ * any case) compare severities, so {@code level>warn} matches {@code error} and {@code fatal} lines; values which are
+ * not log levels never match them. Other comparisons are the ones of {@link Evaluator#compare}, numeric or
+ * lexicographic.</p>
+ *
+ * <p>The query is parsed once. Files are memory mapped and split into line-aligned chunks which are filtered in
+ * parallel, fields are extracted in place from the mapped bytes. Matching lines are written in the order of the input
+ * through a large output buffer. Like grep, the exit status is 0 when a line matched, 1 when none did and 2 on
+ * errors; a file which can't be read is reported and the remaining files are still filtered.</p>
+ */
+public class ColonGrep {
+    static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+    private static final int BOUNDARY_WINDOW = 64 << 10;
+    private static final String USAGE = "usage: colongrep [-c] [-h] [-j threads] query file...";
+
+    private final JsonMatcher matcher;
+    private final int threads;
+    private final int chunkSize;
+    private final boolean count;
+    private final boolean filenames;
+
+    /**
+     * @param node      parsed query, may be null
+     * @param threads   number of threads filtering chunks
+     * @param chunkSize approximate size of a chunk in bytes
+     * @param count     print number of matching lines of every file instead of the lines
+     * @param filenames prefix output with file names
+     */
+    ColonGrep(Parser.Node node, int threads, int chunkSize, boolean count, boolean filenames) {
+        // the empty key is never looked up in records, its slot stands for the whole line
+        this.matcher = new JsonMatcher(node, "", ColonGrep::comparison);
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+        this.count = count;
+        this.filenames = filenames;
+    }
+
+    private static final String[][] LEVELS = {{"trace"}, {"debug"}, {"info"}, {"warn", "warning"},
+            {"error", "err"}, {"fatal", "critical"}};
+
+    /**
+     * @return severity of a log level, -1 for other values
+     */
+    static int severity(String value) {
+        if (value == null) return -1;
+        for (int rank = 0; rank < LEVELS.length; rank++) {
+            for (String name : LEVELS[rank]) {
+                if (name.equalsIgnoreCase(value)) return rank;
+            }
+        }
+        return -1;
+    }
+
+    private static java.util.function.Predicate<String> comparison(Parser.BinaryComparision.Operator operator,
+                                                                   String value) {
+        int severity = severity(value);
+        if (severity < 0) return recordValue -> Evaluator.compare(recordValue, operator, value);
+        return recordValue -> {
+            int recordSeverity = severity(recordValue);
+            if (recordSeverity < 0) return false;
+            switch (operator) {
+                case EQ:
+                    return recordSeverity == severity;
+                case LT:
+                    return recordSeverity < severity;
+                case HT:
+                    return recordSeverity > severity;
+                default:
+                    return false;
+            }
+        };
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Runs the command
+     *
+     * @return exit status
+     */
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        boolean count = false;
+        boolean noFilenames = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int i = 0;
+        try {
+            for (; i < args.length && args[i].startsWith("-") && args[i].length() > 1; i++) {
+                if (args[i].equals("--")) {
+                    i++;
+                    break;
+                } else if (args[i].equals("-c")) {
+                    count = true;
+                } else if (args[i].equals("-h")) {
+                    noFilenames = true;
+                } else if (args[i].equals("-j") && i + 1 < args.length) {
+                    threads = Integer.parseInt(args[++i]);
+                    if (threads < 1) throw new NumberFormatException();
+                } else {
+                    break;
+                }
+            }
+        } catch (NumberFormatException e) {
+            err.println(USAGE);
+            return 2;
+        }
+        if (args.length - i < 2) {
+            err.println(USAGE);
+            return 2;
+        }
+        Parser.Node node;
+        try (StringReader r = new StringReader(args[i])) {
+            node = new Parser(r).statement();
+        } catch (RuntimeException e) {
+            err.println("colongrep: invalid query: " + e.getMessage());
+            return 2;
+        }
+        List<Path> files = new ArrayList<>();
+        for (int f = i + 1; f < args.length; f++) files.add(Paths.get(args[f]));
+        ColonGrep grep = new ColonGrep(node, threads, DEFAULT_CHUNK_SIZE, count, files.size() > 1 && !noFilenames);
+        try {
+            Result result = grep.grep(files, out, err);
+            // like grep, an error wins over matches found in other files
+            return result.failedFiles > 0 ? 2 : result.matches > 0 ? 0 : 1;
+        } catch (IOException e) {
+            err.println("colongrep: " + e.getMessage());
+            return 2;
+        }
+    }
+
+    /**
+     * Filters files. A file which can't be read is reported to {@code err} and the remaining files are filtered
+     *
+     * @param files files to filter
+     * @param out   output of matching lines, or their counts
+     * @param err   output of errors of files
+     * @return number of matching lines and of files which couldn't be read
+     * @throws IOException when the output can't be written
+     */
+    Result grep(List<Path> files, OutputStream out, PrintStream err) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "colongrep");
+            t.setDaemon(true);
+            return t;
+        });
+        Output output = new Output(new BufferedOutputStream(out, OUTPUT_BUFFER_SIZE));
+        Deque<Future<Chunk>> pending = new ArrayDeque<>();
+        int failedFiles = 0;
+        try {
+            for (Path file : files) {
+                byte[] prefix = filenames ? (file + ":").getBytes(StandardCharsets.UTF_8) : new byte[0];
+                boolean submitted = false;
+                boolean last = false;
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    long size = channel.size();
+                    long start = 0;
+                    do {
+                        long end = lineEnd(channel, Math.min(size, start + chunkSize), size);
+                        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                        boolean lastChunk = end == size;
+                        pending.add(executor.submit(() -> filter(buffer, prefix, lastChunk)));
+                        submitted = true;
+                        last = lastChunk;
+                        // bounds memory held by filtered chunks waiting for their turn
+                        while (pending.size() >= threads * 4) output.write(pending.poll());
+                        start = end;
+                    } while (start < size);
+                } catch (IOException e) {
+                    err.println("colongrep: " + file + ": " + e.getMessage());
+                    failedFiles++;
+                    // lines filtered before the error stay in the output, a count ends with them
+                    if (submitted && !last) pending.add(CompletableFuture.completedFuture(new Chunk(prefix, true)));
+                }
+            }
+            while (!pending.isEmpty()) output.write(pending.poll());
+            output.out.flush();
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Result(output.total, failedFiles);
+    }
+
+    /**
+     * Outcome of {@link #grep(List, OutputStream, PrintStream)}
+     */
+    static final class Result {
+        final long matches;
+        final int failedFiles;
+
+        Result(long matches, int failedFiles) {
+            this.matches = matches;
+            this.failedFiles = failedFiles;
+        }
+    }
+
+    /**
+     * @return position after the end of the line containing the position, the size for the last line
+     */
+    private static long lineEnd(FileChannel channel, long position, long size) throws IOException {
+        if (position == 0) return 0;
+        long from = position - 1;
+        while (from < size) {
+            int length = (int) Math.min(BOUNDARY_WINDOW, size - from);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, from, length);
+            for (int i = 0; i < length; i++) {
+                if (window.get(i) == '\n') return from + i + 1;
+            }
+            from += length;
+        }
+        return size;
+    }
+
+    /**
+     * Filters lines of a chunk
+     */
+    Chunk filter(ByteBuffer buffer, byte[] prefix, boolean last) {
+        Chunk chunk = new Chunk(prefix, last);
+        LogfmtLine logfmt = new LogfmtLine(buffer);
+        int limit = buffer.limit();
+        int start = 0;
+        while (start < limit) {
+            int end = start;
+            while (end < limit && buffer.get(end) != '\n') end++;
+            int lineEnd = end > start && buffer.get(end - 1) == '\r' ? end - 1 : end;
+            if (matches(logfmt, start, lineEnd)) {
+                chunk.matches++;
+                if (!count) chunk.append(buffer, start, lineEnd);
+            }
+            start = end + 1;
+        }
+        return chunk;
+    }
+
+    /**
+     * @param logfmt reused for logfmt lines of the chunk
+     * @return true when the line matches, false for malformed JSON lines
+     */
+    private boolean matches(LogfmtLine logfmt, int start, int end) {
+        ByteBuffer buffer = logfmt.buffer;
+        int first = start;
+        while (first < end && (buffer.get(first) == ' ' || buffer.get(first) == '\t')) first++;
+        try {
+            if (first < end && buffer.get(first) == '{') {
+                return matcher.matches(new JsonLine(buffer, start, end, first));
+            }
+            logfmt.reset(start, end);
+            return matcher.matches(logfmt);
+        } catch (JsonMatcher.JsonException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Fields of a single line, the text slot is the whole line
+     */
+    private abstract class Line extends JsonMatcher.Fields {
+        final ByteBuffer buffer;
+        int start;
+        int end;
+        private String text;
+
+        Line(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        void reset(int start, int end) {
+            this.start = start;
+            this.end = end;
+            this.text = null;
+        }
+
+        @Override
+        String value(int slot) {
+            if (slot != matcher.textSlot()) return field(slot);
+            if (text == null) text = JsonMatcher.string(buffer, start, end - start, StandardCharsets.UTF_8);
+            return text;
+        }
+
+        abstract String field(int slot);
+    }
+
+    private final class JsonLine extends Line {
+        private final JsonMatcher.Scan scan;
+
+        JsonLine(ByteBuffer buffer, int start, int end, int object) {
+            super(buffer);
+            reset(start, end);
+            this.scan = new JsonMatcher.Scan(buffer, object, end, matcher.keys());
+        }
+
+        @Override
+        String field(int slot) {
+            return scan.value(slot);
+        }
+    }
+
+    /**
+     * Lazy scan of {@code key=value} pairs, reads pairs until the key is found
+     */
+    private final class LogfmtLine extends Line {
+        private final String[] values;
+        private final boolean[] found;
+        private int pos;
+
+        LogfmtLine(ByteBuffer buffer) {
+            super(buffer);
+            this.values = new String[matcher.keys().length];
+            this.found = new boolean[values.length];
+        }
+
+        @Override
+        void reset(int start, int end) {
+            super.reset(start, end);
+            Arrays.fill(values, null);
+            Arrays.fill(found, false);
+            this.pos = start;
+        }
+
+        @Override
+        String field(int slot) {
+            byte[][] keys = matcher.keys();
+            while (!found[slot] && pos < end) {
+                while (pos < end && buffer.get(pos) == ' ') pos++;
+                int keyStart = pos;
+                while (pos < end && buffer.get(pos) != '=' && buffer.get(pos) != ' ') pos++;
+                if (pos == end || buffer.get(pos) == ' ') continue;
+                int key = key(keys, keyStart, pos);
+                pos++;
+                String value = key >= 0 && !found[key] ? value() : skip();
+                if (key >= 0 && !found[key]) {
+                    values[key] = value;
+                    found[key] = true;
+                }
+            }
+            return values[slot];
+        }
+
+        private int key(byte[][] keys, int from, int to) {
+            for (int k = 0; k < keys.length; k++) {
+                byte[] key = keys[k];
+                if (key.length != to - from || key.length == 0) continue;
+                int i = 0;
+                while (i < key.length && buffer.get(from + i) == key[i]) i++;
+                if (i == key.length) return k;
+            }
+            return -1;
+        }
+
+        private String value() {
+            if (pos < end && buffer.get(pos) == '"') {
+                StringBuilder b = null;
+                int from = ++pos;
+                while (pos < end && buffer.get(pos) != '"') {
+                    if (buffer.get(pos) == '\\' && pos + 1 < end) {
+                        if (b == null) b = new StringBuilder();
+                        b.append(JsonMatcher.string(buffer, from, pos - from, StandardCharsets.UTF_8));
+                        b.append((char) buffer.get(pos + 1));
+                        pos += 2;
+                        from = pos;
+                    } else pos++;
+                }
+                String tail = JsonMatcher.string(buffer, from, pos - from, StandardCharsets.UTF_8);
+                pos++;
+                return b == null ? tail : b.append(tail).toString();
+            }
+            int from = pos;
+            while (pos < end && buffer.get(pos) != ' ') pos++;
+            return JsonMatcher.string(buffer, from, pos - from, StandardCharsets.UTF_8);
+        }
+
+        private String skip() {
+            if (pos < end && buffer.get(pos) == '"') {
+                pos++;
+                while (pos < end && buffer.get(pos) != '"') pos += buffer.get(pos) == '\\' ? 2 : 1;
+                pos++;
+            } else {
+                while (pos < end && buffer.get(pos) != ' ') pos++;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Filtered chunk, matching lines or their number
+     */
+    static final class Chunk {
+        private final byte[] prefix;
+        private final boolean last;
+        private byte[] bytes = new byte[0];
+        private int length;
+        long matches;
+
+        Chunk(byte[] prefix, boolean last) {
+            this.prefix = prefix;
+            this.last = last;
+        }
+
+        void append(ByteBuffer buffer, int from, int to) {
+            int needed = length + prefix.length + to - from + 1;
+            if (needed > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(needed, bytes.length * 2));
+            System.arraycopy(prefix, 0, bytes, length, prefix.length);
+            length += prefix.length;
+            ByteBuffer line = buffer.duplicate();
+            line.position(from);
+            line.get(bytes, length, to - from);
+            length += to - from;
+            bytes[length++] = '\n';
+        }
+    }
+
+    /**
+     * Writes chunks in the order of the input
+     */
+    private final class Output {
+        final OutputStream out;
+        long total;
+        long file;
+
+        Output(OutputStream out) {
+            this.out = out;
+        }
+
+        void write(Future<Chunk> future) throws IOException {
+            Chunk chunk;
+            try {
+                chunk = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw new IOException(e.getCause());
+            }
+            total += chunk.matches;
+            if (!count) {
+                out.write(chunk.bytes, 0, chunk.length);
+                return;
+            }
+            file += chunk.matches;
+            if (chunk.last) {
+                out.write(chunk.prefix);
+                out.write((file + "\n").getBytes(StandardCharsets.US_ASCII));
+                file = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,624 @@
+package eu.cinik.colonqueryparser;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * <p>Read-only columnar store of records kept off heap in direct or memory-mapped {@link ByteBuffer}s, which queries
+ * are evaluated against directly.</p>
+ *
+ * <p>{@link Type#NUMBER} columns keep a fixed-width 8 byte double per record, {@link Type#STRING} columns keep
+ * a start offset and length per record plus UTF-8 bytes of all values. An optional text column holds the text matched by
+ * {@link Parser.Text} terms. Queries compiled by {@link #compile(Parser.Node)} compare encoded bytes in place and never create
+ * {@link String}s, so evaluation does not allocate and datasets may be larger than the heap when the store is
+ * {@link #map(Path) mapped} from a file.</p>
+ *
+ * <p>Semantics follow {@link Evaluator} with these differences: values of number columns are compared numerically by
+ * {@link Parser.KeyValue} too, and lexicographic comparison of string columns uses UTF-8 byte order (code point order).
+ * Keys which are not columns of the store are missing in every record.</p>
+ *
+ * <p>Example use:</p>
+ * <pre>
+ *     {@code
+ *         ColumnarStore.Builder builder = new ColumnarStore.Builder(schema, true);
+ *         records.forEach(r -> builder.add(r.data(), r.text()));
+ *         ColumnarStore store = builder.build();
+ *         BitSet matching = store.compile(new Parser(reader).statement()).matching();
+ *     }
+ * </pre>
+ */
+public class ColumnarStore {
+    private static final int MAGIC = 0x436f6c53;
+    private static final long MISSING = 0x7ff80000deadbeefL;
+
+    /**
+     * Type of a column
+     */
+    public enum Type {
+        STRING, NUMBER
+    }
+
+    private final int rows;
+    private final Map<String, Column> columns;
+    private final StringColumn text;
+
+    private ColumnarStore(int rows, Map<String, Column> columns, StringColumn text) {
+        this.rows = rows;
+        this.columns = columns;
+        this.text = text;
+    }
+
+    /**
+     * @return number of records
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * @return names and types of columns, without the text column
+     */
+    public Map<String, Type> schema() {
+        Map<String, Type> schema = new LinkedHashMap<>();
+        columns.forEach((name, column) -> schema.put(name, column instanceof NumberColumn ? Type.NUMBER : Type.STRING));
+        return schema;
+    }
+
+    /**
+     * Compiles a query against columns of this store
+     *
+     * @param node parsed query, may be null
+     * @return compiled query, not thread safe
+     */
+    public Query compile(Parser.Node node) {
+        return new Query(node);
+    }
+
+    private static abstract class Column {
+    }
+
+    private static final class NumberColumn extends Column {
+        final ByteBuffer values;
+
+        NumberColumn(ByteBuffer values) {
+            this.values = values;
+        }
+
+        boolean missing(int row) {
+            return values.getLong(row * 8) == MISSING;
+        }
+
+        double get(int row) {
+            return values.getDouble(row * 8);
+        }
+    }
+
+    private static final class StringColumn extends Column {
+        final ByteBuffer offsets;
+        final ByteBuffer bytes;
+
+        StringColumn(ByteBuffer offsets, ByteBuffer bytes) {
+            this.offsets = offsets;
+            this.bytes = bytes;
+        }
+
+        int start(int row) {
+            return offsets.getInt(row * 8);
+        }
+
+        /**
+         * @return length in bytes, -1 for a missing value
+         */
+        int length(int row) {
+            return offsets.getInt(row * 8 + 4);
+        }
+
+        boolean equals(int row, byte[] value) {
+            int len = length(row);
+            if (len != value.length) return false;
+            int start = start(row);
+            for (int i = 0; i < len; i++) {
+                if (bytes.get(start + i) != value[i]) return false;
+            }
+            return true;
+        }
+
+        int compare(int row, byte[] value) {
+            int start = start(row);
+            int len = length(row);
+            int n = Math.min(len, value.length);
+            for (int i = 0; i < n; i++) {
+                int c = (bytes.get(start + i) & 0xff) - (value[i] & 0xff);
+                if (c != 0) return c;
+            }
+            return len - value.length;
+        }
+
+        boolean contains(int row, byte[] term) {
+            int len = length(row);
+            if (len < 0) return false;
+            int start = start(row);
+            outer:
+            for (int i = 0; i <= len - term.length; i++) {
+                for (int j = 0; j < term.length; j++) {
+                    if (bytes.get(start + i + j) != term[j]) continue outer;
+                }
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Parses a decimal number from the value bytes with the rule of {@link Evaluator#number(String)}. Values of up
+         * to 15 characters are parsed from the bytes, their mantissa and power of ten are exact doubles so the result
+         * is rounded the same, longer values are decoded and parsed by {@link Evaluator#number(String)}
+         *
+         * @return the number or {@link Double#NaN}
+         */
+        double number(int row) {
+            int len = length(row);
+            if (len <= 0) return Double.NaN;
+            if (len > 15) return Evaluator.number(decode(row, new Chars()).toString());
+            int start = start(row);
+            int i = 0;
+            boolean negative = false;
+            byte first = bytes.get(start);
+            if (first == '-' || first == '+') {
+                negative = first == '-';
+                i++;
+            }
+            long mantissa = 0;
+            int scale = -1;
+            boolean digit = false;
+            for (; i < len; i++) {
+                byte b = bytes.get(start + i);
+                if (b >= '0' && b <= '9') {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digit = true;
+                    if (scale >= 0) scale++;
+                } else if (b == '.' && scale < 0) {
+                    scale = 0;
+                } else return Double.NaN;
+            }
+            if (!digit) return Double.NaN;
+            double result = scale > 0 ? mantissa / Math.pow(10, scale) : mantissa;
+            return negative ? -result : result;
+        }
+
+        /**
+         * Decodes UTF-8 value into a reusable character buffer
+         *
+         * @return decoded value, valid until next call
+         */
+        CharSequence decode(int row, Chars chars) {
+            int len = length(row);
+            int start = start(row);
+            chars.length = 0;
+            chars.ensure(len);
+            int i = 0;
+            while (i < len) {
+                int b = bytes.get(start + i) & 0xff;
+                int cp;
+                int n;
+                if (b < 0x80) {
+                    cp = b;
+                    n = 1;
+                } else if (b < 0xe0) {
+                    cp = b & 0x1f;
+                    n = 2;
+                } else if (b < 0xf0) {
+                    cp = b & 0x0f;
+                    n = 3;
+                } else {
+                    cp = b & 0x07;
+                    n = 4;
+                }
+                for (int j = 1; j < n && i + j < len; j++) {
+                    cp = (cp << 6) | (bytes.get(start + i + j) & 0x3f);
+                }
+                i += n;
+                if (cp >= 0x10000) {
+                    chars.chars[chars.length++] = Character.highSurrogate(cp);
+                    chars.chars[chars.length++] = Character.lowSurrogate(cp);
+                } else {
+                    chars.chars[chars.length++] = (char) cp;
+                }
+            }
+            return chars;
+        }
+    }
+
+    /**
+     * Reusable character buffer exposed as {@link CharSequence}
+     */
+    private static final class Chars implements CharSequence {
+        char[] chars = new char[64];
+        int length;
+
+        void ensure(int capacity) {
+            if (chars.length < capacity) chars = new char[Math.max(capacity, chars.length * 2)];
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+    }
+
+    /**
+     * Query compiled against columns of the store. Keeps a scratch buffer for wildcards, so it must not be shared by threads.
+     */
+    public class Query {
+        private final RowCondition condition;
+        private final Chars chars = new Chars();
+
+        Query(Parser.Node node) {
+            this.condition = node == null ? row -> true : compile(node);
+        }
+
+        /**
+         * Evaluates the query against a record
+         *
+         * @param row record index
+         * @return true when the record matches
+         */
+        public boolean matches(int row) {
+            return condition.test(row);
+        }
+
+        /**
+         * Evaluates the query against all records
+         *
+         * @return indexes of matching records
+         */
+        public BitSet matching() {
+            BitSet result = new BitSet(rows);
+            for (int row = 0; row < rows; row++) {
+                if (condition.test(row)) result.set(row);
+            }
+            return result;
+        }
+
+        private RowCondition compile(Parser.Node node) {
+            if (node instanceof Parser.Text) {
+                byte[] term = utf8(((Parser.Text) node).getText());
+                return text == null ? row -> false : row -> text.contains(row, term);
+            } else if (node instanceof Parser.KeyValue) {
+                Parser.KeyValue kv = (Parser.KeyValue) node;
+                return keyValue(kv.isNeg(), columns.get(kv.getKey()), kv.getValue());
+            } else if (node instanceof Parser.Wildcard) {
+                Parser.Wildcard w = (Parser.Wildcard) node;
+                return wildcard(w);
+            } else if (node instanceof Parser.BinaryComparision) {
+                Parser.BinaryComparision bc = (Parser.BinaryComparision) node;
+                if (!(bc.getLeft() instanceof Parser.Text) || !(bc.getRight() instanceof Parser.Text)) {
+                    throw new IllegalArgumentException("Comparison operands must be terms: " + bc.getLeft() + bc + bc.getRight());
+                }
+                return comparison(columns.get(((Parser.Text) bc.getLeft()).getText()), bc.getOperator(),
+                        ((Parser.Text) bc.getRight()).getText());
+            } else if (node instanceof Parser.AND || node instanceof Parser.Statement || node instanceof Parser.OR) {
+                boolean and = !(node instanceof Parser.OR);
+                List<Parser.Node> operands = new ArrayList<>();
+                Canonicalizer.flatten(node, and, operands);
+                RowCondition[] conditions = new RowCondition[operands.size()];
+                for (int i = 0; i < conditions.length; i++) {
+                    conditions[i] = compile(operands.get(i));
+                }
+                return and ? row -> {
+                    for (RowCondition c : conditions) {
+                        if (!c.test(row)) return false;
+                    }
+                    return true;
+                } : row -> {
+                    for (RowCondition c : conditions) {
+                        if (c.test(row)) return true;
+                    }
+                    return false;
+                };
+            } else throw new IllegalArgumentException("unknown token node " + node);
+        }
+
+        private RowCondition keyValue(boolean neg, Column column, String value) {
+            if (column == null) {
+                return row -> neg;
+            } else if (column instanceof NumberColumn) {
+                NumberColumn nc = (NumberColumn) column;
+                double number = Evaluator.number(value);
+                if (Double.isNaN(number)) return row -> neg;
+                return row -> neg != (!nc.missing(row) && nc.get(row) == number);
+            } else {
+                StringColumn sc = (StringColumn) column;
+                byte[] bytes = utf8(value);
+                return row -> neg != sc.equals(row, bytes);
+            }
+        }
+
+        private RowCondition wildcard(Parser.Wildcard w) {
+            WildcardAutomaton automaton = new WildcardAutomaton(Collections.singletonList(w.getPattern()));
+            boolean neg = w.isNeg();
+            if (w.getKey() == null) {
+                return text == null ? row -> false
+                        : row -> text.length(row) >= 0 && automaton.matchWords(text.decode(row, chars)) != 0;
+            }
+            Column column = columns.get(w.getKey());
+            if (!(column instanceof StringColumn)) return row -> neg;
+            StringColumn sc = (StringColumn) column;
+            return row -> neg != (sc.length(row) >= 0 && automaton.match(sc.decode(row, chars)) != 0);
+        }
+
+        private RowCondition comparison(Column column, Parser.BinaryComparision.Operator operator, String value) {
+            double number = Evaluator.number(value);
+            if (column == null) {
+                return row -> false;
+            } else if (column instanceof NumberColumn) {
+                NumberColumn nc = (NumberColumn) column;
+                if (Double.isNaN(number)) return row -> false;
+                return row -> !nc.missing(row) && holds(operator, Double.compare(nc.get(row), number));
+            } else {
+                StringColumn sc = (StringColumn) column;
+                byte[] bytes = utf8(value);
+                return row -> {
+                    if (sc.length(row) < 0) return false;
+                    double recordNumber = Double.isNaN(number) ? Double.NaN : sc.number(row);
+                    int result = Double.isNaN(recordNumber) ? sc.compare(row, bytes) : Double.compare(recordNumber, number);
+                    return holds(operator, result);
+                };
+            }
+        }
+    }
+
+    private static boolean holds(Parser.BinaryComparision.Operator operator, int result) {
+        switch (operator) {
+            case EQ:
+                return result == 0;
+            case LT:
+                return result < 0;
+            case HT:
+                return result > 0;
+            default:
+                return false;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowCondition {
+        boolean test(int row);
+    }
+
+    /**
+     * Flips through {@link Buffer} so the class runs on Java 8 when compiled by a newer JDK
+     */
+    private static void flip(Buffer buffer) {
+        buffer.flip();
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the store to a file which can be memory-mapped by {@link #map(Path)}
+     *
+     * @param path file to write
+     * @throws IOException when writing fails
+     */
+    public void write(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(16);
+            header.putInt(MAGIC).putInt(rows).putInt(columns.size()).putInt(text == null ? 0 : 1);
+            flip(header);
+            writeFully(channel, header);
+            for (Map.Entry<String, Column> e : columns.entrySet()) {
+                byte[] name = utf8(e.getKey());
+                ByteBuffer b = ByteBuffer.allocate(5 + name.length);
+                b.putInt(name.length).put(name).put((byte) (e.getValue() instanceof NumberColumn ? 1 : 0));
+                flip(b);
+                writeFully(channel, b);
+                writeColumn(channel, e.getValue());
+            }
+            if (text != null) writeColumn(channel, text);
+        }
+    }
+
+    private static void writeColumn(FileChannel channel, Column column) throws IOException {
+        if (column instanceof NumberColumn) {
+            writeSection(channel, ((NumberColumn) column).values);
+        } else {
+            writeSection(channel, ((StringColumn) column).offsets);
+            writeSection(channel, ((StringColumn) column).bytes);
+        }
+    }
+
+    private static void writeSection(FileChannel channel, ByteBuffer section) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(8);
+        length.putLong(section.limit());
+        flip(length);
+        writeFully(channel, length);
+        writeFully(channel, section.duplicate());
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) channel.write(b);
+    }
+
+    /**
+     * Memory-maps a store written by {@link #write(Path)}. Records are paged in by the operating system on demand.
+     *
+     * @param path file to map
+     * @return store
+     * @throws IOException when reading fails or the file is not a store
+     */
+    static public ColumnarStore map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long[] position = {0};
+            ByteBuffer header = read(channel, position, 16);
+            if (header.getInt() != MAGIC) throw new IOException("Not a columnar store: " + path);
+            int rows = header.getInt();
+            int columnCount = header.getInt();
+            boolean hasText = header.getInt() != 0;
+            Map<String, Column> columns = new LinkedHashMap<>();
+            for (int i = 0; i < columnCount; i++) {
+                int nameLength = read(channel, position, 4).getInt();
+                ByteBuffer b = read(channel, position, nameLength + 1);
+                byte[] name = new byte[nameLength];
+                b.get(name);
+                boolean number = b.get() == 1;
+                columns.put(new String(name, StandardCharsets.UTF_8), number
+                        ? new NumberColumn(mapSection(channel, position))
+                        : new StringColumn(mapSection(channel, position), mapSection(channel, position)));
+            }
+            StringColumn text = hasText ? new StringColumn(mapSection(channel, position), mapSection(channel, position)) : null;
+            return new ColumnarStore(rows, columns, text);
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long[] position, int length) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(length);
+        while (b.hasRemaining()) {
+            if (channel.read(b, position[0] + b.position()) < 0) throw new IOException("Unexpected end of file");
+        }
+        position[0] += length;
+        flip(b);
+        return b;
+    }
+
+    private static ByteBuffer mapSection(FileChannel channel, long[] position) throws IOException {
+        long length = read(channel, position, 8).getLong();
+        ByteBuffer section = channel.map(FileChannel.MapMode.READ_ONLY, position[0], length);
+        position[0] += length;
+        return section;
+    }
+
+    /**
+     * Builds a {@link ColumnarStore} in direct buffers
+     */
+    static public class Builder {
+        private final Map<String, Type> schema;
+        private final Map<String, Object> buffers = new LinkedHashMap<>();
+        private final Growable[] text;
+        private int rows;
+
+        /**
+         * @param schema  names and types of columns, keys of records outside of the schema are ignored
+         * @param hasText whether records have a text matched by {@link Parser.Text} terms
+         */
+        public Builder(Map<String, Type> schema, boolean hasText) {
+            this.schema = new LinkedHashMap<>(schema);
+            for (Map.Entry<String, Type> e : this.schema.entrySet()) {
+                buffers.put(e.getKey(), e.getValue() == Type.NUMBER ? new Growable()
+                        : new Growable[]{new Growable(), new Growable()});
+            }
+            this.text = hasText ? new Growable[]{new Growable(), new Growable()} : null;
+        }
+
+        /**
+         * Appends a record
+         *
+         * @param data key values of the record
+         * @param text text of the record, may be null
+         * @return this builder
+         * @throws IllegalArgumentException when a value of a number column is not a number
+         */
+        public Builder add(Map<String, String> data, String text) {
+            for (Map.Entry<String, Type> e : schema.entrySet()) {
+                String value = data.get(e.getKey());
+                Object buffer = buffers.get(e.getKey());
+                if (e.getValue() == Type.NUMBER) {
+                    Growable g = (Growable) buffer;
+                    g.ensure(8);
+                    if (value == null) {
+                        g.buffer.putLong(MISSING);
+                    } else {
+                        double number = Evaluator.number(value);
+                        if (Double.isNaN(number)) {
+                            throw new IllegalArgumentException("Value of " + e.getKey() + " is not a number: " + value);
+                        }
+                        g.buffer.putDouble(number);
+                    }
+                } else {
+                    appendString((Growable[]) buffer, value);
+                }
+            }
+            if (this.text != null) appendString(this.text, text);
+            rows++;
+            return this;
+        }
+
+        private static void appendString(Growable[] buffers, String value) {
+            Growable offsets = buffers[0];
+            Growable bytes = buffers[1];
+            offsets.ensure(8);
+            if (value == null) {
+                offsets.buffer.putInt(bytes.buffer.position()).putInt(-1);
+            } else {
+                byte[] b = utf8(value);
+                offsets.buffer.putInt(bytes.buffer.position()).putInt(b.length);
+                bytes.ensure(b.length);
+                bytes.buffer.put(b);
+            }
+        }
+
+        /**
+         * @return store with all appended records
+         */
+        public ColumnarStore build() {
+            Map<String, Column> columns = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> e : buffers.entrySet()) {
+                if (e.getValue() instanceof Growable) {
+                    columns.put(e.getKey(), new NumberColumn(((Growable) e.getValue()).finish()));
+                } else {
+                    Growable[] g = (Growable[]) e.getValue();
+                    columns.put(e.getKey(), new StringColumn(g[0].finish(), g[1].finish()));
+                }
+            }
+            StringColumn textColumn = text == null ? null : new StringColumn(text[0].finish(), text[1].finish());
+            return new ColumnarStore(rows, columns, textColumn);
+        }
+    }
+
+    /**
+     * Direct buffer which doubles its capacity when full
+     */
+    private static final class Growable {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+
+        void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                long capacity = Math.max((long) buffer.capacity() * 2, (long) buffer.position() + bytes);
+                if (capacity > Integer.MAX_VALUE) throw new IllegalStateException("Column exceeds 2GB");
+                ByteBuffer grown = ByteBuffer.allocateDirect((int) capacity);
+                flip(buffer);
+                grown.put(buffer);
+                buffer = grown;
+            }
+        }
+
+        ByteBuffer finish() {
+            ByteBuffer result = buffer.duplicate();
+            flip(result);
+            return result.slice();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package eu.cinik.colonqueryparser;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Built-in {@link ParserMetrics} which keeps counters in {@link LongAdder}s and distributions in {@link Histogram}s.</p>
+ *
+ * <p>Use {@link #snapshot()} to read values, e.g. to export them to a monitoring system:</p>
+ * <pre>
+ *     {@code
+ *         DefaultParserMetrics metrics = new DefaultParserMetrics();
+ *         Parser.Node node = new Parser(reader, metrics).statement();
+ *         metrics.snapshot().toMap().forEach((name, value) -> System.out.println(name + " " + value));
+ *     }
+ * </pre>
+ */
+public class DefaultParserMetrics implements ParserMetrics {
+    private final LongAdder parsed = new LongAdder();
+    private final LongAdder lexerErrors = new LongAdder();
+    private final LongAdder parserErrors = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> lexerErrorCategories = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> parserErrorCategories = new ConcurrentHashMap<>();
+    private final Histogram parseNanos = new Histogram();
+    private final Histogram tokens = new Histogram();
+    private final Histogram depth = new Histogram();
+    private final Histogram nodes = new Histogram();
+
+    @Override
+    public void parsed(long nanos, int tokens, int depth, int nodes) {
+        this.parsed.increment();
+        this.parseNanos.record(nanos);
+        this.tokens.record(tokens);
+        this.depth.record(depth);
+        this.nodes.record(nodes);
+    }
+
+    @Override
+    public void lexerError(String category) {
+        lexerErrors.increment();
+        lexerErrorCategories.computeIfAbsent(category, c -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void parserError(String category) {
+        parserErrors.increment();
+        parserErrorCategories.computeIfAbsent(category, c -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void cacheHit() {
+        cacheHits.increment();
+    }
+
+    @Override
+    public void cacheMiss() {
+        cacheMisses.increment();
+    }
+
+    /**
+     * Takes a snapshot of all metrics. Events recorded concurrently may or may not be included.
+     *
+     * @return snapshot
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    private static Map<String, Long> sums(Map<String, LongAdder> adders) {
+        Map<String, Long> result = new TreeMap<>();
+        adders.forEach((k, v) -> result.put(k, v.sum()));
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Immutable view of {@link DefaultParserMetrics}
+     */
+    static public class Snapshot {
+        private final long parsed;
+        private final long lexerErrors;
+        private final long parserErrors;
+        private final long cacheHits;
+        private final long cacheMisses;
+        private final Map<String, Long> lexerErrorCategories;
+        private final Map<String, Long> parserErrorCategories;
+        private final Histogram.Snapshot parseNanos;
+        private final Histogram.Snapshot tokens;
+        private final Histogram.Snapshot depth;
+        private final Histogram.Snapshot nodes;
+
+        Snapshot(DefaultParserMetrics m) {
+            this.parsed = m.parsed.sum();
+            this.lexerErrors = m.lexerErrors.sum();
+            this.parserErrors = m.parserErrors.sum();
+            this.cacheHits = m.cacheHits.sum();
+            this.cacheMisses = m.cacheMisses.sum();
+            this.lexerErrorCategories = sums(m.lexerErrorCategories);
+            this.parserErrorCategories = sums(m.parserErrorCategories);
+            this.parseNanos = m.parseNanos.snapshot();
+            this.tokens = m.tokens.snapshot();
+            this.depth = m.depth.snapshot();
+            this.nodes = m.nodes.snapshot();
+        }
+
+        public long getParsed() {
+            return parsed;
+        }
+
+        public long getLexerErrors() {
+            return lexerErrors;
+        }
+
+        public long getParserErrors() {
+            return parserErrors;
+        }
+
+        public long getCacheHits() {
+            return cacheHits;
+        }
+
+        public long getCacheMisses() {
+            return cacheMisses;
+        }
+
+        /**
+         * @return number of lexer errors by message category
+         */
+        public Map<String, Long> getLexerErrorCategories() {
+            return lexerErrorCategories;
+        }
+
+        /**
+         * @return number of parser errors by message category
+         */
+        public Map<String, Long> getParserErrorCategories() {
+            return parserErrorCategories;
+        }
+
+        public Histogram.Snapshot getParseNanos() {
+            return parseNanos;
+        }
+
+        public Histogram.Snapshot getTokens() {
+            return tokens;
+        }
+
+        public Histogram.Snapshot getDepth() {
+            return depth;
+        }
+
+        public Histogram.Snapshot getNodes() {
+            return nodes;
+        }
+
+        /**
+         * Flattens the snapshot to metric names and values, e.g. {@code parse.nanos.p99}
+         * or {@code errors.parser{category=Expected text}}
+         *
+         * @return ordered map of metric names to values
+         */
+        public Map<String, Number> toMap() {
+            Map<String, Number> result = new LinkedHashMap<>();
+            result.put("parsed", parsed);
+            result.put("errors.lexer", lexerErrors);
+            result.put("errors.parser", parserErrors);
+            lexerErrorCategories.forEach((c, n) -> result.put("errors.lexer{category=" + c + "}", n));
+            parserErrorCategories.forEach((c, n) -> result.put("errors.parser{category=" + c + "}", n));
+            result.put("cache.hits", cacheHits);
+            result.put("cache.misses", cacheMisses);
+            histogram(result, "parse.nanos", parseNanos);
+            histogram(result, "parse.tokens", tokens);
+            histogram(result, "parse.depth", depth);
+            histogram(result, "parse.nodes", nodes);
+            return result;
+        }
+
+        private static void histogram(Map<String, Number> result, String name, Histogram.Snapshot h) {
+            result.put(name + ".count", h.getCount());
+            result.put(name + ".sum", h.getSum());
+            result.put(name + ".max", h.getMax());
+            result.put(name + ".p50", h.percentile(50));
+            result.put(name + ".p99", h.percentile(99));
+            result.put(name + ".p999", h.percentile(99.9));
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder b = new StringBuilder();
+            toMap().forEach((name, value) -> b.append(name).append(' ').append(value).append('\n'));
+            return b.toString();
+        }
+    }
+}
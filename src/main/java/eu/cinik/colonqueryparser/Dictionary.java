@@ -0,0 +1,367 @@
+package eu.cinik.colonqueryparser;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Assigns dense int ids to keys and values, so records can be encoded as int arrays (key id to value id) and queries
+ * evaluated by int comparisons instead of string hashing and equality.</p>
+ *
+ * <p>Queries compiled by {@link #compile(Parser.Node)} resolve their constants once:</p>
+ * <ul>
+ * <li>{@link Parser.KeyValue} becomes a comparison of value ids; a value which is not in the dictionary makes a positive
+ * term false and a negated one true</li>
+ * <li>{@link Parser.BinaryComparision} and {@link Parser.Wildcard} with a key are evaluated for every value known at compile
+ * time and become a bit set lookup by value id; a wildcard with a literal prefix like {@code abc*} is evaluated only for
+ * the values of the prefix range of a sorted index of values, prefix patterns without other wildcards need no matching
+ * at all</li>
+ * <li>{@link Parser.Text} and wildcard text terms are matched against the text of a record as in {@link Evaluator}</li>
+ * </ul>
+ * <p>Values added to the dictionary after a query has been compiled are still evaluated correctly by comparing their text,
+ * recompile queries after the dictionary has grown a lot to keep evaluation on int comparisons only.</p>
+ *
+ * <p>The dictionary is thread safe, ids are never reused.</p>
+ */
+public class Dictionary {
+    /**
+     * Value id of a key missing in a record
+     */
+    public static final int MISSING = -1;
+
+    private final Map<String, Integer> keyIds = new ConcurrentHashMap<>();
+    private final Map<String, Integer> valueIds = new ConcurrentHashMap<>();
+    private final List<String> keys = new ArrayList<>();
+    private final List<String> values = new ArrayList<>();
+    // guarded by this, covers all values when published
+    private volatile SortedValues sorted = new SortedValues(new String[0], new int[0]);
+    /**
+     * number of values tested by comparisons and wildcards of compiled queries
+     */
+    final AtomicLong valuesTested = new AtomicLong();
+
+    /**
+     * Returns id of a key, assigning a new one to an unknown key
+     *
+     * @param key key
+     * @return id
+     */
+    public int keyId(String key) {
+        Integer id = keyIds.get(key);
+        return id != null ? id : add(key, keyIds, keys);
+    }
+
+    /**
+     * Returns id of a value, assigning a new one to an unknown value
+     *
+     * @param value value
+     * @return id
+     */
+    public int valueId(String value) {
+        Integer id = valueIds.get(value);
+        return id != null ? id : add(value, valueIds, values);
+    }
+
+    /**
+     * @param value value
+     * @return id of the value or {@link #MISSING} when not in the dictionary
+     */
+    public int lookupValue(String value) {
+        Integer id = valueIds.get(value);
+        return id == null ? MISSING : id;
+    }
+
+    private synchronized int add(String s, Map<String, Integer> ids, List<String> strings) {
+        Integer id = ids.get(s);
+        if (id == null) {
+            id = strings.size();
+            strings.add(s);
+            ids.put(s, id);
+        }
+        return id;
+    }
+
+    /**
+     * @param id key id
+     * @return the key
+     */
+    public synchronized String key(int id) {
+        return keys.get(id);
+    }
+
+    /**
+     * @param id value id
+     * @return the value
+     */
+    public synchronized String value(int id) {
+        return values.get(id);
+    }
+
+    /**
+     * @return number of keys
+     */
+    public synchronized int keys() {
+        return keys.size();
+    }
+
+    /**
+     * @return number of values
+     */
+    public synchronized int values() {
+        return values.size();
+    }
+
+    /**
+     * @return values sorted by their text, including all values added so far
+     */
+    synchronized SortedValues sortedValues() {
+        SortedValues current = sorted;
+        int known = values.size();
+        if (current.ids.length == known) return current;
+        // merges values added since the last call into the sorted arrays
+        Integer[] added = new Integer[known - current.ids.length];
+        for (int i = 0; i < added.length; i++) added[i] = current.ids.length + i;
+        Arrays.sort(added, Comparator.comparing(values::get));
+        String[] texts = new String[known];
+        int[] ids = new int[known];
+        int a = 0;
+        int c = 0;
+        for (int i = 0; i < known; i++) {
+            if (c < current.ids.length && (a == added.length || current.values[c].compareTo(values.get(added[a])) <= 0)) {
+                texts[i] = current.values[c];
+                ids[i] = current.ids[c++];
+            } else {
+                ids[i] = added[a++];
+                texts[i] = values.get(ids[i]);
+            }
+        }
+        sorted = new SortedValues(texts, ids);
+        return sorted;
+    }
+
+    /**
+     * Immutable snapshot of values sorted by their text, with their ids
+     */
+    static final class SortedValues {
+        final String[] values;
+        final int[] ids;
+
+        SortedValues(String[] values, int[] ids) {
+            this.values = values;
+            this.ids = ids;
+        }
+
+        /**
+         * @param prefix prefix
+         * @return ids of values starting with the prefix
+         */
+        int[] range(String prefix) {
+            int from = Arrays.binarySearch(values, prefix);
+            if (from < 0) from = -from - 1;
+            int to = from;
+            while (to < values.length && values[to].startsWith(prefix)) to++;
+            return Arrays.copyOfRange(ids, from, to);
+        }
+    }
+
+    /**
+     * Results of a test of values added after a query has been compiled. Each value is tested once, the results are
+     * copied on write so evaluations read them without locking or boxing.
+     */
+    private final class LateValues {
+        private final int first;
+        private final java.util.function.Predicate<String> predicate;
+        // pairs of words of bits by id - first: values tested, values matching
+        private volatile long[] bits = new long[0];
+
+        LateValues(int first, java.util.function.Predicate<String> predicate) {
+            this.first = first;
+            this.predicate = predicate;
+        }
+
+        boolean matches(int id) {
+            int index = id - first;
+            int word = (index >>> 6) << 1;
+            long bit = 1L << index;
+            long[] current = bits;
+            if (word < current.length && (current[word] & bit) != 0) return (current[word + 1] & bit) != 0;
+            return test(id, word, bit);
+        }
+
+        private synchronized boolean test(int id, int word, long bit) {
+            long[] current = bits;
+            if (word < current.length && (current[word] & bit) != 0) return (current[word + 1] & bit) != 0;
+            boolean match = predicate.test(value(id));
+            valuesTested.incrementAndGet();
+            long[] next = Arrays.copyOf(current, Math.max(current.length, word + 2));
+            next[word] |= bit;
+            if (match) next[word + 1] |= bit;
+            bits = next;
+            return match;
+        }
+    }
+
+    /**
+     * Encodes a record, adding its keys and values to the dictionary
+     *
+     * @param data key values of the record
+     * @return value ids indexed by key ids, {@link #MISSING} for missing keys
+     */
+    public int[] encode(Map<String, String> data) {
+        int[] keyIds = new int[data.size()];
+        int[] valueIds = new int[data.size()];
+        int size = 0;
+        int i = 0;
+        for (Map.Entry<String, String> e : data.entrySet()) {
+            keyIds[i] = keyId(e.getKey());
+            valueIds[i] = e.getValue() == null ? MISSING : valueId(e.getValue());
+            size = Math.max(size, keyIds[i] + 1);
+            i++;
+        }
+        int[] record = new int[size];
+        Arrays.fill(record, MISSING);
+        for (int j = 0; j < i; j++) {
+            record[keyIds[j]] = valueIds[j];
+        }
+        return record;
+    }
+
+    /**
+     * Compiles a query against ids of this dictionary. Keys of the query are added to the dictionary, values are not.
+     *
+     * @param node parsed query, may be null
+     * @return compiled query, thread safe
+     */
+    public Query compile(Parser.Node node) {
+        return new Query(node);
+    }
+
+    /**
+     * Query compiled against a {@link Dictionary}
+     */
+    public class Query {
+        private final IdCondition condition;
+
+        Query(Parser.Node node) {
+            this.condition = node == null ? (record, text) -> true : compile(node);
+        }
+
+        /**
+         * Evaluates the query against an encoded record
+         *
+         * @param record record encoded by {@link Dictionary#encode(Map)}
+         * @param text   text of the record matched by {@link Parser.Text} terms, may be null
+         * @return true when the record matches
+         */
+        public boolean matches(int[] record, String text) {
+            return condition.test(record, text);
+        }
+
+        private IdCondition compile(Parser.Node node) {
+            if (node instanceof Parser.Text) {
+                String term = ((Parser.Text) node).getText();
+                return (record, text) -> text != null && text.contains(term);
+            } else if (node instanceof Parser.KeyValue) {
+                Parser.KeyValue kv = (Parser.KeyValue) node;
+                return keyValue(kv.isNeg(), keyId(kv.getKey()), kv.getValue());
+            } else if (node instanceof Parser.Wildcard) {
+                Parser.Wildcard w = (Parser.Wildcard) node;
+                WildcardAutomaton automaton = new WildcardAutomaton(Collections.singletonList(w.getPattern()));
+                if (w.getKey() == null) {
+                    return (record, text) -> text != null && automaton.matchWords(text) != 0;
+                }
+                String pattern = w.getPattern();
+                String prefix = WildcardAutomaton.prefix(pattern);
+                if (prefix.isEmpty()) {
+                    return valueSet(w.isNeg(), keyId(w.getKey()), value -> automaton.match(value) != 0, null, null);
+                }
+                // values outside of the prefix range never match, prefix patterns match the whole range
+                boolean prefixOnly = pattern.substring(prefix.length()).replace("*", "").isEmpty();
+                return valueSet(w.isNeg(), keyId(w.getKey()), prefixOnly ? null : value -> automaton.match(value) != 0,
+                        sortedValues(), prefix);
+            } else if (node instanceof Parser.BinaryComparision) {
+                Parser.BinaryComparision bc = (Parser.BinaryComparision) node;
+                if (!(bc.getLeft() instanceof Parser.Text) || !(bc.getRight() instanceof Parser.Text)) {
+                    throw new IllegalArgumentException("Comparison operands must be terms: " + bc.getLeft() + bc + bc.getRight());
+                }
+                String value = ((Parser.Text) bc.getRight()).getText();
+                Parser.BinaryComparision.Operator operator = bc.getOperator();
+                return valueSet(false, keyId(((Parser.Text) bc.getLeft()).getText()),
+                        recordValue -> Evaluator.compare(recordValue, operator, value), null, null);
+            } else if (node instanceof Parser.AND || node instanceof Parser.Statement || node instanceof Parser.OR) {
+                boolean and = !(node instanceof Parser.OR);
+                List<Parser.Node> operands = new ArrayList<>();
+                Canonicalizer.flatten(node, and, operands);
+                IdCondition[] conditions = new IdCondition[operands.size()];
+                for (int i = 0; i < conditions.length; i++) {
+                    conditions[i] = compile(operands.get(i));
+                }
+                return and ? (record, text) -> {
+                    for (IdCondition c : conditions) {
+                        if (!c.test(record, text)) return false;
+                    }
+                    return true;
+                } : (record, text) -> {
+                    for (IdCondition c : conditions) {
+                        if (c.test(record, text)) return true;
+                    }
+                    return false;
+                };
+            } else throw new IllegalArgumentException("unknown token node " + node);
+        }
+
+        private IdCondition keyValue(boolean neg, int key, String value) {
+            int id = lookupValue(value);
+            if (id != MISSING) {
+                return (record, text) -> neg != (valueOf(record, key) == id);
+            }
+            // not in the dictionary yet, only values added after compilation can match, looked up without locking
+            int known = values();
+            return (record, text) -> {
+                int v = valueOf(record, key);
+                return neg != (v >= known && v == lookupValue(value));
+            };
+        }
+
+        /**
+         * @param predicate test of a value, null when all values of the prefix range match
+         * @param sorted    sorted values to look the prefix range up in, null to test all values
+         * @param prefix    prefix of the values which can match
+         */
+        private IdCondition valueSet(boolean neg, int key, java.util.function.Predicate<String> predicate,
+                                     SortedValues sorted, String prefix) {
+            BitSet matching = new BitSet();
+            int known;
+            if (sorted == null) {
+                known = values();
+                for (int id = 0; id < known; id++) {
+                    if (predicate.test(value(id))) matching.set(id);
+                }
+                valuesTested.addAndGet(known);
+            } else {
+                known = sorted.ids.length;
+                int[] range = sorted.range(prefix);
+                for (int id : range) {
+                    if (predicate == null || predicate.test(value(id))) matching.set(id);
+                }
+                if (predicate != null) valuesTested.addAndGet(range.length);
+                else predicate = value -> value.startsWith(prefix);
+            }
+            LateValues late = new LateValues(known, predicate);
+            return (record, text) -> {
+                int v = valueOf(record, key);
+                if (v == MISSING) return neg;
+                return neg != (v < known ? matching.get(v) : late.matches(v));
+            };
+        }
+    }
+
+    private static int valueOf(int[] record, int key) {
+        return key < record.length ? record[key] : MISSING;
+    }
+
+    @FunctionalInterface
+    private interface IdCondition {
+        boolean test(int[] record, String text);
+    }
+}
@@ -0,0 +1,458 @@
+package eu.cinik.colonqueryparser;
+
+import java.util.*;
+
+/**
+ * <p>Evaluates a parsed query against records represented as a map of key values and a text.</p>
+ *
+ * <p>Semantics follow the example in {@link Parser}:</p>
+ * <ul>
+ * <li>{@link Parser.Text} matches when the text contains the term</li>
+ * <li>{@link Parser.KeyValue} matches when the record value of the key equals the value, negated key value matches otherwise</li>
+ * <li>{@link Parser.BinaryComparision} compares the record value of the left term with the right term, numerically when both
+ * are numbers and lexicographically otherwise. A missing record value never matches</li>
+ * <li>{@link Parser.Wildcard} with a key matches when the whole record value of the key matches the pattern, without key
+ * when any word of the text matches it. Wildcards on the same key are merged into a single {@link WildcardAutomaton}
+ * which runs at most once per record</li>
+ * <li>{@link Parser.AND}, {@link Parser.OR} are short-circuited, {@link Parser.Statement} matches when all its nodes match</li>
+ * <li>at least {@link #MEMBERSHIP_THRESHOLD} key values on the same key in a disjunction ({@code id:1 OR id:2 OR ...})
+ * or negated in a conjunction ({@code -id:1 -id:2 ...}) are collapsed into a single {@link MembershipCondition}</li>
+ * <li>an empty query (null node) matches everything</li>
+ * </ul>
+ *
+ * <p>The query is compiled once, an evaluator is immutable and can be shared by threads.
+ * Evaluation of every record is bounded by {@link ParserLimits#getMaxLeafEvaluations()} and
+ * {@link ParserLimits#getMaxEvaluationNanos()}, crossing them throws {@link ParserLimits.LimitExceededException}.</p>
+ */
+public class Evaluator {
+    private static final int DEADLINE_CHECK_INTERVAL = 1024;
+    /**
+     * Minimal number of key values on the same key collapsed into a {@link MembershipCondition}
+     */
+    static final int MEMBERSHIP_THRESHOLD = 4;
+
+    private final Condition condition;
+    private final ParserLimits limits;
+    private final int wildcardSlots;
+
+    /**
+     * Creates new evaluator without limits
+     *
+     * @param node parsed query, may be null
+     */
+    public Evaluator(Parser.Node node) {
+        this(node, ParserLimits.UNLIMITED);
+    }
+
+    /**
+     * Creates new evaluator which enforces evaluation limits
+     *
+     * @param node   parsed query, may be null
+     * @param limits limits to enforce
+     */
+    public Evaluator(Parser.Node node, ParserLimits limits) {
+        Map<Parser.Wildcard, WildcardCondition> wildcards = node == null ? Collections.emptyMap() : wildcards(node);
+        this.condition = node == null ? Condition.TRUE : compile(node, wildcards);
+        this.limits = limits;
+        int slots = 0;
+        for (WildcardCondition w : wildcards.values()) slots = Math.max(slots, w.slot + 1);
+        this.wildcardSlots = slots;
+    }
+
+    /**
+     * Evaluates the query against a record
+     *
+     * @param data key values of the record
+     * @param text text of the record matched by {@link Parser.Text} terms, may be null
+     * @return true when the record matches the query
+     */
+    public boolean matches(Map<String, String> data, String text) {
+        return condition.test(new Context(data, text, limits, wildcardSlots));
+    }
+
+    /**
+     * Merges wildcards of the same key into shared automata
+     *
+     * @return wildcard conditions with assigned automata and memo slots
+     */
+    static Map<Parser.Wildcard, WildcardCondition> wildcards(Parser.Node root) {
+        Map<String, List<Parser.Wildcard>> byKey = new LinkedHashMap<>();
+        Deque<Parser.Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Parser.Node node = pending.pop();
+            if (node instanceof Parser.Wildcard) {
+                Parser.Wildcard wildcard = (Parser.Wildcard) node;
+                byKey.computeIfAbsent(wildcard.getKey(), k -> new ArrayList<>()).add(wildcard);
+            } else if (node instanceof Parser.Binary) {
+                pending.push(((Parser.Binary) node).getRight());
+                pending.push(((Parser.Binary) node).getLeft());
+            } else if (node instanceof Parser.Statement) {
+                List<Parser.Node> nodes = ((Parser.Statement) node).getNodes();
+                for (int i = nodes.size() - 1; i >= 0; i--) pending.push(nodes.get(i));
+            }
+        }
+        Map<Parser.Wildcard, WildcardCondition> result = new IdentityHashMap<>();
+        int slot = 0;
+        for (Map.Entry<String, List<Parser.Wildcard>> e : byKey.entrySet()) {
+            List<String> patterns = new ArrayList<>();
+            for (Parser.Wildcard w : e.getValue()) {
+                if (!patterns.contains(w.getPattern())) patterns.add(w.getPattern());
+            }
+            for (int from = 0; from < patterns.size(); from += WildcardAutomaton.MAX_PATTERNS) {
+                List<String> group = patterns.subList(from, Math.min(patterns.size(), from + WildcardAutomaton.MAX_PATTERNS));
+                slot = merge(e.getValue(), group, slot, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds a single automaton of a group of patterns, or splits the group in halves when the automaton would exceed
+     * {@link WildcardAutomaton#MAX_STATES}, e.g. many patterns with several stars each
+     *
+     * @return next free memo slot
+     */
+    private static int merge(List<Parser.Wildcard> wildcards, List<String> group, int slot,
+                             Map<Parser.Wildcard, WildcardCondition> result) {
+        WildcardAutomaton automaton;
+        try {
+            automaton = new WildcardAutomaton(group);
+        } catch (IllegalArgumentException e) {
+            if (group.size() == 1) throw e;
+            int half = group.size() / 2;
+            slot = merge(wildcards, group.subList(0, half), slot, result);
+            return merge(wildcards, group.subList(half, group.size()), slot, result);
+        }
+        for (Parser.Wildcard w : wildcards) {
+            int idx = group.indexOf(w.getPattern());
+            if (idx >= 0) result.put(w, new WildcardCondition(w.isNeg(), w.getKey(), automaton, 1L << idx, slot));
+        }
+        return slot + 1;
+    }
+
+    static Condition compile(Parser.Node node) {
+        return compile(node, Collections.emptyMap());
+    }
+
+    static Condition compile(Parser.Node node, Map<Parser.Wildcard, WildcardCondition> wildcards) {
+        if (node instanceof Parser.Wildcard) {
+            Parser.Wildcard w = (Parser.Wildcard) node;
+            WildcardCondition condition = wildcards.get(w);
+            return condition != null ? condition : new WildcardCondition(w.isNeg(), w.getKey(),
+                    new WildcardAutomaton(Collections.singletonList(w.getPattern())), 1L, -1);
+        } else if (node instanceof Parser.Text) {
+            return new TextCondition(((Parser.Text) node).getText());
+        } else if (node instanceof Parser.KeyValue) {
+            Parser.KeyValue kv = (Parser.KeyValue) node;
+            return new KeyValueCondition(kv.isNeg(), kv.getKey(), kv.getValue());
+        } else if (node instanceof Parser.BinaryComparision) {
+            Parser.BinaryComparision bc = (Parser.BinaryComparision) node;
+            if (!(bc.getLeft() instanceof Parser.Text) || !(bc.getRight() instanceof Parser.Text)) {
+                throw new IllegalArgumentException("Comparison operands must be terms: " + bc.getLeft() + bc + bc.getRight());
+            }
+            return new ComparisonCondition(((Parser.Text) bc.getLeft()).getText(), bc.getOperator(),
+                    ((Parser.Text) bc.getRight()).getText());
+        } else if (node instanceof Parser.AND || node instanceof Parser.Statement) {
+            return new AllCondition(junction(node, true, wildcards));
+        } else if (node instanceof Parser.OR) {
+            return new AnyCondition(junction(node, false, wildcards));
+        } else throw new IllegalArgumentException("unknown token node " + node);
+    }
+
+    /**
+     * Compiles flattened operands of a conjunction or disjunction. Key values on the same key which are positive in
+     * a disjunction or negated in a conjunction are collapsed into a {@link MembershipCondition} placed at the first
+     * of them
+     */
+    private static Condition[] junction(Parser.Node node, boolean and, Map<Parser.Wildcard, WildcardCondition> wildcards) {
+        List<Parser.Node> operands = new ArrayList<>();
+        Canonicalizer.flatten(node, and, operands);
+        Map<String, List<String>> values = new HashMap<>();
+        for (Parser.Node operand : operands) {
+            if (collapsible(operand, and)) {
+                values.computeIfAbsent(((Parser.KeyValue) operand).getKey(), k -> new ArrayList<>())
+                        .add(((Parser.KeyValue) operand).getValue());
+            }
+        }
+        List<Condition> conditions = new ArrayList<>(operands.size());
+        Set<String> collapsed = new HashSet<>();
+        for (Parser.Node operand : operands) {
+            if (collapsible(operand, and)) {
+                String key = ((Parser.KeyValue) operand).getKey();
+                List<String> keyValues = values.get(key);
+                if (keyValues.size() >= MEMBERSHIP_THRESHOLD) {
+                    if (collapsed.add(key)) conditions.add(new MembershipCondition(and, key, ValueSet.of(keyValues)));
+                    continue;
+                }
+            }
+            conditions.add(compile(operand, wildcards));
+        }
+        return conditions.toArray(new Condition[0]);
+    }
+
+    private static boolean collapsible(Parser.Node node, boolean and) {
+        return node instanceof Parser.KeyValue && ((Parser.KeyValue) node).isNeg() == and;
+    }
+
+    /**
+     * Compares a record value with a query value of a {@link Parser.BinaryComparision}
+     *
+     * @param recordValue value of the record, may be null
+     * @param operator    comparison operator
+     * @param value       value from the query
+     * @return true when comparison holds, always false for a missing record value
+     */
+    static public boolean compare(String recordValue, Parser.BinaryComparision.Operator operator, String value) {
+        if (recordValue == null) return false;
+        double a = number(recordValue);
+        double b = number(value);
+        int result;
+        if (!Double.isNaN(a) && !Double.isNaN(b)) {
+            result = Double.compare(a, b);
+        } else {
+            result = recordValue.compareTo(value);
+        }
+        switch (operator) {
+            case EQ:
+                return result == 0;
+            case LT:
+                return result < 0;
+            case HT:
+                return result > 0;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Parses a decimal number without throwing exceptions
+     *
+     * @param s text
+     * @return the number or {@link Double#NaN} when the text is not a number
+     */
+    static double number(String s) {
+        int len = s.length();
+        if (len == 0) return Double.NaN;
+        boolean digit = false;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digit = true;
+            } else if (!(c == '.' || ((c == '-' || c == '+') && i == 0))) {
+                return Double.NaN;
+            }
+        }
+        if (!digit) return Double.NaN;
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Evaluation state of a single record
+     */
+    static final class Context {
+        final Map<String, String> data;
+        final String text;
+        private final long maxLeaves;
+        private final long maxNanos;
+        private final long start;
+        private long leaves;
+        private final long[] wildcardMasks;
+        private final boolean[] wildcardMatched;
+
+        Context(Map<String, String> data, String text, ParserLimits limits) {
+            this(data, text, limits, 0);
+        }
+
+        Context(Map<String, String> data, String text, ParserLimits limits, int wildcardSlots) {
+            this.wildcardMasks = wildcardSlots == 0 ? null : new long[wildcardSlots];
+            this.wildcardMatched = wildcardSlots == 0 ? null : new boolean[wildcardSlots];
+            this.data = data;
+            this.text = text;
+            this.maxLeaves = limits.getMaxLeafEvaluations();
+            this.maxNanos = limits.getMaxEvaluationNanos();
+            this.start = maxNanos == Long.MAX_VALUE ? 0 : System.nanoTime();
+        }
+
+        void leaf() {
+            if (++leaves > maxLeaves) {
+                throw new ParserLimits.LimitExceededException("Too many leaf evaluations",
+                        String.format("Evaluation exceeds limit of %d leaf evaluations", maxLeaves));
+            }
+            if (maxNanos != Long.MAX_VALUE && checkDeadline() && System.nanoTime() - start > maxNanos) {
+                throw new ParserLimits.LimitExceededException("Deadline exceeded",
+                        String.format("Evaluation exceeds limit of %d ns", maxNanos));
+            }
+        }
+
+        /**
+         * The clock is read at leaves 1, 2, 4, ... up to {@link #DEADLINE_CHECK_INTERVAL} and then at every multiple
+         * of it, so also queries with few slow leaves are bounded
+         */
+        private boolean checkDeadline() {
+            return leaves <= DEADLINE_CHECK_INTERVAL ? (leaves & (leaves - 1)) == 0 : leaves % DEADLINE_CHECK_INTERVAL == 0;
+        }
+    }
+
+    /**
+     * Matches a wildcard, sharing result of its automaton with other wildcards of the same key through a memo slot
+     */
+    static final class WildcardCondition extends Condition {
+        final boolean neg;
+        final String key;
+        final WildcardAutomaton automaton;
+        final long bit;
+        final int slot;
+
+        WildcardCondition(boolean neg, String key, WildcardAutomaton automaton, long bit, int slot) {
+            this.neg = neg;
+            this.key = key;
+            this.automaton = automaton;
+            this.bit = bit;
+            this.slot = slot;
+        }
+
+        @Override
+        boolean test(Context c) {
+            c.leaf();
+            long mask;
+            if (slot >= 0 && c.wildcardMatched[slot]) {
+                mask = c.wildcardMasks[slot];
+            } else {
+                mask = match(c);
+                if (slot >= 0) {
+                    c.wildcardMasks[slot] = mask;
+                    c.wildcardMatched[slot] = true;
+                }
+            }
+            return neg != ((mask & bit) != 0);
+        }
+
+        private long match(Context c) {
+            if (key == null) return c.text == null ? 0 : automaton.matchWords(c.text);
+            String value = c.data.get(key);
+            return value == null ? 0 : automaton.match(value);
+        }
+    }
+
+    /**
+     * Compiled node of a query
+     */
+    static abstract class Condition {
+        static final Condition TRUE = new Condition() {
+            @Override
+            boolean test(Context c) {
+                return true;
+            }
+        };
+
+        abstract boolean test(Context c);
+    }
+
+    static final class TextCondition extends Condition {
+        final String term;
+
+        TextCondition(String term) {
+            this.term = term;
+        }
+
+        @Override
+        boolean test(Context c) {
+            c.leaf();
+            return c.text != null && c.text.contains(term);
+        }
+    }
+
+    static final class KeyValueCondition extends Condition {
+        final boolean neg;
+        final String key;
+        final String value;
+
+        KeyValueCondition(boolean neg, String key, String value) {
+            this.neg = neg;
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        boolean test(Context c) {
+            c.leaf();
+            return neg != Objects.equals(c.data.get(key), value);
+        }
+    }
+
+    /**
+     * Matches when the record value of the key is one of the values, negated when it is none of them
+     */
+    static final class MembershipCondition extends Condition {
+        final boolean neg;
+        final String key;
+        final ValueSet values;
+
+        MembershipCondition(boolean neg, String key, ValueSet values) {
+            this.neg = neg;
+            this.key = key;
+            this.values = values;
+        }
+
+        @Override
+        boolean test(Context c) {
+            c.leaf();
+            return neg != values.contains(c.data.get(key));
+        }
+    }
+
+    static final class ComparisonCondition extends Condition {
+        final String key;
+        final Parser.BinaryComparision.Operator operator;
+        final String value;
+
+        ComparisonCondition(String key, Parser.BinaryComparision.Operator operator, String value) {
+            this.key = key;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        boolean test(Context c) {
+            c.leaf();
+            return compare(c.data.get(key), operator, value);
+        }
+    }
+
+    static final class AllCondition extends Condition {
+        final Condition[] conditions;
+
+        AllCondition(Condition... conditions) {
+            this.conditions = conditions;
+        }
+
+        @Override
+        boolean test(Context c) {
+            for (Condition condition : conditions) {
+                if (!condition.test(c)) return false;
+            }
+            return true;
+        }
+    }
+
+    static final class AnyCondition extends Condition {
+        final Condition[] conditions;
+
+        AnyCondition(Condition... conditions) {
+            this.conditions = conditions;
+        }
+
+        @Override
+        boolean test(Context c) {
+            for (Condition condition : conditions) {
+                if (condition.test(c)) return true;
+            }
+            return false;
+        }
+    }
+}
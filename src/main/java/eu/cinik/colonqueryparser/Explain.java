@@ -0,0 +1,249 @@
+package eu.cinik.colonqueryparser;
+
+import java.util.*;
+
+/**
+ * <p>EXPLAIN ANALYZE for queries: evaluates a query with the semantics of {@link Evaluator} while counting, for every
+ * node of the parsed tree, how many times it was evaluated, how many times it matched, how many times it was skipped
+ * because its parent short-circuited and how much time was spent in it (including its children).</p>
+ *
+ * <p>Instrumentation lives in this class only, {@link Evaluator} is not affected. Counters are not synchronized, an
+ * explain instance is meant to be used by a single thread.</p>
+ */
+public class Explain {
+    private final Probe root;
+    private final int wildcardSlots;
+    private long records;
+    private long matched;
+
+    /**
+     * Compiles an instrumented query
+     *
+     * @param node parsed query, may be null
+     */
+    public Explain(Parser.Node node) {
+        Map<Parser.Wildcard, Evaluator.WildcardCondition> wildcards = node == null ? Collections.emptyMap() : Evaluator.wildcards(node);
+        this.root = node == null ? null : compile(node, wildcards);
+        int slots = 0;
+        for (Evaluator.WildcardCondition w : wildcards.values()) slots = Math.max(slots, w.slot + 1);
+        this.wildcardSlots = slots;
+    }
+
+    /**
+     * Evaluates the query against a record, collecting statistics
+     *
+     * @param data key values of the record
+     * @param text text of the record, may be null
+     * @return true when the record matches the query
+     */
+    public boolean matches(Map<String, String> data, String text) {
+        records++;
+        boolean result = root == null || root.test(new Evaluator.Context(data, text, ParserLimits.UNLIMITED, wildcardSlots));
+        if (result) matched++;
+        return result;
+    }
+
+    /**
+     * Evaluates the query against a dataset or a sample of it
+     *
+     * @param data  key values of records
+     * @param texts texts of records at the same positions, null when records have no text
+     * @return this explain
+     */
+    public Explain analyze(List<Map<String, String>> data, List<String> texts) {
+        for (int i = 0; i < data.size(); i++) {
+            matches(data.get(i), texts == null ? null : texts.get(i));
+        }
+        return this;
+    }
+
+    /**
+     * @return statistics of the root node, null for an empty query
+     */
+    public NodeStats getRoot() {
+        return root;
+    }
+
+    /**
+     * @return number of evaluated records
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * @return number of matched records
+     */
+    public long getMatched() {
+        return matched;
+    }
+
+    /**
+     * Renders statistics as an indented tree, one node per line
+     *
+     * @return the tree
+     */
+    public String toTree() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "records=%d matched=%d%n", records, matched));
+        if (root != null) tree(root, records, 0, sb);
+        return sb.toString();
+    }
+
+    private static void tree(Probe probe, long parentCalls, int level, StringBuilder sb) {
+        for (int i = 0; i < level; i++) sb.append("  ");
+        sb.append(probe.label)
+                .append(String.format(Locale.ROOT, "  calls=%d pass=%.1f%% skipped=%d time=%.3fms%n", probe.calls,
+                        probe.calls == 0 ? 0.0 : 100.0 * probe.passes / probe.calls, parentCalls - probe.calls,
+                        probe.nanos / 1e6));
+        for (Probe child : probe.children) tree(child, probe.calls, level + 1, sb);
+    }
+
+    /**
+     * Renders statistics as JSON, e.g. {@code {"records":10,"matched":2,"root":{"node":"AND","calls":10,"passes":2,
+     * "skipped":0,"nanos":1234,"children":[...]}}}
+     *
+     * @return the JSON
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"records\":").append(records).append(",\"matched\":").append(matched).append(",\"root\":");
+        if (root == null) sb.append("null");
+        else json(root, records, sb);
+        return sb.append('}').toString();
+    }
+
+    private static void json(Probe probe, long parentCalls, StringBuilder sb) {
+        sb.append("{\"node\":");
+        quote(probe.label, sb);
+        sb.append(",\"calls\":").append(probe.calls)
+                .append(",\"passes\":").append(probe.passes)
+                .append(",\"skipped\":").append(parentCalls - probe.calls)
+                .append(",\"nanos\":").append(probe.nanos);
+        if (!probe.children.isEmpty()) {
+            sb.append(",\"children\":[");
+            for (int i = 0; i < probe.children.size(); i++) {
+                if (i > 0) sb.append(',');
+                json(probe.children.get(i), probe.calls, sb);
+            }
+            sb.append(']');
+        }
+        sb.append('}');
+    }
+
+    private static void quote(String s, StringBuilder sb) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+            else sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    private static Probe compile(Parser.Node node, Map<Parser.Wildcard, Evaluator.WildcardCondition> wildcards) {
+        if (node instanceof Parser.AND || node instanceof Parser.OR) {
+            Parser.Binary binary = (Parser.Binary) node;
+            Probe left = compile(binary.getLeft(), wildcards);
+            Probe right = compile(binary.getRight(), wildcards);
+            return node instanceof Parser.AND
+                    ? new Probe(node, "AND", new Evaluator.AllCondition(left, right), left, right)
+                    : new Probe(node, "OR", new Evaluator.AnyCondition(left, right), left, right);
+        } else if (node instanceof Parser.Statement) {
+            List<Parser.Node> nodes = ((Parser.Statement) node).getNodes();
+            Probe[] children = new Probe[nodes.size()];
+            for (int i = 0; i < children.length; i++) {
+                children[i] = compile(nodes.get(i), wildcards);
+            }
+            return new Probe(node, "STATEMENT", new Evaluator.AllCondition(children), children);
+        } else if (node instanceof Parser.BinaryComparision) {
+            Parser.BinaryComparision bc = (Parser.BinaryComparision) node;
+            return new Probe(node, bc.getLeft() + bc.getOperator().getLabel() + bc.getRight(),
+                    Evaluator.compile(node, wildcards));
+        }
+        return new Probe(node, node.toString(), Evaluator.compile(node, wildcards));
+    }
+
+    /**
+     * Statistics of a node of the parsed tree
+     */
+    public interface NodeStats {
+        /**
+         * @return the parsed node
+         */
+        Parser.Node getNode();
+
+        /**
+         * @return number of evaluations
+         */
+        long getCalls();
+
+        /**
+         * @return number of evaluations which matched
+         */
+        long getPasses();
+
+        /**
+         * @return time spent evaluating the node and its children
+         */
+        long getNanos();
+
+        /**
+         * @return statistics of children, their skips are the calls of this node minus their calls
+         */
+        List<? extends NodeStats> getChildren();
+    }
+
+    private static final class Probe extends Evaluator.Condition implements NodeStats {
+        final Parser.Node node;
+        final String label;
+        final Evaluator.Condition condition;
+        final List<Probe> children;
+        long calls;
+        long passes;
+        long nanos;
+
+        Probe(Parser.Node node, String label, Evaluator.Condition condition, Probe... children) {
+            this.node = node;
+            this.label = label;
+            this.condition = condition;
+            this.children = Arrays.asList(children);
+        }
+
+        @Override
+        boolean test(Evaluator.Context c) {
+            calls++;
+            long start = System.nanoTime();
+            boolean result = condition.test(c);
+            nanos += System.nanoTime() - start;
+            if (result) passes++;
+            return result;
+        }
+
+        @Override
+        public Parser.Node getNode() {
+            return node;
+        }
+
+        @Override
+        public long getCalls() {
+            return calls;
+        }
+
+        @Override
+        public long getPasses() {
+            return passes;
+        }
+
+        @Override
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public List<Probe> getChildren() {
+            return children;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package eu.cinik.colonqueryparser;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * <p>Evaluates a query against records encoded by a {@link Dictionary} and counts values of facet keys of the matching
+ * records in the same pass, e.g. matches of {@code level>3} by {@code status} and by {@code region}.</p>
+ *
+ * <p>Counters are hash tables of int value ids to int counts, one per facet key, so they grow with the distinct values of
+ * the key in matching records rather than with all values of the dictionary, which ids are shared by all keys. Records
+ * are split into batches evaluated in parallel. Counters and a match set are allocated per split of the batches made by
+ * the parallel stream, a few per worker thread, rather than per batch, and merged at the end.</p>
+ *
+ * <p>A facet counter is immutable and can be shared by threads.</p>
+ */
+public class FacetCounter {
+    /**
+     * Default number of records evaluated by a single task
+     */
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    private final Dictionary dictionary;
+    private final List<String> facetKeys;
+    private final int[] facetKeyIds;
+    private final int batchSize;
+
+    /**
+     * Creates new facet counter with {@link #DEFAULT_BATCH_SIZE}
+     *
+     * @param dictionary dictionary which encoded the records
+     * @param facetKeys  keys whose values are counted
+     */
+    public FacetCounter(Dictionary dictionary, List<String> facetKeys) {
+        this(dictionary, facetKeys, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates new facet counter
+     *
+     * @param dictionary dictionary which encoded the records
+     * @param facetKeys  keys whose values are counted
+     * @param batchSize  number of records evaluated by a single task
+     */
+    public FacetCounter(Dictionary dictionary, List<String> facetKeys, int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        this.dictionary = dictionary;
+        this.facetKeys = Collections.unmodifiableList(new ArrayList<>(facetKeys));
+        this.facetKeyIds = new int[facetKeys.size()];
+        for (int i = 0; i < facetKeyIds.length; i++) {
+            facetKeyIds[i] = dictionary.keyId(facetKeys.get(i));
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Evaluates a query and counts facet values of the matching records
+     *
+     * @param node    parsed query, may be null
+     * @param records records encoded by the dictionary
+     * @param texts   texts of the records matched by {@link Parser.Text} terms, null when records have no text
+     * @return matching records and facet counts
+     */
+    public Result count(Parser.Node node, List<int[]> records, List<String> texts) {
+        Dictionary.Query query = dictionary.compile(node);
+        int batches = (records.size() + batchSize - 1) / batchSize;
+        // collect creates a partial per split of the range, not per batch, and fills it with all batches of the split
+        Partial result = IntStream.range(0, batches).parallel()
+                .collect(Partial::new, (partial, batch) -> {
+                    int to = Math.min(records.size(), (batch + 1) * batchSize);
+                    for (int i = batch * batchSize; i < to; i++) {
+                        int[] record = records.get(i);
+                        if (!query.matches(record, texts == null ? null : texts.get(i))) continue;
+                        partial.matches.set(i);
+                        for (int f = 0; f < facetKeyIds.length; f++) {
+                            int key = facetKeyIds[f];
+                            int value = key < record.length ? record[key] : Dictionary.MISSING;
+                            if (value != Dictionary.MISSING) partial.counts[f].increment(value);
+                        }
+                    }
+                }, Partial::merge);
+        return new Result(result.matches, result.counts);
+    }
+
+    /**
+     * Match set and counters of the batches of a split
+     */
+    private final class Partial {
+        final BitSet matches = new BitSet();
+        final Counts[] counts = new Counts[facetKeyIds.length];
+
+        Partial() {
+            for (int f = 0; f < counts.length; f++) counts[f] = new Counts();
+        }
+
+        void merge(Partial other) {
+            matches.or(other.matches);
+            for (int f = 0; f < counts.length; f++) counts[f].add(other.counts[f]);
+        }
+    }
+
+    /**
+     * Counts by value id in an open addressing hash table, sized by the distinct values of a single facet key seen by
+     * a split instead of all values of the dictionary, which are shared by all keys
+     */
+    private static final class Counts {
+        private int[] ids = newIds(16);
+        private int[] counts = new int[16];
+        private int size;
+
+        private static int[] newIds(int capacity) {
+            int[] ids = new int[capacity];
+            Arrays.fill(ids, Dictionary.MISSING);
+            return ids;
+        }
+
+        void increment(int id) {
+            add(id, 1);
+        }
+
+        void add(int id, int count) {
+            int mask = ids.length - 1;
+            int i = mix(id) & mask;
+            while (ids[i] != Dictionary.MISSING) {
+                if (ids[i] == id) {
+                    counts[i] += count;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            ids[i] = id;
+            counts[i] = count;
+            if (++size * 2 > ids.length) grow();
+        }
+
+        void add(Counts other) {
+            for (int i = 0; i < other.ids.length; i++) {
+                if (other.ids[i] != Dictionary.MISSING) add(other.ids[i], other.counts[i]);
+            }
+        }
+
+        /**
+         * @return count of the value id, 0 when not counted
+         */
+        int get(int id) {
+            int mask = ids.length - 1;
+            for (int i = mix(id) & mask; ids[i] != Dictionary.MISSING; i = (i + 1) & mask) {
+                if (ids[i] == id) return counts[i];
+            }
+            return 0;
+        }
+
+        /**
+         * @return counted value ids
+         */
+        int[] ids() {
+            int[] result = new int[size];
+            int n = 0;
+            for (int id : ids) {
+                if (id != Dictionary.MISSING) result[n++] = id;
+            }
+            return result;
+        }
+
+        private void grow() {
+            int[] oldIds = ids;
+            int[] oldCounts = counts;
+            ids = newIds(oldIds.length * 2);
+            counts = new int[oldIds.length * 2];
+            size = 0;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] != Dictionary.MISSING) add(oldIds[i], oldCounts[i]);
+            }
+        }
+
+        private static int mix(int id) {
+            return id * 0x9E3779B9 >>> 7;
+        }
+    }
+
+    /**
+     * Matching records and counts of their facet values
+     */
+    public final class Result {
+        private final BitSet matches;
+        private final Counts[] counts;
+
+        Result(BitSet matches, Counts[] counts) {
+            this.matches = matches;
+            this.counts = counts;
+        }
+
+        /**
+         * @return indexes of matching records, a copy
+         */
+        public BitSet getMatches() {
+            return (BitSet) matches.clone();
+        }
+
+        /**
+         * @return number of matching records
+         */
+        public int getMatched() {
+            return matches.cardinality();
+        }
+
+        /**
+         * @param key   facet key
+         * @param value value
+         * @return number of matching records with the value of the key
+         * @throws IllegalArgumentException when the key is not a facet key
+         */
+        public int count(String key, String value) {
+            int id = dictionary.lookupValue(value);
+            return id == Dictionary.MISSING ? 0 : counts[facet(key)].get(id);
+        }
+
+        /**
+         * @param key facet key
+         * @return values of the key in matching records with their counts, the most frequent first
+         * @throws IllegalArgumentException when the key is not a facet key
+         */
+        public Map<String, Integer> counts(String key) {
+            Counts facet = counts[facet(key)];
+            List<Integer> ids = new ArrayList<>();
+            for (int id : facet.ids()) ids.add(id);
+            ids.sort((a, b) -> facet.get(a) != facet.get(b) ? Integer.compare(facet.get(b), facet.get(a)) : Integer.compare(a, b));
+            Map<String, Integer> result = new LinkedHashMap<>();
+            for (int id : ids) result.put(dictionary.value(id), facet.get(id));
+            return result;
+        }
+
+        private int facet(String key) {
+            int facet = facetKeys.indexOf(key);
+            if (facet < 0) throw new IllegalArgumentException("Not a facet key: " + key);
+            return facet;
+        }
+    }
+}
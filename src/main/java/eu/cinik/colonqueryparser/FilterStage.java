@@ -0,0 +1,276 @@
+package eu.cinik.colonqueryparser;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * <p>Non-blocking pipeline stage passing only records matching a query, following the Reactive Streams semantics of
+ * {@link Reactive.Processor}.</p>
+ *
+ * <p>The stage never requests more than {@code prefetch} records ahead from its upstream and replenishes the demand in
+ * batches of three quarters of {@code prefetch} as records are consumed, so a slow subscriber throttles the producer
+ * and the buffer of the stage is bounded by {@code prefetch}. Records not matching the query do not consume demand of
+ * the subscriber.</p>
+ *
+ * <p>Records are evaluated and signalled by a drain loop which processes everything available in one go, so the cost of
+ * scheduling is amortized over batches of records. The loop runs on the thread signalling the stage, or on the given
+ * executor, in which case at most one task of the stage is queued or running at any time and a bounded executor is not
+ * overrun. A rejected task, an exception thrown by the evaluation (e.g. {@link ParserLimits.LimitExceededException})
+ * or by the record accessors cancels the upstream and is signalled by {@link Reactive.Subscriber#onError(Throwable)}.</p>
+ *
+ * <p>The stage supports a single subscriber.</p>
+ *
+ * @param <T> type of records
+ */
+public class FilterStage<T> implements Reactive.Processor<T, T> {
+    private final Evaluator evaluator;
+    private final Function<? super T, Map<String, String>> data;
+    private final Function<? super T, String> text;
+    private final int prefetch;
+    private final int limit;
+    private final Executor executor;
+
+    private final Queue<T> queue;
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicReference<Reactive.Subscription> upstream = new AtomicReference<>();
+    private final AtomicReference<Reactive.Subscriber<? super T>> downstream = new AtomicReference<>();
+    private volatile boolean done;
+    private volatile boolean cancelled;
+    private volatile Throwable error;
+    /**
+     * records consumed since the last upstream request, accessed by the drain loop only
+     */
+    private int consumed;
+
+    /**
+     * Creates new stage evaluating records on the signalling thread
+     *
+     * @param evaluator compiled query
+     * @param data      key values of a record
+     * @param text      text of a record, may return null
+     * @param prefetch  maximum number of records requested ahead from the upstream
+     */
+    public FilterStage(Evaluator evaluator, Function<? super T, Map<String, String>> data, Function<? super T, String> text,
+                       int prefetch) {
+        this(evaluator, data, text, prefetch, null);
+    }
+
+    /**
+     * Creates new stage
+     *
+     * @param evaluator compiled query
+     * @param data      key values of a record
+     * @param text      text of a record, may return null
+     * @param prefetch  maximum number of records requested ahead from the upstream
+     * @param executor  executor to evaluate records on, null to evaluate on the signalling thread
+     */
+    public FilterStage(Evaluator evaluator, Function<? super T, Map<String, String>> data, Function<? super T, String> text,
+                       int prefetch, Executor executor) {
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch must be positive: " + prefetch);
+        }
+        this.evaluator = evaluator;
+        this.data = data;
+        this.text = text;
+        this.prefetch = prefetch;
+        this.limit = prefetch - (prefetch >> 2);
+        this.executor = executor;
+        this.queue = new ArrayBlockingQueue<>(prefetch);
+    }
+
+    @Override
+    public void subscribe(Reactive.Subscriber<? super T> subscriber) {
+        if (!downstream.compareAndSet(null, subscriber)) {
+            subscriber.onSubscribe(new Reactive.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("FilterStage supports a single subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new Reactive.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    fail(new IllegalArgumentException("Non-positive request: " + n));
+                    return;
+                }
+                long r, u;
+                do {
+                    r = requested.get();
+                    u = r + n < 0 ? Long.MAX_VALUE : r + n;
+                } while (!requested.compareAndSet(r, u));
+                schedule();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                cancelUpstream();
+                schedule();
+            }
+        });
+        schedule();
+    }
+
+    @Override
+    public void onSubscribe(Reactive.Subscription subscription) {
+        if (!upstream.compareAndSet(null, subscription)) {
+            subscription.cancel();
+            return;
+        }
+        if (cancelled) {
+            subscription.cancel();
+        } else {
+            subscription.request(prefetch);
+        }
+    }
+
+    @Override
+    public void onNext(T item) {
+        if (done) return;
+        if (!queue.offer(item)) {
+            fail(new IllegalStateException("Upstream signalled more records than requested"));
+            return;
+        }
+        schedule();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        if (done) return;
+        error = throwable;
+        done = true;
+        schedule();
+    }
+
+    @Override
+    public void onComplete() {
+        done = true;
+        schedule();
+    }
+
+    private void fail(Throwable throwable) {
+        cancelUpstream();
+        error = throwable;
+        done = true;
+        schedule();
+    }
+
+    private void cancelUpstream() {
+        Reactive.Subscription s = upstream.getAndSet(CANCELLED);
+        if (s != null && s != CANCELLED) s.cancel();
+    }
+
+    private void schedule() {
+        if (wip.getAndIncrement() != 0) return;
+        if (executor == null) {
+            drain();
+            return;
+        }
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            cancelUpstream();
+            error = e;
+            done = true;
+            drain();
+        }
+    }
+
+    private void drain() {
+        int missed = 1;
+        while (true) {
+            Reactive.Subscriber<? super T> s = downstream.get();
+            if (s != null && !emit(s)) return;
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) return;
+        }
+    }
+
+    /**
+     * @return false when the subscription terminated
+     */
+    private boolean emit(Reactive.Subscriber<? super T> s) {
+        long r = requested.get();
+        long emitted = 0;
+        while (true) {
+            if (cancelled) {
+                queue.clear();
+                return false;
+            }
+            Throwable e = error;
+            if (e != null) {
+                terminate();
+                s.onError(e);
+                return false;
+            }
+            if (emitted == r) break;
+            boolean d = done;
+            T item = queue.poll();
+            if (item == null) {
+                if (d) {
+                    terminate();
+                    s.onComplete();
+                    return false;
+                }
+                break;
+            }
+            boolean matches;
+            try {
+                matches = evaluator.matches(data.apply(item), text.apply(item));
+            } catch (RuntimeException ex) {
+                cancelUpstream();
+                terminate();
+                s.onError(ex);
+                return false;
+            }
+            if (++consumed == limit) {
+                consumed = 0;
+                Reactive.Subscription u = upstream.get();
+                if (u != null) u.request(limit);
+            }
+            if (matches) {
+                s.onNext(item);
+                emitted++;
+            }
+        }
+        if (done && error == null && queue.isEmpty()) {
+            terminate();
+            s.onComplete();
+            return false;
+        }
+        if (emitted != 0 && r != Long.MAX_VALUE) {
+            requested.addAndGet(-emitted);
+        }
+        return true;
+    }
+
+    private void terminate() {
+        cancelled = true;
+        queue.clear();
+    }
+
+    private static final Reactive.Subscription CANCELLED = new Reactive.Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    };
+}
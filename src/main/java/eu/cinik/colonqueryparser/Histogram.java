@@ -0,0 +1,132 @@
+package eu.cinik.colonqueryparser;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Histogram of non-negative long values with fixed power of two buckets.</p>
+ *
+ * <p>Bucket 0 counts value 0, bucket {@code i} counts values from {@code 2^(i-1)} to {@code 2^i - 1}.
+ * Recording is lock free and contention is spread by {@link LongAdder}s.</p>
+ */
+public class Histogram {
+    static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public Histogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a single value, negative values are recorded as 0
+     *
+     * @param value value to record
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        buckets[bucket(value)].increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    static int bucket(long value) {
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * Takes a snapshot of recorded values. Values recorded concurrently may or may not be included.
+     *
+     * @return snapshot
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return new Snapshot(counts, sum.sum(), max.get());
+    }
+
+    /**
+     * Immutable view of a {@link Histogram}
+     */
+    static public class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long sum, long max) {
+            this.counts = counts;
+            long c = 0;
+            for (long n : counts) c += n;
+            this.count = c;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Number of values in a bucket
+         *
+         * @param bucket bucket index from 0 to 63
+         * @return count
+         */
+        public long getBucketCount(int bucket) {
+            return counts[bucket];
+        }
+
+        /**
+         * Upper bound (inclusive) of values counted by a bucket
+         *
+         * @param bucket bucket index from 0 to 63
+         * @return upper bound
+         */
+        static public long bucketUpperBound(int bucket) {
+            return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+        }
+
+        /**
+         * Estimates percentile as the upper bound of the bucket containing it, capped by the maximum
+         *
+         * @param percentile percentile from 0 to 100
+         * @return estimated value
+         */
+        public long percentile(double percentile) {
+            if (count == 0) return 0;
+            long rank = (long) Math.ceil(count * percentile / 100.0);
+            if (rank < 1) rank = 1;
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(bucketUpperBound(i), max);
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "Histogram{count=" + count + ", mean=" + getMean() + ", p50=" + percentile(50)
+                    + ", p99=" + percentile(99) + ", max=" + max + "}";
+        }
+    }
+}
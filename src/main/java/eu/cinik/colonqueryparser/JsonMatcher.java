@@ -0,0 +1,497 @@
+package eu.cinik.colonqueryparser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * <p>Evaluates a parsed query directly against UTF-8 encoded JSON objects, without deserializing them into maps first.
+ * Semantics are the ones of {@link Evaluator} over the top level fields of the object.</p>
+ *
+ * <p>Keys referenced by the query are resolved to slots when the matcher is created. A record is scanned lazily, only
+ * as far as the evaluation needs: a term asks for the value of its key and the scanner reads fields until it finds it,
+ * decoding only the values of referenced keys and skipping other values, nested objects and arrays included, by
+ * brace matching. Once the {@code AND}/{@code OR} outcome is decided the rest of the record is never read.</p>
+ *
+ * <p>Values are mapped as follows:</p>
+ * <ul>
+ * <li>strings are unescaped, numbers, {@code true} and {@code false} are taken as written in the JSON</li>
+ * <li>{@code null}, objects and arrays are missing values</li>
+ * <li>when a key repeats, its first value is used</li>
+ * <li>{@link Parser.Text} terms and wildcards without a key are matched against the value of the text field given to
+ * the constructor</li>
+ * </ul>
+ *
+ * <p>The matcher is immutable and can be shared by threads.</p>
+ */
+public class JsonMatcher {
+    private final byte[][] keys;
+    private final int textSlot;
+    private final Comparisons comparisons;
+    private final JsonCondition condition;
+
+    /**
+     * Creates new matcher without a text field, {@link Parser.Text} terms never match
+     *
+     * @param node parsed query, may be null
+     */
+    public JsonMatcher(Parser.Node node) {
+        this(node, null);
+    }
+
+    /**
+     * Creates new matcher
+     *
+     * @param node      parsed query, may be null
+     * @param textField top level field with the text matched by {@link Parser.Text} terms, may be null
+     */
+    public JsonMatcher(Parser.Node node, String textField) {
+        this(node, textField, (operator, value) -> recordValue -> Evaluator.compare(recordValue, operator, value));
+    }
+
+    /**
+     * Creates new matcher with own semantics of {@link Parser.BinaryComparision}s
+     *
+     * @param node        parsed query, may be null
+     * @param textField   top level field with the text matched by {@link Parser.Text} terms, may be null
+     * @param comparisons compiles comparisons, {@link Evaluator#compare} by default
+     */
+    JsonMatcher(Parser.Node node, String textField, Comparisons comparisons) {
+        this.comparisons = comparisons;
+        Map<String, Integer> slots = new LinkedHashMap<>();
+        this.textSlot = textField == null ? -1 : slot(slots, textField);
+        this.condition = node == null ? fields -> true : compile(node, slots);
+        this.keys = new byte[slots.size()][];
+        for (Map.Entry<String, Integer> e : slots.entrySet()) {
+            keys[e.getValue()] = e.getKey().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Evaluates the query against a JSON object
+     *
+     * @param json UTF-8 encoded JSON object
+     * @return true when the object matches the query
+     * @throws JsonException when the JSON read so far is malformed
+     */
+    public boolean matches(byte[] json) {
+        return matches(json, 0, json.length);
+    }
+
+    /**
+     * Evaluates the query against a JSON object
+     *
+     * @param json   buffer with UTF-8 encoded JSON object
+     * @param offset start of the object in the buffer
+     * @param length length of the object
+     * @return true when the object matches the query
+     * @throws JsonException when the JSON read so far is malformed
+     */
+    public boolean matches(byte[] json, int offset, int length) {
+        return matches(ByteBuffer.wrap(json), offset, length);
+    }
+
+    /**
+     * Evaluates the query against a JSON object in place, e.g. in a memory mapped file
+     *
+     * @param json   buffer with UTF-8 encoded JSON object, its position and limit are ignored
+     * @param offset start of the object in the buffer
+     * @param length length of the object
+     * @return true when the object matches the query
+     * @throws JsonException when the JSON read so far is malformed
+     */
+    public boolean matches(ByteBuffer json, int offset, int length) {
+        return condition.test(new Scan(json, offset, offset + length, keys));
+    }
+
+    /**
+     * Evaluates the query against fields read by another scanner
+     */
+    boolean matches(Fields fields) {
+        return condition.test(fields);
+    }
+
+    /**
+     * @return UTF-8 encoded keys referenced by the query, indexed by slots
+     */
+    byte[][] keys() {
+        return keys;
+    }
+
+    /**
+     * @return slot of the text field, -1 when there is none
+     */
+    int textSlot() {
+        return textSlot;
+    }
+
+    /**
+     * Reads all top level fields of a JSON object as {@link JsonMatcher} sees them, a full parse to be evaluated by
+     * {@link Evaluator}
+     *
+     * @param json UTF-8 encoded JSON object
+     * @return values of fields, without missing ones
+     * @throws JsonException when the JSON is malformed
+     */
+    public static Map<String, String> fields(byte[] json) {
+        Map<String, String> fields = new HashMap<>();
+        Scan scan = new Scan(ByteBuffer.wrap(json), 0, json.length, new byte[0][]);
+        while (scan.next()) {
+            String key = scan.lastKey();
+            String value = scan.readValue();
+            if (value != null) fields.putIfAbsent(key, value);
+        }
+        return fields;
+    }
+
+    private static int slot(Map<String, Integer> slots, String key) {
+        return slots.computeIfAbsent(key, k -> slots.size());
+    }
+
+    private JsonCondition compile(Parser.Node node, Map<String, Integer> slots) {
+        if (node instanceof Parser.Text) {
+            String term = ((Parser.Text) node).getText();
+            int slot = textSlot;
+            return fields -> {
+                String text = fields.value(slot);
+                return text != null && text.contains(term);
+            };
+        } else if (node instanceof Parser.KeyValue) {
+            Parser.KeyValue kv = (Parser.KeyValue) node;
+            int slot = slot(slots, kv.getKey());
+            boolean neg = kv.isNeg();
+            String value = kv.getValue();
+            return fields -> neg != value.equals(fields.value(slot));
+        } else if (node instanceof Parser.Wildcard) {
+            Parser.Wildcard w = (Parser.Wildcard) node;
+            WildcardAutomaton automaton = new WildcardAutomaton(Collections.singletonList(w.getPattern()));
+            boolean neg = w.isNeg();
+            boolean words = w.getKey() == null;
+            int slot = words ? textSlot : slot(slots, w.getKey());
+            return fields -> {
+                String value = fields.value(slot);
+                if (value == null) return neg;
+                return neg != ((words ? automaton.matchWords(value) : automaton.match(value)) != 0);
+            };
+        } else if (node instanceof Parser.BinaryComparision) {
+            Parser.BinaryComparision bc = (Parser.BinaryComparision) node;
+            if (!(bc.getLeft() instanceof Parser.Text) || !(bc.getRight() instanceof Parser.Text)) {
+                throw new IllegalArgumentException("Comparison operands must be terms: " + bc.getLeft() + bc + bc.getRight());
+            }
+            int slot = slot(slots, ((Parser.Text) bc.getLeft()).getText());
+            Parser.BinaryComparision.Operator operator = bc.getOperator();
+            java.util.function.Predicate<String> comparison =
+                    comparisons.compile(operator, ((Parser.Text) bc.getRight()).getText());
+            return fields -> comparison.test(fields.value(slot));
+        } else if (node instanceof Parser.AND || node instanceof Parser.Statement || node instanceof Parser.OR) {
+            boolean and = !(node instanceof Parser.OR);
+            List<Parser.Node> operands = new ArrayList<>();
+            Canonicalizer.flatten(node, and, operands);
+            JsonCondition[] conditions = new JsonCondition[operands.size()];
+            for (int i = 0; i < conditions.length; i++) {
+                conditions[i] = compile(operands.get(i), slots);
+            }
+            return and ? fields -> {
+                for (JsonCondition c : conditions) {
+                    if (!c.test(fields)) return false;
+                }
+                return true;
+            } : fields -> {
+                for (JsonCondition c : conditions) {
+                    if (c.test(fields)) return true;
+                }
+                return false;
+            };
+        } else throw new IllegalArgumentException("unknown token node " + node);
+    }
+
+    /**
+     * Decodes bytes of a buffer, its position and limit are ignored
+     */
+    static String string(ByteBuffer bytes, int from, int length, Charset charset) {
+        if (bytes.hasArray()) return new String(bytes.array(), bytes.arrayOffset() + from, length, charset);
+        byte[] copy = new byte[length];
+        for (int i = 0; i < length; i++) copy[i] = bytes.get(from + i);
+        return new String(copy, charset);
+    }
+
+    /**
+     * Compiles a comparison with a query value into a test of record values
+     */
+    @FunctionalInterface
+    interface Comparisons {
+        /**
+         * @param operator operator
+         * @param value    value from the query
+         * @return test of a record value, which may be null for a missing value
+         */
+        java.util.function.Predicate<String> compile(Parser.BinaryComparision.Operator operator, String value);
+    }
+
+    @FunctionalInterface
+    private interface JsonCondition {
+        boolean test(Fields fields);
+    }
+
+    /**
+     * Values of the keys referenced by a query, by slots
+     */
+    static abstract class Fields {
+        /**
+         * @param slot slot of a key, -1 for none
+         * @return value of the key, null when missing
+         */
+        abstract String value(int slot);
+    }
+
+    /**
+     * Lazy scan of a single JSON object
+     */
+    static final class Scan extends Fields {
+        private final ByteBuffer json;
+        private final int end;
+        private final byte[][] keys;
+        private final String[] values;
+        private final boolean[] found;
+        private int pos;
+        private int keyStart;
+        private int keyEnd;
+        private boolean started;
+        private boolean finished;
+
+        Scan(ByteBuffer json, int from, int end, byte[][] keys) {
+            this.json = json;
+            this.pos = from;
+            this.end = end;
+            this.keys = keys;
+            this.values = new String[keys.length];
+            this.found = new boolean[keys.length];
+        }
+
+        /**
+         * Reads fields until the key is found
+         */
+        @Override
+        String value(int slot) {
+            if (slot < 0) return null;
+            while (!found[slot] && next()) {
+                int key = key();
+                if (key >= 0 && !found[key]) {
+                    values[key] = readValue();
+                    found[key] = true;
+                } else {
+                    skipValue();
+                }
+            }
+            return values[slot];
+        }
+
+        /**
+         * Moves to the next field, {@link #lastKey()} is its key and the value is to be read or skipped
+         *
+         * @return false at the end of the object
+         */
+        boolean next() {
+            if (finished) return false;
+            skipWhitespace();
+            if (!started) {
+                expect('{');
+                started = true;
+                skipWhitespace();
+                if (peek() == '}') {
+                    finished = true;
+                    return false;
+                }
+            } else {
+                byte b = read();
+                if (b == '}') {
+                    finished = true;
+                    return false;
+                } else if (b != ',') throw error("Expected ',' or '}'");
+                skipWhitespace();
+            }
+            expect('"');
+            keyStart = pos;
+            skipString();
+            keyEnd = pos - 1;
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            return true;
+        }
+
+        private int key() {
+            if (escaped(keyStart, keyEnd)) {
+                byte[] decoded = lastKey().getBytes(StandardCharsets.UTF_8);
+                for (int k = 0; k < keys.length; k++) {
+                    if (Arrays.equals(keys[k], decoded)) return k;
+                }
+                return -1;
+            }
+            int length = keyEnd - keyStart;
+            for (int k = 0; k < keys.length; k++) {
+                if (keys[k].length == length && equals(keys[k], keyStart)) return k;
+            }
+            return -1;
+        }
+
+        private boolean equals(byte[] key, int from) {
+            for (int i = 0; i < key.length; i++) {
+                if (json.get(from + i) != key[i]) return false;
+            }
+            return true;
+        }
+
+        private boolean escaped(int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (json.get(i) == '\\') return true;
+            }
+            return false;
+        }
+
+        String lastKey() {
+            return decode(keyStart, keyEnd);
+        }
+
+        /**
+         * Reads the value of the current field
+         *
+         * @return value, null for null, objects and arrays
+         */
+        String readValue() {
+            byte b = peek();
+            if (b == '"') {
+                pos++;
+                int from = pos;
+                skipString();
+                return decode(from, pos - 1);
+            } else if (b == '{' || b == '[') {
+                skipValue();
+                return null;
+            }
+            int from = pos;
+            skipValue();
+            String literal = string(json, from, pos - from, StandardCharsets.US_ASCII);
+            return literal.equals("null") ? null : literal;
+        }
+
+        /**
+         * Skips the value of the current field, nested objects and arrays by brace matching
+         */
+        void skipValue() {
+            int depth = 0;
+            do {
+                byte b = read();
+                if (b == '"') {
+                    skipString();
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    if (--depth < 0) throw error("Unexpected '" + (char) b + "'");
+                } else if (depth == 0 && !literal(b)) {
+                    throw error("Unexpected character");
+                } else if (depth == 0) {
+                    while (pos < end && literal(json.get(pos))) pos++;
+                }
+            } while (depth > 0);
+        }
+
+        private static boolean literal(byte b) {
+            return b >= '0' && b <= '9' || b >= 'a' && b <= 'z' || b == '-' || b == '+' || b == '.' || b == 'E';
+        }
+
+        /**
+         * Skips a string after its opening quote, including the closing quote
+         */
+        private void skipString() {
+            while (true) {
+                byte b = read();
+                if (b == '"') return;
+                if (b == '\\') read();
+            }
+        }
+
+        private String decode(int from, int to) {
+            if (!escaped(from, to)) return string(json, from, to - from, StandardCharsets.UTF_8);
+            StringBuilder b = new StringBuilder(to - from);
+            int start = from;
+            for (int i = from; i < to; i++) {
+                if (json.get(i) != '\\') continue;
+                b.append(string(json, start, i - start, StandardCharsets.UTF_8));
+                char c = (char) json.get(++i);
+                switch (c) {
+                    case 'b':
+                        b.append('\b');
+                        break;
+                    case 'f':
+                        b.append('\f');
+                        break;
+                    case 'n':
+                        b.append('\n');
+                        break;
+                    case 'r':
+                        b.append('\r');
+                        break;
+                    case 't':
+                        b.append('\t');
+                        break;
+                    case 'u':
+                        if (i + 4 >= to) throw error("Invalid unicode escape");
+                        try {
+                            b.append((char) Integer.parseInt(string(json, i + 1, 4, StandardCharsets.US_ASCII), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("Invalid unicode escape");
+                        }
+                        i += 4;
+                        break;
+                    default:
+                        b.append(c);
+                }
+                start = i + 1;
+            }
+            return b.append(string(json, start, to - start, StandardCharsets.UTF_8)).toString();
+        }
+
+        private void skipWhitespace() {
+            while (pos < end && (json.get(pos) == ' ' || json.get(pos) == '\n' || json.get(pos) == '\r' || json.get(pos) == '\t')) pos++;
+        }
+
+        private byte peek() {
+            if (pos >= end) throw error("Unexpected end");
+            return json.get(pos);
+        }
+
+        private byte read() {
+            if (pos >= end) throw error("Unexpected end");
+            return json.get(pos++);
+        }
+
+        private void expect(char c) {
+            if (read() != c) throw error("Expected '" + c + "'");
+        }
+
+        private JsonException error(String category) {
+            return new JsonException(category, String.format("%s at %d", category, pos));
+        }
+    }
+
+    /**
+     * Malformed JSON
+     */
+    public static class JsonException extends RuntimeException {
+        private final String category;
+
+        public JsonException(String category, String message) {
+            super(message);
+            this.category = category;
+        }
+
+        /**
+         * @return message without the position, suitable for grouping errors
+         */
+        public String getCategory() {
+            return category;
+        }
+    }
+}
@@ -11,9 +11,17 @@ class Lexer {
     private List<LexerState> allStates = new ArrayList<LexerState>();
     private LexerState currentState = null;
     private Integer currentChar;
+    private int tokens;
+    private int chars;
+    private final ParserLimits limits;
 
 
     Lexer() {
+        this(ParserLimits.UNLIMITED);
+    }
+
+    Lexer(ParserLimits limits) {
+        this.limits = limits;
         allStates.add(new EOFState());
         allStates.add(new SingleCharState(':', TokenType.COLON));
         allStates.add(new SingleCharState('-', TokenType.NEG));
@@ -29,43 +37,74 @@ class Lexer {
 
     Token next(Reader reader) {
         if (currentChar == null) {
-            try {
-                currentChar = reader.read();
-            } catch (IOException e) {
-                throw new LexerException(e);
-            }
+            currentChar = read(reader);
         }
         if (currentState == null) {
             this.currentState = this.allStates.stream().filter(lexerState -> lexerState.accept(currentChar))
                     .findFirst().orElse(null);
             if (this.currentState == null) {
-                throw new LexerException(String.format("Unexpected character [%d] '%c'", currentChar, currentChar));
+                throw new LexerException("Unexpected character", String.format("Unexpected character [%d] '%c'", currentChar, currentChar));
             }
         }
         while (true) {
-            try {
-                if (!currentState.accept(currentChar = reader.read())) break;
-            } catch (IOException e) {
-                throw new LexerException(e);
-            }
-            ; //do nothing
+            if (!currentState.accept(currentChar = read(reader))) break;
         }
         Token token = currentState.token();
         currentState.reset();
         currentState = null;
+        if (++tokens > limits.getMaxTokens()) {
+            throw new ParserLimits.LimitExceededException("Too many tokens",
+                    String.format("Query exceeds limit of %d tokens", limits.getMaxTokens()));
+        }
         return token;
     }
 
+    private int read(Reader reader) {
+        int c;
+        try {
+            c = reader.read();
+        } catch (IOException e) {
+            throw new LexerException(e);
+        }
+        if (c != -1 && ++chars > limits.getMaxChars()) {
+            throw new ParserLimits.LimitExceededException("Too many characters",
+                    String.format("Query exceeds limit of %d characters", limits.getMaxChars()));
+        }
+        return c;
+    }
+
+    /**
+     * @return number of tokens returned by {@link #next(Reader)} so far
+     */
+    int tokens() {
+        return tokens;
+    }
+
     /**
      * Exception represented all token parsing (lexing) problems
      */
     static class LexerException extends RuntimeException {
+        private final String category;
+
         public LexerException(String message) {
+            this(message, message);
+        }
+
+        public LexerException(String category, String message) {
             super(message);
+            this.category = category;
         }
 
         public LexerException(Throwable cause) {
             super(cause);
+            this.category = "I/O error";
+        }
+
+        /**
+         * @return message without details specific to the input, suitable for grouping errors
+         */
+        public String getCategory() {
+            return category;
         }
     }
 
@@ -171,8 +210,13 @@ class TextState implements LexerState {
         this.accepted = false;
     }
 
+    /**
+     * @return {@link TokenType#WILDCARD} for an unquoted term containing {@code *}, quoted strings are lexed by
+     * {@link QuotedState} and stay {@link TokenType#TEXTTOKEN}
+     */
     public Token token() {
-        if (!this.whitespace) return new TextToken(TokenType.TEXTTOKEN, buffer.toString());
+        if (!this.whitespace && buffer.indexOf("*") >= 0) return new TextToken(TokenType.WILDCARD, buffer.toString());
+        else if (!this.whitespace) return new TextToken(TokenType.TEXTTOKEN, buffer.toString());
         else if (this.whitespace) return new TextToken(TokenType.WHITESPACE, buffer.toString());
         else return null;
     }
@@ -238,6 +282,7 @@ enum TokenType {
     LT,
     EQ,
     TEXTTOKEN,
+    WILDCARD,
     WHITESPACE,
     EOF
 }
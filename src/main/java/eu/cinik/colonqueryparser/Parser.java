@@ -18,6 +18,7 @@ import java.util.function.Supplier;
  * <li><i>some_key&lt;some_value</i> - use of inequality operator {@link BinaryComparision.Operator}</li>
  * <li><i>some_key&gt;some_value</i> - use of inequality operator {@link BinaryComparision.Operator}</li>
  * <li><i>-some_key:some_value</i> - negated {@link KeyValue}</li>
+ * <li><i>some_key:some_val*</i>, <i>*text</i> - {@link Wildcard} value or term</li>
  * <li><i>key:value AND term OR something</i> - use of {@link AND}, {@link OR} operators</li>
  * <li><i>key:value AND (term OR something)</i> - use of parenthesis</li>
  * </ul>
@@ -26,6 +27,11 @@ import java.util.function.Supplier;
  *     A term represented by {@link TextToken} is any non-whitespace character string (as per {@link Character#isWhitespace(char)})
  * </p>
  * <p>
+ *     An unquoted term containing {@code *} is a {@link Wildcard}, so {@code 2*3} doesn't match the literal text
+ *     {@code 2*3} as a substring but words of the form {@code 2...3}. Quote the term, e.g. {@code "2*3"}, to match
+ *     a literal {@code *}.
+ * </p>
+ * <p>
  *     All whitespaces (as per {@link Character#isWhitespace(char)}) except for quoted strings are ignored.
  * </p>
  * <p>
@@ -68,9 +74,18 @@ import java.util.function.Supplier;
  *     </pre>
  */
 public class Parser {
-    private Lexer lexer = new Lexer();
+    private final Lexer lexer;
     private Token currentToken;
     private Reader reader;
+    private final ParserMetrics metrics;
+    private final ParserLimits limits;
+    private int depth;
+    private int nodes;
+    private Map<String, Integer> termsPerKey;
+    // events of the event API not reported yet, a text term (null operator) or the start of a comparison
+    private CharSequence[] deferredTexts = new CharSequence[8];
+    private BinaryComparision.Operator[] deferredOperators = new BinaryComparision.Operator[8];
+    private int deferred;
 
     /**
      * Creates new parser for a program text to be read from supplied reader.
@@ -79,7 +94,54 @@ public class Parser {
      * @param reader the reader to read program to parse
      */
     public Parser(Reader reader) {
+        this(reader, ParserLimits.UNLIMITED, ParserMetrics.NOOP);
+    }
+
+    /**
+     * Creates new parser which rejects programs crossing any of supplied limits with
+     * {@link ParserLimits.LimitExceededException}.
+     *
+     * @param reader the reader to read program to parse
+     * @param limits limits to enforce
+     */
+    public Parser(Reader reader, ParserLimits limits) {
+        this(reader, limits, ParserMetrics.NOOP);
+    }
+
+    /**
+     * Creates new parser which reports parsing latency, sizes and errors to supplied metrics.
+     *
+     * @param reader  the reader to read program to parse
+     * @param metrics metrics to report to
+     */
+    public Parser(Reader reader, ParserMetrics metrics) {
+        this(reader, ParserLimits.UNLIMITED, metrics);
+    }
+
+    /**
+     * Creates new parser which enforces supplied limits and reports to supplied metrics.
+     *
+     * @param reader  the reader to read program to parse
+     * @param limits  limits to enforce
+     * @param metrics metrics to report to
+     */
+    public Parser(Reader reader, ParserLimits limits, ParserMetrics metrics) {
         this.reader = reader;
+        this.limits = limits;
+        this.metrics = metrics;
+        this.lexer = new Lexer(limits);
+    }
+
+    private <T extends Node> T node(T node) {
+        countNode();
+        return node;
+    }
+
+    private void countNode() {
+        if (++nodes > limits.getMaxNodes()) {
+            throw new ParserLimits.LimitExceededException("Too many nodes",
+                    String.format("Query exceeds limit of %d nodes", limits.getMaxNodes()));
+        }
     }
 
     Token token() {
@@ -115,9 +177,9 @@ public class Parser {
     <T extends Token> T expect(Class<T> t, TokenType tokenType) {
         Token token = consumeToken(t);
         if (token == null)
-            throw new ParserException(String.format("Expected token %s but nothing found", tokenType.toString()));
+            throw new ParserException("Expected token", String.format("Expected token %s but nothing found", tokenType.toString()));
         else if (token.getTokenType() != tokenType)
-            throw new ParserException(String.format("Expected token %s but %s found",
+            throw new ParserException("Expected token", String.format("Expected token %s but %s found",
                     tokenType.toString(),
                     token.getTokenType().toString()));
         else if (!token.getClass().equals(t)) {
@@ -133,6 +195,27 @@ public class Parser {
      * @return tree of parsed nodes
      */
     public Node statement() {
+        if (metrics == ParserMetrics.NOOP) {
+            return statementList();
+        }
+        long start = System.nanoTime();
+        Node node;
+        try {
+            node = statementList();
+        } catch (Lexer.LexerException e) {
+            metrics.lexerError(e.getCategory());
+            throw e;
+        } catch (ParserException e) {
+            metrics.parserError(e.getCategory());
+            throw e;
+        }
+        long nanos = System.nanoTime() - start;
+        int[] depthAndNodes = depthAndNodes(node);
+        metrics.parsed(nanos, lexer.tokens(), depthAndNodes[0], depthAndNodes[1]);
+        return node;
+    }
+
+    Node statementList() {
         List<Node> result = new ArrayList<>();
         Node n;
         while ((n = or()) != null) {
@@ -145,47 +228,76 @@ public class Parser {
             return result.get(0);
         } else if (result.isEmpty()) {
             return null;
-        } else return new Statement(result);
+        } else return node(new Statement(result));
     }
 
     Node bracketed() {
         if ((consume(Token.class, TokenType.OBRACKET)) != null) {
-            Node stmt = statement();
+            if (++depth > limits.getMaxDepth()) {
+                throw new ParserLimits.LimitExceededException("Too deep",
+                        String.format("Query exceeds limit of %d nested brackets", limits.getMaxDepth()));
+            }
+            Node stmt = statementList();
             expect(Token.class, TokenType.CBRACKET);
+            depth--;
             return stmt;
         } else return null;
     }
 
 
     Node or() {
+        //chains like 'a OR b OR c' are balanced, 'a OR' without right side returns left only
         Node left;
         if ((left = and()) != null) {
-            Text token;
-            if ((token = verifyText()) != null && token.getText().equalsIgnoreCase("OR")) {
+            List<Node> operands = new ArrayList<>();
+            operands.add(left);
+            while (isOperator("OR")) {
                 expectText();
                 Node right = and();
-                if (right != null) {
-                    return new OR(left, right);
-                } else return left;
+                if (right == null) break;
+                countNode();
+                operands.add(right);
             }
+            return chain(false, operands, 0, operands.size());
         }
-        return left;
+        return null;
     }
 
     Node and() {
         //it's a relaxed implementation - if there's no right side, then return left only
         Node left;
         if ((left = binaryComparision()) != null) {
-            Text token;
-            if ((token = verifyText()) != null && token.getText().equalsIgnoreCase("AND")) {
+            List<Node> operands = new ArrayList<>();
+            operands.add(left);
+            while (isOperator("AND")) {
                 expectText();
                 Node right = binaryComparision();
-                if (right != null) {
-                    return new AND(left, right);
-                } else return left;
+                if (right == null) break;
+                countNode();
+                operands.add(right);
             }
+            return chain(true, operands, 0, operands.size());
         }
-        return left;
+        return null;
+    }
+
+    /**
+     * Builds a balanced tree of a chain of {@link AND}s or {@link OR}s, e.g. {@code OR(a,OR(b,c))} of
+     * {@code a OR b OR c}. The depth of the tree grows with the logarithm of the number of operands, so recursive
+     * traversals of long chains don't overflow the stack
+     *
+     * @param and      true for {@link AND}, false for {@link OR}
+     * @param operands operands of the chain
+     * @param from     index of the first operand, inclusive
+     * @param to       index of the last operand, exclusive
+     * @return the only operand or the root of the tree
+     */
+    static Node chain(boolean and, List<Node> operands, int from, int to) {
+        if (to - from == 1) return operands.get(from);
+        int middle = from + (to - from) / 2;
+        Node left = chain(and, operands, from, middle);
+        Node right = chain(and, operands, middle, to);
+        return and ? new AND(left, right) : new OR(left, right);
     }
 
 
@@ -197,6 +309,9 @@ public class Parser {
         binCompToToken.put(BinaryComparision.Operator.HT, TokenType.HT);
     }
 
+    private static final BinaryComparision.Operator[] COMPARISON_LEVELS = {
+            BinaryComparision.Operator.LT, BinaryComparision.Operator.HT, BinaryComparision.Operator.EQ};
+
     Node binaryComparision() {
         return binaryComparision(BinaryComparision.Operator.LT, () ->
                 binaryComparision(BinaryComparision.Operator.HT, () ->
@@ -213,7 +328,7 @@ public class Parser {
                 expect(Token.class, tt);
                 Node right = leftRight.get();
                 if (right != null) {
-                    return new BinaryComparision(oper, left, right);
+                    return node(new BinaryComparision(oper, left, right));
                 } else return left;
             }
         }
@@ -221,24 +336,39 @@ public class Parser {
     }
 
     Node keyValue() {
-        Text key;
+        TextToken key;
         consume(TextToken.class, TokenType.WHITESPACE);
         Token neg = consume(Token.class, TokenType.NEG);
         consume(TextToken.class, TokenType.WHITESPACE);
-        if ((key = acceptText()) != null) {
+        if ((key = acceptTerm()) != null) {
             consume(TextToken.class, TokenType.WHITESPACE);
             if (consume(Token.class, TokenType.COLON) != null) {
-                Text value = expectText();
+                TextToken value = expectTerm();
                 consume(TextToken.class, TokenType.WHITESPACE);
-                return new KeyValue(neg != null, key.getText(), value.getText());
+                countTerm(key.getText());
+                if (value.getTokenType() == TokenType.WILDCARD) {
+                    return node(new Wildcard(neg != null, key.getText(), value.getText()));
+                }
+                return node(new KeyValue(neg != null, key.getText(), value.getText()));
+            } else if (key.getTokenType() == TokenType.WILDCARD) {
+                return node(new Wildcard(false, null, key.getText()));
             } else {
-                return key;
+                return node(new Text(key.getText()));
             }
-        } else if (neg != null) return new Text("-");
+        } else if (neg != null) return node(new Text("-"));
         else return null;
 
     }
 
+    private void countTerm(String key) {
+        if (limits.getMaxTermsPerKey() == Integer.MAX_VALUE) return;
+        if (termsPerKey == null) termsPerKey = new HashMap<>();
+        if (termsPerKey.merge(key, 1, Integer::sum) > limits.getMaxTermsPerKey()) {
+            throw new ParserLimits.LimitExceededException("Too many terms per key",
+                    String.format("Query exceeds limit of %d terms for key '%s'", limits.getMaxTermsPerKey(), key));
+        }
+    }
+
     Text expectText() {
         Text t = acceptText();
         if (t == null) {
@@ -247,6 +377,27 @@ public class Parser {
         return t;
     }
 
+    TextToken expectTerm() {
+        TextToken t = acceptTerm();
+        if (t == null) {
+            throw new ParserException("Expected text");
+        }
+        return t;
+    }
+
+    /**
+     * Accepts a text or a wildcard token
+     */
+    TextToken acceptTerm() {
+        consume(TextToken.class, TokenType.WHITESPACE);
+        TextToken textToken;
+        if ((textToken = consume(TextToken.class, TokenType.TEXTTOKEN)) != null
+                || (textToken = consume(TextToken.class, TokenType.WILDCARD)) != null) {
+            consume(TextToken.class, TokenType.WHITESPACE);
+            return textToken;
+        } else return null;
+    }
+
     Text acceptText() {
         consume(TextToken.class, TokenType.WHITESPACE);
         TextToken textToken;
@@ -275,13 +426,418 @@ public class Parser {
         //throw new ParserException("invalid token " + this.currentToken);
     }
 
+    /**
+     * <p>Parses a single statement pushing its clauses to a handler as they are parsed, without building the nodes tree.</p>
+     *
+     * <p>Every statement (the whole query and every bracketed group) is reported between
+     * {@link EventHandler#startStatement()} and {@link EventHandler#endStatement()}, even when it has a single clause.
+     * Operators are reported when they are read, after their first operand (see {@link EventHandler#enterAnd()}), so
+     * events are pushed while the rest of the query is being parsed and nothing but a text term that may turn out to be
+     * the left operand of a comparison is held back. Limits are enforced and metrics recorded as by
+     * {@link #statement()}, the depth and number of nodes are the ones of the tree {@link #statement()} would build.</p>
+     *
+     * @param handler handler to receive events
+     */
+    public void statement(EventHandler handler) {
+        if (metrics == ParserMetrics.NOOP) {
+            statementList(handler);
+            return;
+        }
+        long start = System.nanoTime();
+        ShapeMeter meter = new ShapeMeter(handler);
+        try {
+            statementList(meter);
+        } catch (Lexer.LexerException e) {
+            metrics.lexerError(e.getCategory());
+            throw e;
+        } catch (ParserException e) {
+            metrics.parserError(e.getCategory());
+            throw e;
+        }
+        long nanos = System.nanoTime() - start;
+        metrics.parsed(nanos, lexer.tokens(), meter.depth, meter.nodes);
+    }
+
+    /**
+     * Parses a single statement into an arena instead of a tree of objects.
+     *
+     * @param arena arena to add nodes to
+     * @return node id of the statement in the arena, -1 for an empty statement
+     */
+    public int statement(QueryArena arena) {
+        QueryArena.Builder builder = arena.builder();
+        statement(builder);
+        return builder.root();
+    }
+
+    void statementList(EventHandler handler) {
+        handler.startStatement();
+        int clauses = 0;
+        while (or(handler)) {
+            if (++clauses == 2) countNode();
+            if (currentToken.getTokenType() == TokenType.EOF) {
+                break;
+            }
+        }
+        handler.endStatement();
+    }
+
+    boolean bracketed(EventHandler handler) {
+        if ((consume(Token.class, TokenType.OBRACKET)) != null) {
+            if (++depth > limits.getMaxDepth()) {
+                throw new ParserLimits.LimitExceededException("Too deep",
+                        String.format("Query exceeds limit of %d nested brackets", limits.getMaxDepth()));
+            }
+            flush(handler);
+            statementList(handler);
+            expect(Token.class, TokenType.CBRACKET);
+            depth--;
+            return true;
+        } else return false;
+    }
+
+    boolean or(EventHandler handler) {
+        if (!and(handler)) return false;
+        if (isOperator("OR")) {
+            handler.enterOr();
+            do {
+                expectText();
+                if (!and(handler)) break;
+                countNode();
+            } while (isOperator("OR"));
+            handler.exitOr();
+        }
+        return true;
+    }
+
+    boolean and(EventHandler handler) {
+        if (!binaryComparision(handler)) return false;
+        if (isOperator("AND")) {
+            handler.enterAnd();
+            do {
+                expectText();
+                if (!binaryComparision(handler)) break;
+                countNode();
+            } while (isOperator("AND"));
+            handler.exitAnd();
+        }
+        return true;
+    }
+
+    private boolean isOperator(String operator) {
+        Text token = verifyText();
+        return token != null && token.getText().equalsIgnoreCase(operator);
+    }
+
+    boolean binaryComparision(EventHandler handler) {
+        boolean parsed = binaryComparision(0, handler);
+        flush(handler);
+        return parsed;
+    }
+
+    /**
+     * Parses a comparison of the given precedence level (LT, HT, EQ). A text term is deferred rather than reported
+     * so that a comparison of two terms can be reported as a single event, anything else flushes the deferred events
+     * first. On return the level either added a single deferred text term or flushed all deferred events.
+     */
+    boolean binaryComparision(int level, EventHandler handler) {
+        if (level == COMPARISON_LEVELS.length) return factor(handler);
+        int before = deferred;
+        if (!binaryComparision(level + 1, handler)) return false;
+        BinaryComparision.Operator oper = COMPARISON_LEVELS[level];
+        TokenType tt = binCompToToken.get(oper);
+        if ((verify(Token.class, tt)) != null) {
+            expect(Token.class, tt);
+            boolean leftTerm = deferred == before + 1;
+            int mark = deferred;
+            defer(null, oper);
+            if (binaryComparision(level + 1, handler)) {
+                countNode();
+                if (leftTerm && deferred == mark + 2) {
+                    CharSequence key = deferredTexts[mark - 1];
+                    CharSequence value = deferredTexts[mark + 1];
+                    deferred = mark - 1;
+                    flush(handler);
+                    handler.comparison(key, oper, value);
+                } else {
+                    flush(handler);
+                    handler.exitComparison(oper);
+                }
+                return true;
+            }
+            // missing right operand, nothing was reported since the operator
+            deferred = mark;
+        }
+        return true;
+    }
+
+    private void defer(CharSequence text, BinaryComparision.Operator operator) {
+        if (deferred == deferredTexts.length) {
+            deferredTexts = Arrays.copyOf(deferredTexts, deferred * 2);
+            deferredOperators = Arrays.copyOf(deferredOperators, deferred * 2);
+        }
+        deferredTexts[deferred] = text;
+        deferredOperators[deferred++] = operator;
+    }
+
+    /**
+     * Reports deferred text terms and comparison operators
+     */
+    private void flush(EventHandler handler) {
+        for (int i = 0; i < deferred; i++) {
+            if (deferredOperators[i] == null) handler.text(deferredTexts[i]);
+            else handler.enterComparison(deferredOperators[i]);
+            deferredTexts[i] = null;
+        }
+        deferred = 0;
+    }
+
+    boolean factor(EventHandler handler) {
+        consume(TextToken.class, TokenType.WHITESPACE);
+        return keyValue(handler) || bracketed(handler);
+    }
+
+    boolean keyValue(EventHandler handler) {
+        TextToken key;
+        consume(TextToken.class, TokenType.WHITESPACE);
+        Token neg = consume(Token.class, TokenType.NEG);
+        consume(TextToken.class, TokenType.WHITESPACE);
+        if ((key = acceptTerm()) != null) {
+            consume(TextToken.class, TokenType.WHITESPACE);
+            countNode();
+            if (consume(Token.class, TokenType.COLON) != null) {
+                TextToken value = expectTerm();
+                consume(TextToken.class, TokenType.WHITESPACE);
+                countTerm(key.getText());
+                flush(handler);
+                if (value.getTokenType() == TokenType.WILDCARD) {
+                    handler.wildcard(key.getText(), value.getText(), neg != null);
+                } else {
+                    handler.keyValue(key.getText(), value.getText(), neg != null);
+                }
+            } else if (key.getTokenType() == TokenType.WILDCARD) {
+                flush(handler);
+                handler.wildcard(null, key.getText(), false);
+            } else {
+                defer(key.getText(), null);
+            }
+            return true;
+        } else if (neg != null) {
+            countNode();
+            defer("-", null);
+            return true;
+        } else return false;
+    }
+
     /**
      * Generic exception for all parsing issues
      */
     static public class ParserException extends RuntimeException {
+        private final String category;
+
         public ParserException(String message) {
+            this(message, message);
+        }
+
+        public ParserException(String category, String message) {
             super(message);
+            this.category = category;
+        }
+
+        /**
+         * @return message without details specific to the input, suitable for grouping errors
+         */
+        public String getCategory() {
+            return category;
+        }
+    }
+
+    /**
+     * Passes events to a handler computing depth and number of nodes of the tree they describe, like
+     * {@link #depthAndNodes(Node)} does for a tree
+     */
+    private static final class ShapeMeter implements EventHandler {
+        private static final byte STATEMENT = 0;
+        private static final byte CHAIN = 1;
+        private static final byte COMPARISON = 2;
+
+        private final EventHandler handler;
+        // depths and node counts of completed operands of unfinished statements and operators
+        private int[] depths = new int[16];
+        private int[] counts = new int[16];
+        private int size;
+        private int[] frames = new int[16];
+        private byte[] kinds = new byte[16];
+        private int open;
+        private boolean completed;
+        int depth;
+        int nodes;
+
+        ShapeMeter(EventHandler handler) {
+            this.handler = handler;
+        }
+
+        private void push(int depth, int nodes) {
+            if (size == depths.length) {
+                depths = Arrays.copyOf(depths, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            depths[size] = depth;
+            counts[size++] = nodes;
+            completed = true;
+        }
+
+        private void enter(byte kind) {
+            if (open == frames.length) {
+                frames = Arrays.copyOf(frames, open * 2);
+                kinds = Arrays.copyOf(kinds, open * 2);
+            }
+            // operators are reported after their first operand
+            frames[open] = kind != STATEMENT && completed ? size - 1 : size;
+            kinds[open++] = kind;
+            completed = false;
+        }
+
+        private void exit() {
+            int start = frames[--open];
+            int count = size - start;
+            int d = 0;
+            int n = 0;
+            if (count == 1) {
+                d = depths[start];
+                n = counts[start];
+            } else if (count > 1) {
+                for (int i = start; i < size; i++) {
+                    d = Math.max(d, depths[i]);
+                    n += counts[i];
+                }
+                if (kinds[open] == CHAIN) {
+                    d = chainDepth(start, size);
+                    n += count - 1;
+                } else {
+                    d++;
+                    n++;
+                }
+            }
+            size = start;
+            if (open == 0) {
+                depth = d;
+                nodes = n;
+            } else if (count > 0) push(d, n);
+            else completed = false;
+        }
+
+        private int chainDepth(int from, int to) {
+            if (to - from == 1) return depths[from];
+            int middle = from + (to - from) / 2;
+            return 1 + Math.max(chainDepth(from, middle), chainDepth(middle, to));
+        }
+
+        @Override
+        public void startStatement() {
+            enter(STATEMENT);
+            handler.startStatement();
+        }
+
+        @Override
+        public void endStatement() {
+            exit();
+            handler.endStatement();
+        }
+
+        @Override
+        public void enterAnd() {
+            enter(CHAIN);
+            handler.enterAnd();
+        }
+
+        @Override
+        public void exitAnd() {
+            exit();
+            handler.exitAnd();
         }
+
+        @Override
+        public void enterOr() {
+            enter(CHAIN);
+            handler.enterOr();
+        }
+
+        @Override
+        public void exitOr() {
+            exit();
+            handler.exitOr();
+        }
+
+        @Override
+        public void comparison(CharSequence key, BinaryComparision.Operator operator, CharSequence value) {
+            push(2, 3);
+            handler.comparison(key, operator, value);
+        }
+
+        @Override
+        public void enterComparison(BinaryComparision.Operator operator) {
+            enter(COMPARISON);
+            handler.enterComparison(operator);
+        }
+
+        @Override
+        public void exitComparison(BinaryComparision.Operator operator) {
+            exit();
+            handler.exitComparison(operator);
+        }
+
+        @Override
+        public void keyValue(CharSequence key, CharSequence value, boolean neg) {
+            push(1, 1);
+            handler.keyValue(key, value, neg);
+        }
+
+        @Override
+        public void wildcard(CharSequence key, CharSequence pattern, boolean neg) {
+            push(1, 1);
+            handler.wildcard(key, pattern, neg);
+        }
+
+        @Override
+        public void text(CharSequence text) {
+            push(1, 1);
+            handler.text(text);
+        }
+    }
+
+    /**
+     * Computes depth and number of nodes of a tree without recursion
+     *
+     * @param node node tree, may be null
+     * @return two element array of depth and number of nodes
+     */
+    static int[] depthAndNodes(Node node) {
+        if (node == null) return new int[]{0, 0};
+        int depth = 0;
+        int nodes = 0;
+        Deque<Node> pending = new ArrayDeque<>();
+        Deque<Integer> levels = new ArrayDeque<>();
+        pending.push(node);
+        levels.push(1);
+        while (!pending.isEmpty()) {
+            Node n = pending.pop();
+            int level = levels.pop();
+            nodes++;
+            depth = Math.max(depth, level);
+            if (n instanceof Binary) {
+                pending.push(((Binary) n).getLeft());
+                levels.push(level + 1);
+                pending.push(((Binary) n).getRight());
+                levels.push(level + 1);
+            } else if (n instanceof Statement) {
+                for (Node child : ((Statement) n).getNodes()) {
+                    pending.push(child);
+                    levels.push(level + 1);
+                }
+            }
+        }
+        return new int[]{depth, nodes};
     }
 
     /**
@@ -323,6 +879,11 @@ public class Parser {
             public void visit(Parser.BinaryComparision binaryComparision) {
                 stack.push(binaryComparision);
             }
+
+            @Override
+            public void visit(Parser.Wildcard wildcard) {
+                stack.push(wildcard);
+            }
         };
         node.visit(visitor);
         return stack;
@@ -369,6 +930,16 @@ public class Parser {
             public void visit(BinaryComparision binaryComparision) {
                 result.add(binaryComparision.operator.label);
             }
+
+            @Override
+            public void visit(Wildcard wildcard) {
+                if (wildcard.isNeg()) result.add("-");
+                if (wildcard.key != null) {
+                    result.add(":");
+                    result.add(wildcard.key);
+                }
+                result.add(wildcard.pattern);
+            }
         });
         return result;
     }
@@ -386,6 +957,92 @@ public class Parser {
         void visit(NodeVisitor visitor);
     }
 
+    /**
+     * Receives events of {@link Parser#statement(EventHandler)} in the order of the query. Key, value and text
+     * arguments are only valid during the call, use {@link CharSequence#toString()} to keep them.
+     */
+    public interface EventHandler {
+        /**
+         * Start of a statement, a conjunction of the clauses until the matching {@link #endStatement()}
+         */
+        default void startStatement() {
+        }
+
+        default void endStatement() {
+        }
+
+        /**
+         * Start of a chain of {@link AND}s like {@code a AND b AND c}, reported after its first operand: the clause
+         * reported just before this event and the ones reported until the matching {@link #exitAnd()} are its
+         * operands. When the right operand is missing (e.g. {@code a AND}) there is only one
+         */
+        default void enterAnd() {
+        }
+
+        default void exitAnd() {
+        }
+
+        /**
+         * Start of a chain of {@link OR}s like {@code a OR b OR c}, reported after its first operand like
+         * {@link #enterAnd()}. When the right operand is missing there is only one
+         */
+        default void enterOr() {
+        }
+
+        default void exitOr() {
+        }
+
+        /**
+         * {@link BinaryComparision} of two terms
+         *
+         * @param key      left term
+         * @param operator operator
+         * @param value    right term
+         */
+        default void comparison(CharSequence key, BinaryComparision.Operator operator, CharSequence value) {
+        }
+
+        /**
+         * Start of {@link BinaryComparision} whose operands are not both terms, reported between its left operand and
+         * its right one, which is followed by the matching {@link #exitComparison(BinaryComparision.Operator)}
+         *
+         * @param operator operator
+         */
+        default void enterComparison(BinaryComparision.Operator operator) {
+        }
+
+        default void exitComparison(BinaryComparision.Operator operator) {
+        }
+
+        /**
+         * {@link KeyValue}
+         *
+         * @param key   key
+         * @param value value
+         * @param neg   negation
+         */
+        default void keyValue(CharSequence key, CharSequence value, boolean neg) {
+        }
+
+        /**
+         * {@link Wildcard}
+         *
+         * @param key     key, null for a wildcard text term
+         * @param pattern pattern
+         * @param neg     negation
+         */
+        default void wildcard(CharSequence key, CharSequence pattern, boolean neg) {
+        }
+
+        /**
+         * {@link Text} term
+         *
+         * @param text text
+         */
+        default void text(CharSequence text) {
+        }
+    }
+
     /**
      * Implementation of visitor for {@link Node}s tree
      */
@@ -426,6 +1083,14 @@ public class Parser {
         void visit(Statement statement);
 
         void visit(BinaryComparision binaryComparision);
+
+        /**
+         * Callback when visiting {@link Wildcard} term, ignored by default
+         *
+         * @param wildcard wildcard term
+         */
+        default void visit(Wildcard wildcard) {
+        }
     }
 
     /**
@@ -448,17 +1113,27 @@ public class Parser {
             return right;
         }
 
+        /**
+         * Structural equality, nodes of the same kind ({@link AND}, {@link OR} or {@link BinaryComparision}) with equal
+         * operands are equal regardless of their classes, e.g. nodes of {@link QueryArena} equal nodes of the parser
+         */
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            Binary and = (Binary) o;
-            return Objects.equals(left, and.left) && Objects.equals(right, and.right);
+            if (!(o instanceof Binary) || kind(this) != kind(o)) return false;
+            Binary other = (Binary) o;
+            return Objects.equals(getLeft(), other.getLeft()) && Objects.equals(getRight(), other.getRight());
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(left, right);
+            return Objects.hash(getLeft(), getRight());
+        }
+
+        private static Class<?> kind(Object node) {
+            if (node instanceof AND) return AND.class;
+            else if (node instanceof OR) return OR.class;
+            else return BinaryComparision.class;
         }
 
 
@@ -557,6 +1232,16 @@ public class Parser {
             return operator;
         }
 
+        @Override
+        public boolean equals(Object o) {
+            return super.equals(o) && operator == ((BinaryComparision) o).operator;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(operator, left, right);
+        }
+
         @Override
         public String toString() {
             return operator.label;
@@ -578,6 +1263,19 @@ public class Parser {
             return text;
         }
 
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Text t = (Text) o;
+            return Objects.equals(text, t.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(text);
+        }
+
         @Override
         public void visit(NodeVisitor visitor) {
             visitor.visit(this);
@@ -644,6 +1342,65 @@ public class Parser {
         }
     }
 
+    /**
+     * Unquoted term or value containing wildcard '*' which matches any sequence of characters, e.g. 'name:jo*' or '*son'.
+     * A wildcard with a key matches whole value of the key, a wildcard without key matches any whitespace separated word
+     * of a text. Quoted strings never contain wildcards.
+     */
+    static public class Wildcard implements Node {
+        private boolean neg;
+        private String key;
+        private String pattern;
+
+        Wildcard(boolean neg, String key, String pattern) {
+            this.neg = neg;
+            this.key = key;
+            this.pattern = pattern;
+        }
+
+        /**
+         * @return key or null for a wildcard text term
+         */
+        public String getKey() {
+            return key;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public boolean isNeg() {
+            return neg;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Wildcard wildcard = (Wildcard) o;
+            return neg == wildcard.neg && Objects.equals(key, wildcard.key) && Objects.equals(pattern, wildcard.pattern);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(neg, key, pattern);
+        }
+
+        @Override
+        public void visit(NodeVisitor visitor) {
+            visitor.visit(this);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder b = new StringBuilder();
+            if (neg) b.append("-");
+            if (key != null) b.append(key).append(":");
+            b.append(pattern);
+            return b.toString();
+        }
+    }
+
     /**
      * Statement is just a list of nodes
      */
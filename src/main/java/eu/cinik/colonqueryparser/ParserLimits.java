@@ -0,0 +1,147 @@
+package eu.cinik.colonqueryparser;
+
+/**
+ * <p>Resource limits which bound worst-case cost of parsing and evaluating a query.</p>
+ *
+ * <p>Parsing limits are enforced by {@link Lexer} and {@link Parser} while the input is being read, so an abusive query
+ * is rejected as soon as a limit is crossed instead of after the whole tree has been built. Evaluation limits are enforced
+ * by {@link Evaluator} for every evaluated record.</p>
+ *
+ * <p>Instances are immutable, use {@code with*} methods to derive limits:</p>
+ * <pre>
+ *     {@code
+ *         ParserLimits limits = ParserLimits.UNLIMITED.withMaxChars(4096).withMaxDepth(16);
+ *         Parser.Node node = new Parser(reader, limits).statement();
+ *     }
+ * </pre>
+ */
+public final class ParserLimits {
+
+    /**
+     * No limits at all
+     */
+    public static final ParserLimits UNLIMITED = new ParserLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+            Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private final int maxChars;
+    private final int maxTokens;
+    private final int maxDepth;
+    private final int maxNodes;
+    private final int maxTermsPerKey;
+    private final long maxLeafEvaluations;
+    private final long maxEvaluationNanos;
+
+    private ParserLimits(int maxChars, int maxTokens, int maxDepth, int maxNodes, int maxTermsPerKey,
+                         long maxLeafEvaluations, long maxEvaluationNanos) {
+        this.maxChars = maxChars;
+        this.maxTokens = maxTokens;
+        this.maxDepth = maxDepth;
+        this.maxNodes = maxNodes;
+        this.maxTermsPerKey = maxTermsPerKey;
+        this.maxLeafEvaluations = maxLeafEvaluations;
+        this.maxEvaluationNanos = maxEvaluationNanos;
+    }
+
+    /**
+     * @param maxChars maximum number of characters of a query
+     * @return new limits
+     */
+    public ParserLimits withMaxChars(int maxChars) {
+        return new ParserLimits(maxChars, maxTokens, maxDepth, maxNodes, maxTermsPerKey, maxLeafEvaluations, maxEvaluationNanos);
+    }
+
+    /**
+     * @param maxTokens maximum number of tokens of a query, including whitespaces
+     * @return new limits
+     */
+    public ParserLimits withMaxTokens(int maxTokens) {
+        return new ParserLimits(maxChars, maxTokens, maxDepth, maxNodes, maxTermsPerKey, maxLeafEvaluations, maxEvaluationNanos);
+    }
+
+    /**
+     * Chains of {@code AND}/{@code OR} are parsed into balanced trees, so the depth of a parsed tree stays within
+     * the nesting of brackets times the logarithm of the number of nodes
+     *
+     * @param maxDepth maximum nesting of brackets
+     * @return new limits
+     */
+    public ParserLimits withMaxDepth(int maxDepth) {
+        return new ParserLimits(maxChars, maxTokens, maxDepth, maxNodes, maxTermsPerKey, maxLeafEvaluations, maxEvaluationNanos);
+    }
+
+    /**
+     * @param maxNodes maximum number of nodes of parsed tree
+     * @return new limits
+     */
+    public ParserLimits withMaxNodes(int maxNodes) {
+        return new ParserLimits(maxChars, maxTokens, maxDepth, maxNodes, maxTermsPerKey, maxLeafEvaluations, maxEvaluationNanos);
+    }
+
+    /**
+     * @param maxTermsPerKey maximum number of {@link Parser.KeyValue} terms with the same key
+     * @return new limits
+     */
+    public ParserLimits withMaxTermsPerKey(int maxTermsPerKey) {
+        return new ParserLimits(maxChars, maxTokens, maxDepth, maxNodes, maxTermsPerKey, maxLeafEvaluations, maxEvaluationNanos);
+    }
+
+    /**
+     * @param maxLeafEvaluations maximum number of evaluated terms per evaluated record
+     * @return new limits
+     */
+    public ParserLimits withMaxLeafEvaluations(long maxLeafEvaluations) {
+        return new ParserLimits(maxChars, maxTokens, maxDepth, maxNodes, maxTermsPerKey, maxLeafEvaluations, maxEvaluationNanos);
+    }
+
+    /**
+     * @param maxEvaluationNanos maximum time of evaluation of a single record in nanoseconds
+     * @return new limits
+     */
+    public ParserLimits withMaxEvaluationNanos(long maxEvaluationNanos) {
+        return new ParserLimits(maxChars, maxTokens, maxDepth, maxNodes, maxTermsPerKey, maxLeafEvaluations, maxEvaluationNanos);
+    }
+
+    public int getMaxChars() {
+        return maxChars;
+    }
+
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+    public int getMaxTermsPerKey() {
+        return maxTermsPerKey;
+    }
+
+    public long getMaxLeafEvaluations() {
+        return maxLeafEvaluations;
+    }
+
+    public long getMaxEvaluationNanos() {
+        return maxEvaluationNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ParserLimits{maxChars=" + maxChars + ", maxTokens=" + maxTokens + ", maxDepth=" + maxDepth
+                + ", maxNodes=" + maxNodes + ", maxTermsPerKey=" + maxTermsPerKey
+                + ", maxLeafEvaluations=" + maxLeafEvaluations + ", maxEvaluationNanos=" + maxEvaluationNanos + "}";
+    }
+
+    /**
+     * Thrown when parsing or evaluation crosses one of the {@link ParserLimits}
+     */
+    static public class LimitExceededException extends Parser.ParserException {
+        public LimitExceededException(String category, String message) {
+            super(category, message);
+        }
+    }
+}
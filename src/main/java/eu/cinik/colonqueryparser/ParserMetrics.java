@@ -0,0 +1,60 @@
+package eu.cinik.colonqueryparser;
+
+/**
+ * <p>Instrumentation hooks called by {@link Parser} at a few well-defined points.</p>
+ *
+ * <p>All methods have empty default implementations, so an implementation overrides only the callbacks it is
+ * interested in. {@link #NOOP} is used when no metrics are supplied; its calls are inlined and removed by the JIT and
+ * the parser does not even read the clock for it.</p>
+ *
+ * <p>Implementations must be thread safe as a single instance is usually shared by all parsers.</p>
+ *
+ * @see DefaultParserMetrics
+ */
+public interface ParserMetrics {
+
+    /**
+     * Metrics which ignore all events
+     */
+    ParserMetrics NOOP = new ParserMetrics() {
+    };
+
+    /**
+     * Callback when a statement has been parsed successfully
+     *
+     * @param nanos  time spent on parsing in nanoseconds
+     * @param tokens number of tokens read by lexer, including whitespaces and EOF
+     * @param depth  depth of the parsed nodes tree, 0 for an empty statement
+     * @param nodes  number of nodes in the parsed tree
+     */
+    default void parsed(long nanos, int tokens, int depth, int nodes) {
+    }
+
+    /**
+     * Callback when lexing of a statement failed
+     *
+     * @param category message category, see {@link Lexer.LexerException#getCategory()}
+     */
+    default void lexerError(String category) {
+    }
+
+    /**
+     * Callback when parsing of a statement failed
+     *
+     * @param category message category, see {@link Parser.ParserException#getCategory()}
+     */
+    default void parserError(String category) {
+    }
+
+    /**
+     * Callback when a cache of parsed queries or results has been hit
+     */
+    default void cacheHit() {
+    }
+
+    /**
+     * Callback when a cache of parsed queries or results has been missed
+     */
+    default void cacheMiss() {
+    }
+}
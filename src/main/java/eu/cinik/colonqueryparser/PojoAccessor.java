@@ -0,0 +1,275 @@
+package eu.cinik.colonqueryparser;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>{@link RecordAccessor} of plain Java objects.</p>
+ *
+ * <p>A key is a property name or a dotted path of them ({@code address.city}). Every name is resolved, in this order,
+ * to a public no-argument method {@code getName()}, {@code isName()} or {@code name()}, or to a public field
+ * {@code name}. Resolved members are bound into {@link MethodHandle}s, so no reflection happens per record.</p>
+ *
+ * <p>{@code int}, {@code long}, {@code short} and {@code byte} values are {@link RecordAccessor.Field.Type#LONG} and
+ * {@code double} and {@code float} values {@link RecordAccessor.Field.Type#DOUBLE} fields, read without boxing. A
+ * {@code float} is compared as its exact {@code double} value, its text form is the one of {@link Float#toString(float)}.
+ * Other values are {@link RecordAccessor.Field.Type#STRING} fields, their {@code toString()}; {@code char} and
+ * {@code boolean} ones are converted without boxing. A null value, or a null object on the path to it, is a missing
+ * value.</p>
+ *
+ * @param <T> type of records
+ */
+public class PojoAccessor<T> implements RecordAccessor<T> {
+    private static final MethodHandle TO_STRING;
+    private static final MethodHandle CHAR_TO_STRING;
+    private static final MethodHandle BOOLEAN_TO_STRING;
+    private static final String[] ASCII = new String[128];
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            TO_STRING = lookup.findStatic(PojoAccessor.class, "toString",
+                    MethodType.methodType(String.class, Object.class));
+            CHAR_TO_STRING = lookup.findStatic(PojoAccessor.class, "toString",
+                    MethodType.methodType(String.class, char.class));
+            BOOLEAN_TO_STRING = lookup.findStatic(String.class, "valueOf",
+                    MethodType.methodType(String.class, boolean.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        for (char c = 0; c < ASCII.length; c++) ASCII[c] = String.valueOf(c);
+    }
+
+    private final Class<T> type;
+    private final MethodHandles.Lookup lookup;
+
+    /**
+     * Creates accessor of public members of public classes
+     *
+     * @param type type of records
+     */
+    public PojoAccessor(Class<T> type) {
+        this(type, MethodHandles.publicLookup());
+    }
+
+    /**
+     * Creates accessor which uses the lookup to access members, e.g. {@code MethodHandles.lookup()} of the caller
+     * for its non-public classes
+     *
+     * @param type   type of records
+     * @param lookup lookup with access to the members
+     */
+    public PojoAccessor(Class<T> type, MethodHandles.Lookup lookup) {
+        this.type = type;
+        this.lookup = lookup;
+    }
+
+    @Override
+    public Field<T> field(String key) {
+        String[] names = key.split("\\.", -1);
+        List<MethodHandle> path = new ArrayList<>(names.length);
+        Class<?> current = type;
+        for (String name : names) {
+            MethodHandle handle = member(current, name);
+            if (handle == null) return null;
+            path.add(handle);
+            current = handle.type().returnType();
+        }
+        MethodHandle[] prefix = new MethodHandle[path.size() - 1];
+        for (int i = 0; i < prefix.length; i++) {
+            prefix[i] = path.get(i).asType(MethodType.methodType(Object.class, Object.class));
+        }
+        MethodHandle last = path.get(path.size() - 1);
+        if (current == int.class || current == long.class || current == short.class || current == byte.class) {
+            return new LongField<>(prefix, last.asType(MethodType.methodType(long.class, Object.class)));
+        } else if (current == double.class || current == float.class) {
+            return new DoubleField<>(prefix, last.asType(MethodType.methodType(double.class, Object.class)),
+                    current == float.class);
+        } else if (current == char.class) {
+            return new StringField<>(prefix, MethodHandles.filterReturnValue(
+                    last.asType(MethodType.methodType(char.class, Object.class)), CHAR_TO_STRING));
+        } else if (current == boolean.class) {
+            return new StringField<>(prefix, MethodHandles.filterReturnValue(
+                    last.asType(MethodType.methodType(boolean.class, Object.class)), BOOLEAN_TO_STRING));
+        }
+        return new StringField<>(prefix, MethodHandles.filterReturnValue(
+                last.asType(MethodType.methodType(Object.class, Object.class)), TO_STRING));
+    }
+
+    private MethodHandle member(Class<?> owner, String name) {
+        if (name.isEmpty()) return null;
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (String methodName : new String[]{"get" + capitalized, "is" + capitalized, name}) {
+            try {
+                Method method = owner.getMethod(methodName);
+                if (method.getReturnType() == void.class || Modifier.isStatic(method.getModifiers())) continue;
+                return lookup.unreflect(method);
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                // try next
+            }
+        }
+        try {
+            java.lang.reflect.Field field = owner.getField(name);
+            if (!Modifier.isStatic(field.getModifiers())) return lookup.unreflectGetter(field);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            // unknown
+        }
+        return null;
+    }
+
+    private static String toString(Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    private static String toString(char value) {
+        return value < ASCII.length ? ASCII[value] : String.valueOf(value);
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) throw (RuntimeException) t;
+        if (t instanceof Error) throw (Error) t;
+        throw new IllegalStateException(t);
+    }
+
+    /**
+     * Field at the end of a path of objects
+     */
+    private static abstract class PathField<T> implements Field<T> {
+        private final MethodHandle[] prefix;
+
+        PathField(MethodHandle[] prefix) {
+            this.prefix = prefix;
+        }
+
+        /**
+         * @return owner of the last member on the path or null when some object on the path is null
+         */
+        final Object owner(T record) {
+            Object o = record;
+            try {
+                for (MethodHandle handle : prefix) {
+                    if (o == null) return null;
+                    o = (Object) handle.invokeExact(o);
+                }
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+            return o;
+        }
+    }
+
+    /**
+     * Field of a primitive value, present when its owner is
+     */
+    private static abstract class PrimitiveField<T> extends PathField<T> {
+        PrimitiveField(MethodHandle[] prefix) {
+            super(prefix);
+        }
+
+        @Override
+        public boolean isPresent(T record) {
+            return owner(record) != null;
+        }
+
+        @Override
+        public Object holder(T record) {
+            return owner(record);
+        }
+    }
+
+    private static final class StringField<T> extends PathField<T> {
+        private final MethodHandle getter;
+
+        StringField(MethodHandle[] prefix, MethodHandle getter) {
+            super(prefix);
+            this.getter = getter;
+        }
+
+        @Override
+        public Type type() {
+            return Type.STRING;
+        }
+
+        @Override
+        public String getString(T record) {
+            Object owner = owner(record);
+            if (owner == null) return null;
+            try {
+                return (String) getter.invokeExact(owner);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+    }
+
+    private static final class LongField<T> extends PrimitiveField<T> {
+        private final MethodHandle getter;
+
+        LongField(MethodHandle[] prefix, MethodHandle getter) {
+            super(prefix);
+            this.getter = getter;
+        }
+
+        @Override
+        public Type type() {
+            return Type.LONG;
+        }
+
+        @Override
+        public long getLong(T record) {
+            return longValue(owner(record));
+        }
+
+        @Override
+        public long longValue(Object holder) {
+            try {
+                return (long) getter.invokeExact(holder);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+    }
+
+    private static final class DoubleField<T> extends PrimitiveField<T> {
+        private final MethodHandle getter;
+        private final boolean isFloat;
+
+        DoubleField(MethodHandle[] prefix, MethodHandle getter, boolean isFloat) {
+            super(prefix);
+            this.getter = getter;
+            this.isFloat = isFloat;
+        }
+
+        @Override
+        public Type type() {
+            return Type.DOUBLE;
+        }
+
+        @Override
+        public String getString(T record) {
+            Object owner = owner(record);
+            if (owner == null) return null;
+            double value = doubleValue(owner);
+            return isFloat ? Float.toString((float) value) : Double.toString(value);
+        }
+
+        @Override
+        public double getDouble(T record) {
+            return doubleValue(owner(record));
+        }
+
+        @Override
+        public double doubleValue(Object holder) {
+            try {
+                return (double) getter.invokeExact(holder);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,539 @@
+package eu.cinik.colonqueryparser;
+
+import java.nio.CharBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+
+/**
+ * <p>Compact struct-of-arrays storage of many parsed queries, for retaining millions of them without the overhead of
+ * an object graph per query.</p>
+ *
+ * <p>Every node is an index into parallel arrays of its kind, flags and two int operands, children of statements are
+ * ranges of a shared int array and all texts are ranges of a single char array:</p>
+ * <ul>
+ * <li>{@link #TEXT}: text</li>
+ * <li>{@link #KEY_VALUE}, {@link #WILDCARD}: key (none for a wildcard text term) and value, negation</li>
+ * <li>{@link #AND}, {@link #OR}, {@link #COMPARISON}: left and right node, operator of comparisons</li>
+ * <li>{@link #STATEMENT}: its nodes</li>
+ * </ul>
+ *
+ * <p>{@link Parser#statement(QueryArena)} parses directly into the arena, node structure is the same as of
+ * {@link Parser#statement()}. {@link #node(int)} returns thin {@link Parser.Node} views, which create views of their
+ * children only when accessed, so existing code working with nodes, e.g. {@link Parser.NodeVisitor}s and
+ * {@link Evaluator}, works with arena queries too. Views are equal to nodes of the parser of the same structure.</p>
+ *
+ * <p>The arena is not thread safe while queries are being added.</p>
+ */
+public class QueryArena {
+    public static final byte TEXT = 0;
+    public static final byte KEY_VALUE = 1;
+    public static final byte WILDCARD = 2;
+    public static final byte AND = 3;
+    public static final byte OR = 4;
+    public static final byte COMPARISON = 5;
+    public static final byte STATEMENT = 6;
+
+    private static final byte NEG = 1;
+    private static final Parser.BinaryComparision.Operator[] OPERATORS = Parser.BinaryComparision.Operator.values();
+
+    private byte[] kinds = new byte[64];
+    private byte[] flags = new byte[64];
+    private int[] first = new int[64];
+    private int[] second = new int[64];
+    private int nodes;
+
+    private int[] children = new int[64];
+    private int childCount;
+
+    private int[] stringStarts = new int[64];
+    private int[] stringLengths = new int[64];
+    private int strings;
+    private char[] chars = new char[1024];
+    private int charCount;
+
+    /**
+     * @return number of nodes of all queries
+     */
+    public int size() {
+        return nodes;
+    }
+
+    /**
+     * @param node node id
+     * @return one of {@link #TEXT}, {@link #KEY_VALUE}, {@link #WILDCARD}, {@link #AND}, {@link #OR}, {@link #COMPARISON},
+     * {@link #STATEMENT}
+     */
+    public byte kind(int node) {
+        return kinds[node];
+    }
+
+    /**
+     * @param node node id of a key value or wildcard
+     * @return negation
+     */
+    public boolean isNeg(int node) {
+        return (flags[node] & NEG) != 0;
+    }
+
+    /**
+     * @param node node id of a comparison
+     * @return operator
+     */
+    public Parser.BinaryComparision.Operator operator(int node) {
+        return OPERATORS[flags[node]];
+    }
+
+    /**
+     * @param node node id of a key value or wildcard
+     * @return key, null for a wildcard text term
+     */
+    public CharSequence key(int node) {
+        return string(first[node]);
+    }
+
+    /**
+     * @param node node id of a text, key value or wildcard
+     * @return text, value or pattern
+     */
+    public CharSequence text(int node) {
+        return string(kinds[node] == TEXT ? first[node] : second[node]);
+    }
+
+    /**
+     * @param node node id of a binary node
+     * @return node id of the left operand
+     */
+    public int left(int node) {
+        return first[node];
+    }
+
+    /**
+     * @param node node id of a binary node
+     * @return node id of the right operand
+     */
+    public int right(int node) {
+        return second[node];
+    }
+
+    /**
+     * @param node node id of a statement
+     * @return number of its nodes
+     */
+    public int childCount(int node) {
+        return second[node];
+    }
+
+    /**
+     * @param node  node id of a statement
+     * @param index index of a child
+     * @return node id of the child
+     */
+    public int child(int node, int index) {
+        return children[first[node] + index];
+    }
+
+    private CharSequence string(int id) {
+        return id < 0 ? null : CharBuffer.wrap(chars, stringStarts[id], stringLengths[id]).slice();
+    }
+
+    private String toString(int id) {
+        return id < 0 ? null : new String(chars, stringStarts[id], stringLengths[id]);
+    }
+
+    /**
+     * Returns a view of a node
+     *
+     * @param node node id, may be negative for an empty query
+     * @return node view, null for a negative id
+     */
+    public Parser.Node node(int node) {
+        if (node < 0) return null;
+        switch (kinds[node]) {
+            case TEXT:
+                return new Parser.Text(toString(first[node]));
+            case KEY_VALUE:
+                return new Parser.KeyValue(isNeg(node), toString(first[node]), toString(second[node]));
+            case WILDCARD:
+                return new Parser.Wildcard(isNeg(node), toString(first[node]), toString(second[node]));
+            case AND:
+                return new AndView(node);
+            case OR:
+                return new OrView(node);
+            case COMPARISON:
+                return new ComparisonView(node);
+            default:
+                return new Parser.Statement(new ChildrenView(node));
+        }
+    }
+
+    /**
+     * @return handler which adds parsed nodes to this arena
+     */
+    Builder builder() {
+        return new Builder();
+    }
+
+    private int add(byte kind, int flag, int a, int b) {
+        if (nodes == kinds.length) {
+            int capacity = nodes * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            first = Arrays.copyOf(first, capacity);
+            second = Arrays.copyOf(second, capacity);
+        }
+        kinds[nodes] = kind;
+        flags[nodes] = (byte) flag;
+        first[nodes] = a;
+        second[nodes] = b;
+        return nodes++;
+    }
+
+    private int string(CharSequence s) {
+        if (s == null) return -1;
+        if (strings == stringStarts.length) {
+            stringStarts = Arrays.copyOf(stringStarts, strings * 2);
+            stringLengths = Arrays.copyOf(stringLengths, strings * 2);
+        }
+        int length = s.length();
+        if (charCount + length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + length));
+        }
+        for (int i = 0; i < length; i++) {
+            chars[charCount + i] = s.charAt(i);
+        }
+        stringStarts[strings] = charCount;
+        stringLengths[strings] = length;
+        charCount += length;
+        return strings++;
+    }
+
+    /**
+     * Builds nodes from parser events, keeping ids of nodes of unfinished statements and operators on a stack
+     */
+    final class Builder implements Parser.EventHandler {
+        private int[] pending = new int[16];
+        private int pendingSize;
+        // whether the last event completed a node, which is then the first operand of an operator that follows
+        private boolean completed;
+        private int[] frames = new int[16];
+        private byte[] frameKinds = new byte[16];
+        private byte[] frameFlags = new byte[16];
+        private int depth;
+        private int root = -1;
+
+        /**
+         * @return node id of the parsed query, -1 for an empty one
+         */
+        int root() {
+            return root;
+        }
+
+        private void push(int node) {
+            if (pendingSize == pending.length) pending = Arrays.copyOf(pending, pendingSize * 2);
+            pending[pendingSize++] = node;
+            completed = true;
+        }
+
+        private void enter(byte kind, int flag) {
+            if (depth == frames.length) {
+                frames = Arrays.copyOf(frames, depth * 2);
+                frameKinds = Arrays.copyOf(frameKinds, depth * 2);
+                frameFlags = Arrays.copyOf(frameFlags, depth * 2);
+            }
+            frames[depth] = kind != STATEMENT && completed ? pendingSize - 1 : pendingSize;
+            completed = false;
+            frameKinds[depth] = kind;
+            frameFlags[depth++] = (byte) flag;
+        }
+
+        private void exit() {
+            depth--;
+            int start = frames[depth];
+            int count = pendingSize - start;
+            pendingSize = start;
+            int node;
+            if (count == 0) {
+                node = -1;
+            } else if (count == 1) {
+                node = pending[start];
+            } else if (frameKinds[depth] == STATEMENT) {
+                if (childCount + count > children.length) {
+                    children = Arrays.copyOf(children, Math.max(children.length * 2, childCount + count));
+                }
+                System.arraycopy(pending, start, children, childCount, count);
+                node = add(STATEMENT, 0, childCount, count);
+                childCount += count;
+            } else {
+                // chains of AND/OR are balanced like in the tree of the parser
+                node = chain(frameKinds[depth], frameFlags[depth], start, start + count);
+            }
+            if (depth == 0) root = node;
+            else if (node >= 0) push(node);
+            else completed = false;
+        }
+
+        private int chain(byte kind, byte flag, int from, int to) {
+            if (to - from == 1) return pending[from];
+            int middle = from + (to - from) / 2;
+            int left = chain(kind, flag, from, middle);
+            return add(kind, flag, left, chain(kind, flag, middle, to));
+        }
+
+        @Override
+        public void startStatement() {
+            enter(STATEMENT, 0);
+        }
+
+        @Override
+        public void endStatement() {
+            exit();
+        }
+
+        @Override
+        public void enterAnd() {
+            enter(AND, 0);
+        }
+
+        @Override
+        public void exitAnd() {
+            exit();
+        }
+
+        @Override
+        public void enterOr() {
+            enter(OR, 0);
+        }
+
+        @Override
+        public void exitOr() {
+            exit();
+        }
+
+        @Override
+        public void enterComparison(Parser.BinaryComparision.Operator operator) {
+            enter(COMPARISON, operator.ordinal());
+        }
+
+        @Override
+        public void exitComparison(Parser.BinaryComparision.Operator operator) {
+            exit();
+        }
+
+        @Override
+        public void comparison(CharSequence key, Parser.BinaryComparision.Operator operator, CharSequence value) {
+            int left = add(TEXT, 0, string(key), 0);
+            int right = add(TEXT, 0, string(value), 0);
+            push(add(COMPARISON, operator.ordinal(), left, right));
+        }
+
+        @Override
+        public void keyValue(CharSequence key, CharSequence value, boolean neg) {
+            push(add(KEY_VALUE, neg ? NEG : 0, string(key), string(value)));
+        }
+
+        @Override
+        public void wildcard(CharSequence key, CharSequence pattern, boolean neg) {
+            push(add(WILDCARD, neg ? NEG : 0, string(key), string(pattern)));
+        }
+
+        @Override
+        public void text(CharSequence text) {
+            push(add(TEXT, 0, string(text), 0));
+        }
+    }
+
+    /**
+     * Binary view creating views of its operands on first access
+     */
+    private interface BinaryView {
+        QueryArena arena();
+
+        int id();
+
+        default void load() {
+            Parser.Binary binary = (Parser.Binary) this;
+            if (binary.left == null) {
+                binary.left = arena().node(arena().first[id()]);
+                binary.right = arena().node(arena().second[id()]);
+            }
+        }
+
+        default void loadBoth(Object other) {
+            load();
+            if (other instanceof BinaryView) ((BinaryView) other).load();
+        }
+    }
+
+    private final class AndView extends Parser.AND implements BinaryView {
+        private final int id;
+
+        AndView(int id) {
+            super(null, null);
+            this.id = id;
+        }
+
+        @Override
+        public QueryArena arena() {
+            return QueryArena.this;
+        }
+
+        @Override
+        public int id() {
+            return id;
+        }
+
+        @Override
+        public Parser.Node getLeft() {
+            load();
+            return left;
+        }
+
+        @Override
+        public Parser.Node getRight() {
+            load();
+            return right;
+        }
+
+        @Override
+        public void visit(Parser.NodeVisitor visitor) {
+            load();
+            super.visit(visitor);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            loadBoth(o);
+            return super.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            load();
+            return super.hashCode();
+        }
+    }
+
+    private final class OrView extends Parser.OR implements BinaryView {
+        private final int id;
+
+        OrView(int id) {
+            super(null, null);
+            this.id = id;
+        }
+
+        @Override
+        public QueryArena arena() {
+            return QueryArena.this;
+        }
+
+        @Override
+        public int id() {
+            return id;
+        }
+
+        @Override
+        public Parser.Node getLeft() {
+            load();
+            return left;
+        }
+
+        @Override
+        public Parser.Node getRight() {
+            load();
+            return right;
+        }
+
+        @Override
+        public void visit(Parser.NodeVisitor visitor) {
+            load();
+            super.visit(visitor);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            loadBoth(o);
+            return super.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            load();
+            return super.hashCode();
+        }
+    }
+
+    private final class ComparisonView extends Parser.BinaryComparision implements BinaryView {
+        private final int id;
+
+        ComparisonView(int id) {
+            super(OPERATORS[flags[id]], null, null);
+            this.id = id;
+        }
+
+        @Override
+        public QueryArena arena() {
+            return QueryArena.this;
+        }
+
+        @Override
+        public int id() {
+            return id;
+        }
+
+        @Override
+        public Parser.Node getLeft() {
+            load();
+            return left;
+        }
+
+        @Override
+        public Parser.Node getRight() {
+            load();
+            return right;
+        }
+
+        @Override
+        public void visit(Parser.NodeVisitor visitor) {
+            load();
+            super.visit(visitor);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            loadBoth(o);
+            return super.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            load();
+            return super.hashCode();
+        }
+    }
+
+    /**
+     * Nodes of a statement, views are created on first access
+     */
+    private final class ChildrenView extends AbstractList<Parser.Node> {
+        private final int id;
+        private final Parser.Node[] views;
+
+        ChildrenView(int id) {
+            this.id = id;
+            this.views = new Parser.Node[second[id]];
+        }
+
+        @Override
+        public Parser.Node get(int index) {
+            if (index < 0 || index >= views.length) throw new IndexOutOfBoundsException("Index: " + index);
+            Parser.Node view = views[index];
+            if (view == null) views[index] = view = node(child(id, index));
+            return view;
+        }
+
+        @Override
+        public int size() {
+            return views.length;
+        }
+    }
+}
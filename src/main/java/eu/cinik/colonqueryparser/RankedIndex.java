@@ -0,0 +1,312 @@
+package eu.cinik.colonqueryparser;
+
+import java.util.*;
+
+/**
+ * <p>Inverted index over texts of records which returns the top k records matching a query ranked by BM25.</p>
+ *
+ * <p>{@link Parser.Text} terms of a query are split into words and scored, words are whitespace separated as in
+ * {@link WildcardAutomaton#matchWords(CharSequence)}. A record is a candidate when it contains at least one of the words.
+ * All other terms act as a filter with the same semantics as in {@link Evaluator}, where text terms are considered to
+ * match. A query without text terms returns the first k records passing the filter with score 0.</p>
+ *
+ * <p>Search uses the WAND algorithm: posting lists are traversed in record order and records whose sum of per-word
+ * score upper bounds cannot exceed the lowest score in the bounded min-heap of the best k records are skipped without
+ * being scored or filtered. The index is immutable and can be shared by threads.</p>
+ */
+public class RankedIndex {
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final List<Map<String, String>> data;
+    private final List<String> texts;
+    private final int[] lengths;
+    private final double averageLength;
+    private final Map<String, Postings> postings;
+
+    private RankedIndex(List<Map<String, String>> data, List<String> texts, int[] lengths, Map<String, Postings> postings) {
+        this.data = data;
+        this.texts = texts;
+        this.lengths = lengths;
+        this.postings = postings;
+        long total = 0;
+        for (int length : lengths) total += length;
+        this.averageLength = lengths.length == 0 ? 0 : (double) total / lengths.length;
+        for (Postings p : postings.values()) {
+            p.maxScore = 0;
+            for (int i = 0; i < p.ids.length; i++) {
+                p.maxScore = Math.max(p.maxScore, score(p, i));
+            }
+        }
+    }
+
+    /**
+     * @return number of indexed records
+     */
+    public int size() {
+        return lengths.length;
+    }
+
+    /**
+     * Record with its relevance score
+     */
+    static public final class Hit {
+        private final int id;
+        private final double score;
+
+        Hit(int id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        /**
+         * @return id of the record, the order in which it was added
+         */
+        public int getId() {
+            return id;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return id + ":" + score;
+        }
+    }
+
+    /**
+     * Returns best matching records
+     *
+     * @param query parsed query, may be null
+     * @param k     maximum number of records to return
+     * @return at most k records ordered by descending score, ties by ascending id
+     */
+    public List<Hit> search(Parser.Node query, int k) {
+        Set<String> words = new LinkedHashSet<>();
+        Evaluator.Condition filter = query == null ? Evaluator.Condition.TRUE : filter(query, words);
+        PriorityQueue<Hit> heap = new PriorityQueue<>(Math.max(1, k), WORST_FIRST);
+        if (k <= 0) return Collections.emptyList();
+        if (words.isEmpty()) {
+            for (int id = 0; id < size() && heap.size() < k; id++) {
+                if (accept(filter, id)) heap.add(new Hit(id, 0));
+            }
+        } else {
+            wand(words, filter, k, heap);
+        }
+        List<Hit> result = new ArrayList<>(heap);
+        result.sort(WORST_FIRST.reversed());
+        return result;
+    }
+
+    private static final Comparator<Hit> WORST_FIRST = (a, b) -> {
+        int c = Double.compare(a.score, b.score);
+        return c != 0 ? c : Integer.compare(b.id, a.id);
+    };
+
+    private void wand(Set<String> words, Evaluator.Condition filter, int k, PriorityQueue<Hit> heap) {
+        List<Cursor> list = new ArrayList<>();
+        for (String word : words) {
+            Postings p = postings.get(word);
+            if (p != null) list.add(new Cursor(p));
+        }
+        Cursor[] cursors = list.toArray(new Cursor[0]);
+        int active = cursors.length;
+        double threshold = -1;
+        while (active > 0) {
+            Arrays.sort(cursors, 0, active, Comparator.comparingInt(Cursor::id));
+            double bound = 0;
+            int pivot = -1;
+            for (int i = 0; i < active; i++) {
+                bound += cursors[i].postings.maxScore;
+                if (bound > threshold) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if (pivot < 0) break;
+            int pivotId = cursors[pivot].id();
+            if (cursors[0].id() == pivotId) {
+                double score = 0;
+                for (int i = 0; i < active && cursors[i].id() == pivotId; i++) {
+                    score += score(cursors[i].postings, cursors[i].position);
+                    cursors[i].position++;
+                }
+                if (score > threshold && accept(filter, pivotId)) {
+                    heap.add(new Hit(pivotId, score));
+                    if (heap.size() > k) heap.poll();
+                    if (heap.size() == k) threshold = heap.peek().score;
+                }
+            } else {
+                for (int i = 0; i < pivot; i++) cursors[i].advance(pivotId);
+            }
+            for (int i = 0; i < active; ) {
+                if (cursors[i].exhausted()) {
+                    cursors[i] = cursors[--active];
+                } else i++;
+            }
+        }
+    }
+
+    private boolean accept(Evaluator.Condition filter, int id) {
+        return filter.test(new Evaluator.Context(data.get(id), texts.get(id), ParserLimits.UNLIMITED));
+    }
+
+    /**
+     * Compiles the query into a filter where text terms match, collecting words of the text terms
+     */
+    private static Evaluator.Condition filter(Parser.Node node, Set<String> words) {
+        if (node instanceof Parser.Text) {
+            words.addAll(words(((Parser.Text) node).getText()));
+            return Evaluator.Condition.TRUE;
+        } else if (node instanceof Parser.AND || node instanceof Parser.Statement || node instanceof Parser.OR) {
+            boolean and = !(node instanceof Parser.OR);
+            List<Parser.Node> operands = new ArrayList<>();
+            Canonicalizer.flatten(node, and, operands);
+            Evaluator.Condition[] conditions = new Evaluator.Condition[operands.size()];
+            for (int i = 0; i < conditions.length; i++) {
+                conditions[i] = filter(operands.get(i), words);
+            }
+            return and ? new Evaluator.AllCondition(conditions) : new Evaluator.AnyCondition(conditions);
+        }
+        return Evaluator.compile(node);
+    }
+
+    /**
+     * BM25 score of a record
+     *
+     * @param id    id of the record
+     * @param words scored words
+     * @return sum of BM25 scores of the words in the record
+     */
+    double score(int id, Collection<String> words) {
+        double score = 0;
+        for (String word : new LinkedHashSet<>(words)) {
+            Postings p = postings.get(word);
+            if (p == null) continue;
+            int i = Arrays.binarySearch(p.ids, id);
+            if (i >= 0) score += score(p, i);
+        }
+        return score;
+    }
+
+    private double score(Postings p, int i) {
+        double n = lengths.length;
+        double idf = Math.log(1 + (n - p.ids.length + 0.5) / (p.ids.length + 0.5));
+        int tf = p.frequencies[i];
+        double norm = K1 * (1 - B + B * lengths[p.ids[i]] / averageLength);
+        return idf * tf * (K1 + 1) / (tf + norm);
+    }
+
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean space = i == text.length() || Character.isWhitespace(text.charAt(i));
+            if (space && start >= 0) {
+                words.add(text.substring(start, i));
+                start = -1;
+            } else if (!space && start < 0) {
+                start = i;
+            }
+        }
+        return words;
+    }
+
+    private static final class Postings {
+        final int[] ids;
+        final int[] frequencies;
+        double maxScore;
+
+        Postings(int[] ids, int[] frequencies) {
+            this.ids = ids;
+            this.frequencies = frequencies;
+        }
+    }
+
+    private static final class Cursor {
+        final Postings postings;
+        int position;
+
+        Cursor(Postings postings) {
+            this.postings = postings;
+        }
+
+        int id() {
+            return postings.ids[position];
+        }
+
+        boolean exhausted() {
+            return position >= postings.ids.length;
+        }
+
+        /**
+         * Moves to the first record with id at least target, galloping then binary search
+         */
+        void advance(int target) {
+            int[] ids = postings.ids;
+            int step = 1;
+            int low = position;
+            int high = position;
+            while (high < ids.length && ids[high] < target) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            high = Math.min(high, ids.length);
+            int i = Arrays.binarySearch(ids, low, high, target);
+            position = i >= 0 ? i : -i - 1;
+        }
+    }
+
+    /**
+     * Builds a {@link RankedIndex}
+     */
+    static public class Builder {
+        private final List<Map<String, String>> data = new ArrayList<>();
+        private final List<String> texts = new ArrayList<>();
+        private final Map<String, int[][]> postings = new HashMap<>();
+        private final Map<String, Integer> sizes = new HashMap<>();
+        private int[] lengths = new int[16];
+
+        /**
+         * Adds a record, its id is the number of previously added records
+         *
+         * @param data key values of the record
+         * @param text text of the record, may be null
+         * @return this builder
+         */
+        public Builder add(Map<String, String> data, String text) {
+            int id = this.data.size();
+            this.data.add(data);
+            this.texts.add(text);
+            List<String> words = text == null ? Collections.emptyList() : words(text);
+            if (id == lengths.length) lengths = Arrays.copyOf(lengths, id * 2);
+            lengths[id] = words.size();
+            Map<String, Integer> frequencies = new HashMap<>();
+            for (String word : words) frequencies.merge(word, 1, Integer::sum);
+            for (Map.Entry<String, Integer> e : frequencies.entrySet()) {
+                int[][] p = postings.computeIfAbsent(e.getKey(), w -> new int[2][4]);
+                int size = sizes.getOrDefault(e.getKey(), 0);
+                if (size == p[0].length) {
+                    p[0] = Arrays.copyOf(p[0], size * 2);
+                    p[1] = Arrays.copyOf(p[1], size * 2);
+                }
+                p[0][size] = id;
+                p[1][size] = e.getValue();
+                sizes.put(e.getKey(), size + 1);
+            }
+            return this;
+        }
+
+        public RankedIndex build() {
+            Map<String, Postings> result = new HashMap<>();
+            for (Map.Entry<String, int[][]> e : postings.entrySet()) {
+                int size = sizes.get(e.getKey());
+                result.put(e.getKey(), new Postings(Arrays.copyOf(e.getValue()[0], size), Arrays.copyOf(e.getValue()[1], size)));
+            }
+            return new RankedIndex(new ArrayList<>(data), new ArrayList<>(texts), Arrays.copyOf(lengths, data.size()), result);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package eu.cinik.colonqueryparser;
+
+/**
+ * <p>Interfaces of the Reactive Streams specification (https://www.reactive-streams.org), declared here to avoid a
+ * dependency. They have the same methods and semantics as {@code org.reactivestreams} and {@code java.util.concurrent.Flow},
+ * so adapting either of them is a method reference.</p>
+ */
+public final class Reactive {
+
+    private Reactive() {
+    }
+
+    /**
+     * Provider of a potentially unbounded number of elements, publishing them according to the demand of its subscribers
+     *
+     * @param <T> type of elements
+     */
+    @FunctionalInterface
+    public interface Publisher<T> {
+        /**
+         * Requests the publisher to start streaming data
+         *
+         * @param subscriber subscriber to receive signals
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * Receiver of elements signalled by a {@link Publisher}, after {@link #onSubscribe(Subscription)} no elements are
+     * received until requested by {@link Subscription#request(long)}
+     *
+     * @param <T> type of elements
+     */
+    public interface Subscriber<T> {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    /**
+     * One-to-one lifecycle of a {@link Subscriber} subscribed to a {@link Publisher}
+     */
+    public interface Subscription {
+        /**
+         * Adds n to the number of elements the subscriber is ready to receive
+         *
+         * @param n positive number of elements
+         */
+        void request(long n);
+
+        /**
+         * Requests the publisher to stop sending elements
+         */
+        void cancel();
+    }
+
+    /**
+     * Processing stage which is both a {@link Subscriber} and a {@link Publisher}
+     *
+     * @param <T> type of received elements
+     * @param <R> type of published elements
+     */
+    public interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+    }
+}
@@ -0,0 +1,143 @@
+package eu.cinik.colonqueryparser;
+
+import java.util.Map;
+
+/**
+ * <p>Reads values of query keys from records of type {@code T}, so {@link RecordEvaluator} can evaluate queries against
+ * any objects, not only maps.</p>
+ *
+ * <p>Keys are resolved once, when a query is compiled, to {@link Field}s which are then invoked for every record.
+ * Numeric fields are read as primitives without boxing.</p>
+ *
+ * @param <T> type of records
+ * @see PojoAccessor
+ */
+public interface RecordAccessor<T> {
+
+    /**
+     * Resolves a key of a query
+     *
+     * @param key key of a {@link Parser.KeyValue}, {@link Parser.BinaryComparision} or {@link Parser.Wildcard}
+     * @return field of the key or null when records don't have such key
+     */
+    Field<T> field(String key);
+
+    /**
+     * Accessor of {@code Map<String, String>} records, the same records as {@link Evaluator} matches
+     *
+     * @return accessor which resolves every key
+     */
+    static RecordAccessor<Map<String, String>> map() {
+        return key -> new Field<Map<String, String>>() {
+            @Override
+            public Type type() {
+                return Type.STRING;
+            }
+
+            @Override
+            public String getString(Map<String, String> record) {
+                return record.get(key);
+            }
+        };
+    }
+
+    /**
+     * Value of a key in records
+     *
+     * @param <T> type of records
+     */
+    interface Field<T> {
+        /**
+         * How a field is read
+         */
+        enum Type {
+            /**
+             * by {@link #getString(Object)}
+             */
+            STRING,
+            /**
+             * by {@link #getLong(Object)} when {@link #isPresent(Object)}
+             */
+            LONG,
+            /**
+             * by {@link #getDouble(Object)} when {@link #isPresent(Object)}
+             */
+            DOUBLE
+        }
+
+        /**
+         * @return type of the field, the same for all records
+         */
+        Type type();
+
+        /**
+         * @param record record
+         * @return false when the record has no value of the field
+         */
+        default boolean isPresent(T record) {
+            return getString(record) != null;
+        }
+
+        /**
+         * Text value of the field, numeric fields return their decimal form
+         *
+         * @param record record
+         * @return value or null when missing
+         */
+        default String getString(T record) {
+            switch (type()) {
+                case LONG:
+                    return isPresent(record) ? Long.toString(getLong(record)) : null;
+                case DOUBLE:
+                    return isPresent(record) ? Double.toString(getDouble(record)) : null;
+                default:
+                    throw new UnsupportedOperationException("getString");
+            }
+        }
+
+        /**
+         * @param record record
+         * @return value of a {@link Type#LONG} field, unspecified when not present
+         */
+        default long getLong(T record) {
+            throw new UnsupportedOperationException("getLong");
+        }
+
+        /**
+         * @param record record
+         * @return value of a {@link Type#DOUBLE} field, unspecified when not present
+         */
+        default double getDouble(T record) {
+            throw new UnsupportedOperationException("getDouble");
+        }
+
+        /**
+         * Object the value of a numeric field is read from, so it is looked up once to be both tested for presence
+         * and read by {@link #longValue(Object)} or {@link #doubleValue(Object)}
+         *
+         * @param record record
+         * @return holder of the value, null when not present
+         */
+        default Object holder(T record) {
+            return isPresent(record) ? record : null;
+        }
+
+        /**
+         * @param holder non-null result of {@link #holder(Object)}
+         * @return value of a {@link Type#LONG} field
+         */
+        @SuppressWarnings("unchecked")
+        default long longValue(Object holder) {
+            return getLong((T) holder);
+        }
+
+        /**
+         * @param holder non-null result of {@link #holder(Object)}
+         * @return value of a {@link Type#DOUBLE} field
+         */
+        @SuppressWarnings("unchecked")
+        default double doubleValue(Object holder) {
+            return getDouble((T) holder);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package eu.cinik.colonqueryparser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>Evaluates a parsed query against records of any type read through a {@link RecordAccessor}, with the semantics of
+ * {@link Evaluator}.</p>
+ *
+ * <p>Keys of the query are resolved to {@link RecordAccessor.Field}s once, when the query is compiled. A key the
+ * accessor doesn't know either fails compilation or is treated as a value missing in every record, see
+ * {@link UnknownKeys}. Numeric fields are compared as primitives: {@code level>3} on a {@code long} field is a single
+ * comparison, {@code level:3} compares with the number parsed at compile time.</p>
+ *
+ * <p>The evaluator is immutable and can be shared by threads when the accessor can.</p>
+ *
+ * @param <T> type of records
+ */
+public class RecordEvaluator<T> {
+
+    /**
+     * What to do with keys unknown to the {@link RecordAccessor}
+     */
+    public enum UnknownKeys {
+        /**
+         * throw {@link IllegalArgumentException} from the constructor
+         */
+        FAIL,
+        /**
+         * treat the key as missing in all records, so {@code key:v} never matches and {@code -key:v} always does
+         */
+        ABSENT
+    }
+
+    private final RecordAccessor<T> accessor;
+    private final UnknownKeys unknownKeys;
+    private final RecordCondition<T> condition;
+
+    /**
+     * Creates new evaluator failing on unknown keys
+     *
+     * @param node     parsed query, may be null
+     * @param accessor accessor of record values
+     */
+    public RecordEvaluator(Parser.Node node, RecordAccessor<T> accessor) {
+        this(node, accessor, UnknownKeys.FAIL);
+    }
+
+    /**
+     * Creates new evaluator
+     *
+     * @param node        parsed query, may be null
+     * @param accessor    accessor of record values
+     * @param unknownKeys how to handle keys unknown to the accessor
+     * @throws IllegalArgumentException for an unknown key with {@link UnknownKeys#FAIL}
+     */
+    public RecordEvaluator(Parser.Node node, RecordAccessor<T> accessor, UnknownKeys unknownKeys) {
+        this.accessor = accessor;
+        this.unknownKeys = unknownKeys;
+        this.condition = node == null ? (record, text) -> true : compile(node);
+    }
+
+    /**
+     * Evaluates the query against a record
+     *
+     * @param record record
+     * @param text   text of the record matched by {@link Parser.Text} terms, may be null
+     * @return true when the record matches the query
+     */
+    public boolean matches(T record, String text) {
+        return condition.test(record, text);
+    }
+
+    private RecordCondition<T> compile(Parser.Node node) {
+        if (node instanceof Parser.Text) {
+            String term = ((Parser.Text) node).getText();
+            return (record, text) -> text != null && text.contains(term);
+        } else if (node instanceof Parser.KeyValue) {
+            Parser.KeyValue kv = (Parser.KeyValue) node;
+            return keyValue(kv.isNeg(), field(kv.getKey()), kv.getValue());
+        } else if (node instanceof Parser.Wildcard) {
+            Parser.Wildcard w = (Parser.Wildcard) node;
+            WildcardAutomaton automaton = new WildcardAutomaton(Collections.singletonList(w.getPattern()));
+            boolean neg = w.isNeg();
+            if (w.getKey() == null) {
+                return (record, text) -> neg != (text != null && automaton.matchWords(text) != 0);
+            }
+            RecordAccessor.Field<T> field = field(w.getKey());
+            if (field == null) return (record, text) -> neg;
+            return (record, text) -> {
+                String value = field.getString(record);
+                return neg != (value != null && automaton.match(value) != 0);
+            };
+        } else if (node instanceof Parser.BinaryComparision) {
+            Parser.BinaryComparision bc = (Parser.BinaryComparision) node;
+            if (!(bc.getLeft() instanceof Parser.Text) || !(bc.getRight() instanceof Parser.Text)) {
+                throw new IllegalArgumentException("Comparison operands must be terms: " + bc.getLeft() + bc + bc.getRight());
+            }
+            return comparison(field(((Parser.Text) bc.getLeft()).getText()), bc.getOperator(),
+                    ((Parser.Text) bc.getRight()).getText());
+        } else if (node instanceof Parser.AND || node instanceof Parser.Statement || node instanceof Parser.OR) {
+            boolean and = !(node instanceof Parser.OR);
+            List<Parser.Node> operands = new ArrayList<>();
+            Canonicalizer.flatten(node, and, operands);
+            List<RecordCondition<T>> conditions = new ArrayList<>(operands.size());
+            for (Parser.Node operand : operands) {
+                conditions.add(compile(operand));
+            }
+            RecordCondition<T>[] array = toArray(conditions);
+            return and ? (record, text) -> {
+                for (RecordCondition<T> c : array) {
+                    if (!c.test(record, text)) return false;
+                }
+                return true;
+            } : (record, text) -> {
+                for (RecordCondition<T> c : array) {
+                    if (c.test(record, text)) return true;
+                }
+                return false;
+            };
+        } else throw new IllegalArgumentException("unknown token node " + node);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> RecordCondition<T>[] toArray(List<RecordCondition<T>> conditions) {
+        return conditions.toArray((RecordCondition<T>[]) new RecordCondition<?>[conditions.size()]);
+    }
+
+    private RecordAccessor.Field<T> field(String key) {
+        RecordAccessor.Field<T> field = accessor.field(key);
+        if (field == null && unknownKeys == UnknownKeys.FAIL) {
+            throw new IllegalArgumentException("Unknown key: " + key);
+        }
+        return field;
+    }
+
+    private RecordCondition<T> keyValue(boolean neg, RecordAccessor.Field<T> field, String value) {
+        if (field == null) return (record, text) -> neg;
+        switch (field.type()) {
+            case LONG: {
+                long expected;
+                try {
+                    expected = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    return (record, text) -> neg;
+                }
+                // only the decimal form of a number equals it, e.g. not "+1" or "01"
+                if (!Long.toString(expected).equals(value)) return (record, text) -> neg;
+                return (record, text) -> {
+                    Object holder = field.holder(record);
+                    return neg != (holder != null && field.longValue(holder) == expected);
+                };
+            }
+            case DOUBLE: {
+                double expected = Evaluator.number(value);
+                if (Double.isNaN(expected) || !Double.toString(expected).equals(value)) return (record, text) -> neg;
+                return (record, text) -> {
+                    Object holder = field.holder(record);
+                    return neg != (holder != null && field.doubleValue(holder) == expected);
+                };
+            }
+            default:
+                return (record, text) -> neg != value.equals(field.getString(record));
+        }
+    }
+
+    private RecordCondition<T> comparison(RecordAccessor.Field<T> field, Parser.BinaryComparision.Operator operator,
+                                          String value) {
+        if (field == null) return (record, text) -> false;
+        double number = Evaluator.number(value);
+        if (field.type() == RecordAccessor.Field.Type.STRING || Double.isNaN(number)) {
+            return (record, text) -> Evaluator.compare(field.getString(record), operator, value);
+        }
+        if (field.type() == RecordAccessor.Field.Type.LONG) {
+            return (record, text) -> {
+                Object holder = field.holder(record);
+                return holder != null && holds(Double.compare(field.longValue(holder), number), operator);
+            };
+        }
+        return (record, text) -> {
+            Object holder = field.holder(record);
+            if (holder == null) return false;
+            double d = field.doubleValue(holder);
+            // NaN and infinities are not numbers in text form
+            if (Double.isNaN(d) || Double.isInfinite(d)) return Evaluator.compare(Double.toString(d), operator, value);
+            return holds(Double.compare(d, number), operator);
+        };
+    }
+
+    private static boolean holds(int result, Parser.BinaryComparision.Operator operator) {
+        switch (operator) {
+            case EQ:
+                return result == 0;
+            case LT:
+                return result < 0;
+            case HT:
+                return result > 0;
+            default:
+                return false;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordCondition<T> {
+        boolean test(T record, String text);
+    }
+}
@@ -0,0 +1,180 @@
+package eu.cinik.colonqueryparser;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * <p>Cache of query results keyed by the {@link Canonicalizer.Fingerprint} of a query and a dataset version,
+ * so semantically equivalent queries share cached results.</p>
+ *
+ * <p>Entries are evicted in least recently used order once total weight of cached results crosses the limit.
+ * Weight of a result is given by a weigher, e.g. number of matched records; use {@code r -> 1} to bound
+ * number of entries instead. Results of a new dataset version never collide with results of older versions,
+ * which are left to eviction or removed by {@link #invalidateBefore(long)}.</p>
+ *
+ * <p>The cache is thread safe. Concurrent misses of the same key may compute the result more than once.</p>
+ *
+ * @param <R> type of results, e.g. set of matched record ids
+ */
+public class ResultCache<R> {
+    private final long maxWeight;
+    private final ToLongFunction<? super R> weigher;
+    private final ParserMetrics metrics;
+    private final LinkedHashMap<Key, Entry<R>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    /**
+     * Creates new cache
+     *
+     * @param maxWeight maximum total weight of cached results
+     * @param weigher   weight of a single result
+     */
+    public ResultCache(long maxWeight, ToLongFunction<? super R> weigher) {
+        this(maxWeight, weigher, ParserMetrics.NOOP);
+    }
+
+    /**
+     * Creates new cache which reports hits and misses to supplied metrics
+     *
+     * @param maxWeight maximum total weight of cached results
+     * @param weigher   weight of a single result
+     * @param metrics   metrics to report to
+     */
+    public ResultCache(long maxWeight, ToLongFunction<? super R> weigher, ParserMetrics metrics) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns cached result of a query or the result computed for its canonical form
+     *
+     * @param query          parsed query
+     * @param datasetVersion version of the dataset the query is evaluated against
+     * @param compute        computes result of the canonical query on cache miss
+     * @return result
+     */
+    public R get(Parser.Node query, long datasetVersion, Function<Parser.Node, ? extends R> compute) {
+        Parser.Node canonical = Canonicalizer.canonicalize(query);
+        Key key = new Key(Canonicalizer.fingerprint(canonical), datasetVersion);
+        R result = getIfPresent(key);
+        if (result == null) {
+            result = compute.apply(canonical);
+            put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns cached result
+     *
+     * @param fingerprint    fingerprint of a query
+     * @param datasetVersion version of the dataset
+     * @return result or null if not cached
+     */
+    public R getIfPresent(Canonicalizer.Fingerprint fingerprint, long datasetVersion) {
+        return getIfPresent(new Key(fingerprint, datasetVersion));
+    }
+
+    /**
+     * Caches result of a query
+     *
+     * @param fingerprint    fingerprint of a query
+     * @param datasetVersion version of the dataset
+     * @param result         result, not null
+     */
+    public void put(Canonicalizer.Fingerprint fingerprint, long datasetVersion, R result) {
+        put(new Key(fingerprint, datasetVersion), result);
+    }
+
+    private synchronized R getIfPresent(Key key) {
+        Entry<R> entry = entries.get(key);
+        if (entry == null) {
+            metrics.cacheMiss();
+            return null;
+        }
+        metrics.cacheHit();
+        return entry.result;
+    }
+
+    private synchronized void put(Key key, R result) {
+        Objects.requireNonNull(result, "result");
+        long w = weigher.applyAsLong(result);
+        if (w > maxWeight) return;
+        Entry<R> previous = entries.put(key, new Entry<>(result, w));
+        if (previous != null) weight -= previous.weight;
+        weight += w;
+        Iterator<Entry<R>> eldest = entries.values().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            weight -= eldest.next().weight;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Removes results of all dataset versions older than supplied one
+     *
+     * @param datasetVersion oldest version to keep
+     */
+    public synchronized void invalidateBefore(long datasetVersion) {
+        Iterator<Map.Entry<Key, Entry<R>>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry<R>> e = it.next();
+            if (e.getKey().datasetVersion < datasetVersion) {
+                weight -= e.getValue().weight;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return number of cached results
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return total weight of cached results
+     */
+    public synchronized long weight() {
+        return weight;
+    }
+
+    private static final class Entry<R> {
+        final R result;
+        final long weight;
+
+        Entry(R result, long weight) {
+            this.result = result;
+            this.weight = weight;
+        }
+    }
+
+    private static final class Key {
+        final Canonicalizer.Fingerprint fingerprint;
+        final long datasetVersion;
+
+        Key(Canonicalizer.Fingerprint fingerprint, long datasetVersion) {
+            this.fingerprint = fingerprint;
+            this.datasetVersion = datasetVersion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return datasetVersion == key.datasetVersion && fingerprint.equals(key.fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * fingerprint.hashCode() + Long.hashCode(datasetVersion);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package eu.cinik.colonqueryparser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * <p>Compact summary of a segment of records which allows skipping segments which cannot contain any record matching a
+ * query, without opening them.</p>
+ *
+ * <p>For every key the summary keeps a Bloom filter over values, the number of records having the key, the lexicographic
+ * range of all values, the numeric range of number values and the lexicographic range of the other values. Since
+ * {@link Parser.Text} matches substrings of the text, the text is summarized by a Bloom filter over its character
+ * trigrams rather than its words.</p>
+ *
+ * <p>{@link #mayMatch(Parser.Node)} is conservative: it returns false only when no record of the segment can match. Terms
+ * it cannot decide (e.g. text terms shorter than three characters, most negations, wildcards without a literal prefix)
+ * are assumed to match.</p>
+ */
+public class SegmentSummary {
+    private static final int GRAM = 3;
+
+    private final int records;
+    private final boolean hasText;
+    private final BloomFilter trigrams;
+    private final Map<String, KeyStats> keys;
+
+    private SegmentSummary(int records, boolean hasText, BloomFilter trigrams, Map<String, KeyStats> keys) {
+        this.records = records;
+        this.hasText = hasText;
+        this.trigrams = trigrams;
+        this.keys = keys;
+    }
+
+    /**
+     * @return number of summarized records
+     */
+    public int records() {
+        return records;
+    }
+
+    /**
+     * Checks whether a record of the segment may match a query
+     *
+     * @param node parsed query, may be null
+     * @return false when no record of the segment matches the query, true when some may
+     */
+    public boolean mayMatch(Parser.Node node) {
+        if (records == 0) return false;
+        return node == null || may(node);
+    }
+
+    private boolean may(Parser.Node node) {
+        if (node instanceof Parser.AND || node instanceof Parser.Statement || node instanceof Parser.OR) {
+            boolean and = !(node instanceof Parser.OR);
+            List<Parser.Node> operands = new ArrayList<>();
+            Canonicalizer.flatten(node, and, operands);
+            for (Parser.Node operand : operands) {
+                if (may(operand) != and) return !and;
+            }
+            return and;
+        } else if (node instanceof Parser.Text) {
+            return mayContain(((Parser.Text) node).getText());
+        } else if (node instanceof Parser.KeyValue) {
+            Parser.KeyValue kv = (Parser.KeyValue) node;
+            KeyStats stats = keys.get(kv.getKey());
+            if (kv.isNeg()) {
+                return stats == null || stats.count < records || !stats.min.equals(stats.max) || !stats.min.equals(kv.getValue());
+            }
+            return stats != null && stats.values.mayContain(kv.getValue());
+        } else if (node instanceof Parser.BinaryComparision) {
+            Parser.BinaryComparision bc = (Parser.BinaryComparision) node;
+            if (!(bc.getLeft() instanceof Parser.Text) || !(bc.getRight() instanceof Parser.Text)) {
+                throw new IllegalArgumentException("Comparison operands must be terms: " + bc.getLeft() + bc + bc.getRight());
+            }
+            KeyStats stats = keys.get(((Parser.Text) bc.getLeft()).getText());
+            return stats != null && stats.mayCompare(bc.getOperator(), ((Parser.Text) bc.getRight()).getText());
+        } else if (node instanceof Parser.Wildcard) {
+            Parser.Wildcard w = (Parser.Wildcard) node;
+            if (w.isNeg()) return true;
+            if (w.getKey() == null) return hasText;
+            KeyStats stats = keys.get(w.getKey());
+            if (stats == null) return false;
+            String prefix = WildcardAutomaton.prefix(w.getPattern());
+            if (prefix.equals(w.getPattern())) return stats.values.mayContain(prefix);
+            return stats.max.compareTo(prefix) >= 0 && (stats.min.startsWith(prefix) || stats.min.compareTo(prefix) < 0);
+        } else throw new IllegalArgumentException("unknown token node " + node);
+    }
+
+    private boolean mayContain(String term) {
+        if (!hasText) return false;
+        if (term.length() < GRAM) return true;
+        for (int i = 0; i + GRAM <= term.length(); i++) {
+            if (!trigrams.mayContain(term.substring(i, i + GRAM))) return false;
+        }
+        return true;
+    }
+
+    private static final class KeyStats {
+        final BloomFilter values;
+        final int count;
+        final String min;
+        final String max;
+        /**
+         * number of distinct number values
+         */
+        final int numbers;
+        final double minNumber;
+        final double maxNumber;
+        final String minOther;
+        final String maxOther;
+
+        KeyStats(BloomFilter values, int count, String min, String max, int numbers, double minNumber, double maxNumber,
+                 String minOther, String maxOther) {
+            this.values = values;
+            this.count = count;
+            this.min = min;
+            this.max = max;
+            this.numbers = numbers;
+            this.minNumber = minNumber;
+            this.maxNumber = maxNumber;
+            this.minOther = minOther;
+            this.maxOther = maxOther;
+        }
+
+        /**
+         * Mirrors {@link Evaluator#compare(String, Parser.BinaryComparision.Operator, String)}: values compare
+         * numerically only when both are numbers
+         */
+        boolean mayCompare(Parser.BinaryComparision.Operator operator, String value) {
+            double v = Evaluator.number(value);
+            if (Double.isNaN(v)) {
+                return mayCompare(operator, value, min, max);
+            }
+            boolean numbersMay = numbers > 0 && mayCompare(operator, v);
+            boolean othersMay = minOther != null && mayCompare(operator, value, minOther, maxOther);
+            return numbersMay || othersMay;
+        }
+
+        private boolean mayCompare(Parser.BinaryComparision.Operator operator, double v) {
+            switch (operator) {
+                case EQ:
+                    return minNumber <= v && v <= maxNumber;
+                case LT:
+                    return minNumber < v;
+                case HT:
+                    return maxNumber > v;
+                default:
+                    return true;
+            }
+        }
+
+        private static boolean mayCompare(Parser.BinaryComparision.Operator operator, String v, String min, String max) {
+            switch (operator) {
+                case EQ:
+                    return min.compareTo(v) <= 0 && max.compareTo(v) >= 0;
+                case LT:
+                    return min.compareTo(v) < 0;
+                case HT:
+                    return max.compareTo(v) > 0;
+                default:
+                    return true;
+            }
+        }
+    }
+
+    /**
+     * Bloom filter over strings with double hashing of the 128-bit MurmurHash3 of their UTF-8 bytes
+     */
+    static final class BloomFilter {
+        private final long[] bits;
+        private final int hashes;
+
+        /**
+         * @param entries expected number of distinct entries
+         * @param fpp     desired false positive probability
+         */
+        BloomFilter(int entries, double fpp) {
+            long m = (long) Math.ceil(-Math.max(entries, 1) * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+            this.bits = new long[(int) Math.max(1, (m + 63) >>> 6)];
+            this.hashes = Math.max(1, (int) Math.round((double) bits.length * 64 / Math.max(entries, 1) * Math.log(2)));
+        }
+
+        void add(String s) {
+            Canonicalizer.Fingerprint h = hash(s);
+            long combined = h.getHigh();
+            long size = (long) bits.length * 64;
+            for (int i = 0; i < hashes; i++) {
+                long bit = (combined & Long.MAX_VALUE) % size;
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+                combined += h.getLow();
+            }
+        }
+
+        boolean mayContain(String s) {
+            Canonicalizer.Fingerprint h = hash(s);
+            long combined = h.getHigh();
+            long size = (long) bits.length * 64;
+            for (int i = 0; i < hashes; i++) {
+                long bit = (combined & Long.MAX_VALUE) % size;
+                if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+                combined += h.getLow();
+            }
+            return true;
+        }
+
+        private static Canonicalizer.Fingerprint hash(String s) {
+            return Canonicalizer.Fingerprint.of(s.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Collects distinct values and trigrams of a segment and builds its {@link SegmentSummary}
+     */
+    static public class Builder {
+        private final double fpp;
+        private final Map<String, Set<String>> values = new HashMap<>();
+        private final Map<String, Integer> counts = new HashMap<>();
+        private final Set<String> trigrams = new HashSet<>();
+        private boolean hasText;
+        private int records;
+
+        /**
+         * Creates new builder with 1% false positive probability of Bloom filters
+         */
+        public Builder() {
+            this(0.01);
+        }
+
+        /**
+         * @param fpp false positive probability of Bloom filters
+         */
+        public Builder(double fpp) {
+            this.fpp = fpp;
+        }
+
+        /**
+         * Adds a record
+         *
+         * @param data key values of the record
+         * @param text text of the record, may be null
+         * @return this builder
+         */
+        public Builder add(Map<String, String> data, String text) {
+            records++;
+            for (Map.Entry<String, String> e : data.entrySet()) {
+                if (e.getValue() == null) continue;
+                values.computeIfAbsent(e.getKey(), k -> new HashSet<>()).add(e.getValue());
+                counts.merge(e.getKey(), 1, Integer::sum);
+            }
+            if (text != null) {
+                hasText = true;
+                for (int i = 0; i + GRAM <= text.length(); i++) {
+                    trigrams.add(text.substring(i, i + GRAM));
+                }
+            }
+            return this;
+        }
+
+        public SegmentSummary build() {
+            BloomFilter textFilter = new BloomFilter(trigrams.size(), fpp);
+            for (String gram : trigrams) textFilter.add(gram);
+            Map<String, KeyStats> keys = new HashMap<>();
+            for (Map.Entry<String, Set<String>> e : values.entrySet()) {
+                BloomFilter filter = new BloomFilter(e.getValue().size(), fpp);
+                String min = null, max = null, minOther = null, maxOther = null;
+                double minNumber = Double.POSITIVE_INFINITY, maxNumber = Double.NEGATIVE_INFINITY;
+                int numbers = 0;
+                for (String value : e.getValue()) {
+                    filter.add(value);
+                    if (min == null || value.compareTo(min) < 0) min = value;
+                    if (max == null || value.compareTo(max) > 0) max = value;
+                    double number = Evaluator.number(value);
+                    if (Double.isNaN(number)) {
+                        if (minOther == null || value.compareTo(minOther) < 0) minOther = value;
+                        if (maxOther == null || value.compareTo(maxOther) > 0) maxOther = value;
+                    } else {
+                        numbers++;
+                        minNumber = Math.min(minNumber, number);
+                        maxNumber = Math.max(maxNumber, number);
+                    }
+                }
+                keys.put(e.getKey(), new KeyStats(filter, counts.get(e.getKey()), min, max,
+                        numbers, minNumber, maxNumber, minOther, maxOther));
+            }
+            return new SegmentSummary(records, hasText, textFilter, keys);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package eu.cinik.colonqueryparser;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * <p>Translates parsed queries into parameterized SQL {@code WHERE} clauses, so filtering runs in the database.</p>
+ *
+ * <ul>
+ * <li>{@link Parser.KeyValue} becomes {@code column = ?}, negated one {@code (column IS NULL OR column <> ?)}</li>
+ * <li>{@link Parser.BinaryComparision} becomes {@code column > ?}, {@code column < ?} or {@code column = ?}</li>
+ * <li>{@link Parser.Wildcard} with a key becomes {@code column LIKE ?}, negated one
+ * {@code (column IS NULL OR column NOT LIKE ?)}; wildcard text terms are not supported</li>
+ * <li>{@link Parser.Text} becomes a configurable full-text predicate with a single parameter,
+ * e.g. {@link #like(String)}</li>
+ * <li>{@link Parser.AND}, {@link Parser.OR} and {@link Parser.Statement} become {@code AND}/{@code OR} of their operands</li>
+ * </ul>
+ *
+ * <p>Keys are mapped to columns through a whitelist, keys outside of it are rejected. All values are passed as
+ * parameters and operands of conjunctions and disjunctions are flattened and ordered by their SQL text, which contains
+ * only columns, operators and placeholders. So queries of the same shape produce identical SQL text and reuse cached
+ * prepared statements, e.g. {@code status:open region:eu} and {@code region:us status:closed}. Operands are never
+ * removed, so {@code status:open status:open} and {@code status:open status:closed} have the same SQL as well.</p>
+ *
+ * <p>Values of a key are always bound with the same type: as {@link BigDecimal}s for keys declared numeric, a value
+ * which is not a number is rejected, and as strings for other keys, which the database compares by the type of their
+ * column. Wildcard patterns are always strings.</p>
+ *
+ * <p>Example use:</p>
+ * <pre>
+ *     {@code
+ *         SqlTranslator translator = new SqlTranslator(columns, SqlTranslator.like("description"));
+ *         SqlTranslator.Sql where = translator.translate(new Parser(reader).statement());
+ *         try (PreparedStatement ps = connection.prepareStatement("SELECT id FROM events WHERE " + where.getWhere())) {
+ *             where.bind(ps, 1);
+ *             ...
+ *         }
+ *     }
+ * </pre>
+ */
+public class SqlTranslator {
+    private final Map<String, String> columns;
+    private final Set<String> numericKeys;
+    private final TextPredicate textPredicate;
+
+    /**
+     * Creates new translator binding all values as strings
+     *
+     * @param columns       whitelist of keys mapped to column names (or SQL expressions)
+     * @param textPredicate predicate used for {@link Parser.Text} terms
+     */
+    public SqlTranslator(Map<String, String> columns, TextPredicate textPredicate) {
+        this(columns, Collections.emptySet(), textPredicate);
+    }
+
+    /**
+     * Creates new translator
+     *
+     * @param columns       whitelist of keys mapped to column names (or SQL expressions)
+     * @param numericKeys   keys of numeric columns, their values are bound as {@link BigDecimal}s
+     * @param textPredicate predicate used for {@link Parser.Text} terms
+     * @throws IllegalArgumentException when a numeric key is not in the whitelist
+     */
+    public SqlTranslator(Map<String, String> columns, Set<String> numericKeys, TextPredicate textPredicate) {
+        for (String key : numericKeys) {
+            if (!columns.containsKey(key)) throw new IllegalArgumentException("Unknown numeric key: " + key);
+        }
+        this.columns = new HashMap<>(columns);
+        this.numericKeys = new HashSet<>(numericKeys);
+        this.textPredicate = textPredicate;
+    }
+
+    /**
+     * Full-text predicate which matches a column containing the term, like {@link Evaluator} does
+     *
+     * @param column column to search
+     * @return predicate {@code column LIKE ? ESCAPE '\'} with {@code %term%} parameter
+     */
+    static public TextPredicate like(String column) {
+        return new TextPredicate(column + " LIKE ? ESCAPE '\\'", term -> "%" + escapeLike(term) + "%");
+    }
+
+    static String escapeLike(String term) {
+        StringBuilder b = new StringBuilder(term.length());
+        for (int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            if (c == '%' || c == '_' || c == '\\') b.append('\\');
+            b.append(c);
+        }
+        return b.toString();
+    }
+
+    /**
+     * Translates a query
+     *
+     * @param node parsed query, may be null
+     * @return where clause with parameters
+     * @throws IllegalArgumentException when the query refers to a key outside of the whitelist or has a value of a
+     *                                  numeric key which is not a number
+     */
+    public Sql translate(Parser.Node node) {
+        if (node == null) return new Sql("1=1", Collections.emptyList());
+        StringBuilder sql = new StringBuilder();
+        List<Object> parameters = new ArrayList<>();
+        translate(node, sql, parameters);
+        return new Sql(sql.toString(), parameters);
+    }
+
+    private void translate(Parser.Node node, StringBuilder sql, List<Object> parameters) {
+        if (node instanceof Parser.Text) {
+            sql.append(textPredicate.sql);
+            parameters.add(textPredicate.parameter.apply(((Parser.Text) node).getText()));
+        } else if (node instanceof Parser.KeyValue) {
+            Parser.KeyValue kv = (Parser.KeyValue) node;
+            String column = column(kv.getKey());
+            if (kv.isNeg()) {
+                sql.append('(').append(column).append(" IS NULL OR ").append(column).append(" <> ?)");
+            } else {
+                sql.append(column).append(" = ?");
+            }
+            parameters.add(value(kv.getKey(), kv.getValue()));
+        } else if (node instanceof Parser.Wildcard) {
+            Parser.Wildcard w = (Parser.Wildcard) node;
+            if (w.getKey() == null) {
+                throw new IllegalArgumentException("Wildcard text terms are not supported: " + w);
+            }
+            String column = column(w.getKey());
+            if (w.isNeg()) {
+                sql.append('(').append(column).append(" IS NULL OR ").append(column).append(" NOT LIKE ? ESCAPE '\\')");
+            } else {
+                sql.append(column).append(" LIKE ? ESCAPE '\\'");
+            }
+            parameters.add(escapeLike(w.getPattern()).replace('*', '%'));
+        } else if (node instanceof Parser.BinaryComparision) {
+            Parser.BinaryComparision bc = (Parser.BinaryComparision) node;
+            if (!(bc.getLeft() instanceof Parser.Text) || !(bc.getRight() instanceof Parser.Text)) {
+                throw new IllegalArgumentException("Comparison operands must be terms: " + bc.getLeft() + bc + bc.getRight());
+            }
+            String key = ((Parser.Text) bc.getLeft()).getText();
+            sql.append(column(key)).append(' ').append(bc.getOperator().getLabel()).append(" ?");
+            parameters.add(value(key, ((Parser.Text) bc.getRight()).getText()));
+        } else if (node instanceof Parser.AND || node instanceof Parser.Statement || node instanceof Parser.OR) {
+            boolean and = !(node instanceof Parser.OR);
+            List<Parser.Node> operands = new ArrayList<>();
+            Canonicalizer.flatten(node, and, operands);
+            List<Sql> translated = new ArrayList<>(operands.size());
+            for (Parser.Node operand : operands) {
+                StringBuilder operandSql = new StringBuilder();
+                List<Object> operandParameters = new ArrayList<>();
+                translate(operand, operandSql, operandParameters);
+                translated.add(new Sql(operandSql.toString(), operandParameters));
+            }
+            // stable sort by the value-free SQL text, operands of the same shape keep their order
+            translated.sort(Comparator.comparing(Sql::getWhere));
+            sql.append('(');
+            for (int i = 0; i < translated.size(); i++) {
+                if (i > 0) sql.append(and ? " AND " : " OR ");
+                sql.append(translated.get(i).where);
+                parameters.addAll(translated.get(i).parameters);
+            }
+            sql.append(')');
+        } else throw new IllegalArgumentException("unknown token node " + node);
+    }
+
+    private String column(String key) {
+        String column = columns.get(key);
+        if (column == null) {
+            throw new IllegalArgumentException("Unknown key: " + key);
+        }
+        return column;
+    }
+
+    private Object value(String key, String value) {
+        if (!numericKeys.contains(key)) return value;
+        try {
+            return new BigDecimal(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number for numeric key " + key + ": " + value);
+        }
+    }
+
+    /**
+     * SQL predicate for {@link Parser.Text} terms with a single {@code ?} parameter
+     */
+    static public class TextPredicate {
+        private final String sql;
+        private final Function<String, Object> parameter;
+
+        /**
+         * @param sql       SQL predicate with a single {@code ?}, e.g. {@code CONTAINS(body, ?)}
+         * @param parameter converts a term to the parameter value
+         */
+        public TextPredicate(String sql, Function<String, Object> parameter) {
+            this.sql = sql;
+            this.parameter = parameter;
+        }
+    }
+
+    /**
+     * Translated where clause with its parameters in order of appearance
+     */
+    static public class Sql {
+        private final String where;
+        private final List<Object> parameters;
+
+        Sql(String where, List<Object> parameters) {
+            this.where = where;
+            this.parameters = Collections.unmodifiableList(parameters);
+        }
+
+        public String getWhere() {
+            return where;
+        }
+
+        public List<Object> getParameters() {
+            return parameters;
+        }
+
+        /**
+         * Binds parameters to a prepared statement
+         *
+         * @param statement statement prepared with {@link #getWhere()}
+         * @param index     index of the first parameter of the where clause within the statement
+         * @throws SQLException when binding fails
+         */
+        public void bind(PreparedStatement statement, int index) throws SQLException {
+            for (Object parameter : parameters) {
+                statement.setObject(index++, parameter);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return where + " " + parameters;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package eu.cinik.colonqueryparser;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>Keeps sets of ids of records matching registered queries up to date while records are inserted, updated and
+ * deleted, a materialized view of every query.</p>
+ *
+ * <p>Keys of {@link Parser.KeyValue}, {@link Parser.BinaryComparision} and {@link Parser.Wildcard} terms of every query
+ * are indexed, {@link Parser.Text} terms and wildcards without a key are indexed under the text. A change of a record
+ * re-evaluates only queries referring to keys whose values changed (or to the text when it changed):</p>
+ * <ul>
+ * <li>an inserted record is compared with an empty record: queries not referring to its keys match it when they match
+ * a record without any values (e.g. {@code -status:deleted}), which is evaluated once at registration</li>
+ * <li>a deleted record leaves every set it is in, no query is evaluated</li>
+ * </ul>
+ * <p>Every change returns {@link Delta}s of records entering and leaving the sets.</p>
+ *
+ * <p>Changes of different records run concurrently, changes of the same record are serialized. {@link #snapshot(int...)}
+ * waits for changes in progress and copies the sets while no change runs, so all sets in a snapshot reflect the same
+ * completed changes.</p>
+ */
+public class StandingQueries {
+    private static final int LOCK_STRIPES = 256;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock(true);
+    private final Object[] recordLocks = new Object[LOCK_STRIPES];
+    private final Map<String, Record> records = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    // guarded by lock, modified under the write lock only
+    private final List<Evaluator> queries = new ArrayList<>();
+    private final List<Set<String>> matches = new ArrayList<>();
+    private final Map<String, BitSet> byKey = new HashMap<>();
+    private final BitSet byText = new BitSet();
+    private final BitSet matchEmpty = new BitSet();
+
+    public StandingQueries() {
+        for (int i = 0; i < recordLocks.length; i++) recordLocks[i] = new Object();
+    }
+
+    /**
+     * Registers a query and evaluates it against all current records
+     *
+     * @param node parsed query, may be null
+     * @return id of the query, ids are assigned from 0
+     */
+    public int register(Parser.Node node) {
+        Evaluator evaluator = new Evaluator(node);
+        lock.writeLock().lock();
+        try {
+            int query = queries.size();
+            queries.add(evaluator);
+            Set<String> set = ConcurrentHashMap.newKeySet();
+            matches.add(set);
+            if (node != null) index(query, node);
+            if (evaluator.matches(Collections.emptyMap(), null)) matchEmpty.set(query);
+            for (Map.Entry<String, Record> e : records.entrySet()) {
+                Record record = e.getValue();
+                if (evaluator.matches(record.data, record.text)) {
+                    set.add(e.getKey());
+                    record.matching.set(query);
+                }
+            }
+            return query;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void index(int query, Parser.Node root) {
+        Deque<Parser.Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Parser.Node node = pending.pop();
+            if (node instanceof Parser.KeyValue) {
+                byKey.computeIfAbsent(((Parser.KeyValue) node).getKey(), k -> new BitSet()).set(query);
+            } else if (node instanceof Parser.Wildcard && ((Parser.Wildcard) node).getKey() != null) {
+                byKey.computeIfAbsent(((Parser.Wildcard) node).getKey(), k -> new BitSet()).set(query);
+            } else if (node instanceof Parser.BinaryComparision) {
+                Parser.Node left = ((Parser.BinaryComparision) node).getLeft();
+                if (left instanceof Parser.Text) {
+                    byKey.computeIfAbsent(((Parser.Text) left).getText(), k -> new BitSet()).set(query);
+                }
+            } else if (node instanceof Parser.Text || node instanceof Parser.Wildcard) {
+                byText.set(query);
+            } else if (node instanceof Parser.AND || node instanceof Parser.OR) {
+                pending.push(((Parser.Binary) node).getRight());
+                pending.push(((Parser.Binary) node).getLeft());
+            } else if (node instanceof Parser.Statement) {
+                for (Parser.Node n : ((Parser.Statement) node).getNodes()) pending.push(n);
+            }
+        }
+    }
+
+    /**
+     * @return number of registered queries
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return queries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Inserts or replaces a record
+     *
+     * @param id   id of the record
+     * @param data key values of the record, not modified later by the caller
+     * @param text text of the record matched by {@link Parser.Text} terms, may be null
+     * @return records entering and leaving match sets
+     */
+    public List<Delta> upsert(String id, Map<String, String> data, String text) {
+        return change(id, new Record(data, text));
+    }
+
+    /**
+     * Deletes a record
+     *
+     * @param id id of the record
+     * @return the record leaving match sets, empty when there was no such record
+     */
+    public List<Delta> delete(String id) {
+        return change(id, null);
+    }
+
+    private List<Delta> change(String id, Record next) {
+        List<Delta> deltas = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            synchronized (recordLocks[(id.hashCode() & 0x7fffffff) % LOCK_STRIPES]) {
+                Record previous = records.get(id);
+                if (previous == null && next == null) return deltas;
+                if (next == null) {
+                    records.remove(id);
+                    for (int q = previous.matching.nextSetBit(0); q >= 0; q = previous.matching.nextSetBit(q + 1)) {
+                        leave(q, id, deltas);
+                    }
+                } else {
+                    BitSet affected = affected(previous, next);
+                    if (previous == null) {
+                        for (int q = matchEmpty.nextSetBit(0); q >= 0; q = matchEmpty.nextSetBit(q + 1)) {
+                            if (!affected.get(q)) next.matching.set(q);
+                        }
+                    } else {
+                        next.matching.or(previous.matching);
+                    }
+                    for (int q = affected.nextSetBit(0); q >= 0; q = affected.nextSetBit(q + 1)) {
+                        next.matching.set(q, queries.get(q).matches(next.data, next.text));
+                    }
+                    BitSet before = previous == null ? new BitSet() : previous.matching;
+                    for (int q = before.nextSetBit(0); q >= 0; q = before.nextSetBit(q + 1)) {
+                        if (!next.matching.get(q)) leave(q, id, deltas);
+                    }
+                    for (int q = next.matching.nextSetBit(0); q >= 0; q = next.matching.nextSetBit(q + 1)) {
+                        if (!before.get(q)) {
+                            matches.get(q).add(id);
+                            deltas.add(new Delta(q, id, true));
+                        }
+                    }
+                    records.put(id, next);
+                }
+                version.incrementAndGet();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return deltas;
+    }
+
+    private void leave(int query, String id, List<Delta> deltas) {
+        matches.get(query).remove(id);
+        deltas.add(new Delta(query, id, false));
+    }
+
+    /**
+     * @return queries referring to keys, or the text, which differ between the records
+     */
+    private BitSet affected(Record previous, Record next) {
+        BitSet affected = new BitSet();
+        Map<String, String> before = previous == null ? Collections.emptyMap() : previous.data;
+        for (Map.Entry<String, String> e : next.data.entrySet()) {
+            if (!Objects.equals(e.getValue(), before.get(e.getKey()))) or(affected, byKey.get(e.getKey()));
+        }
+        for (Map.Entry<String, String> e : before.entrySet()) {
+            if (!next.data.containsKey(e.getKey())) or(affected, byKey.get(e.getKey()));
+        }
+        if (!Objects.equals(previous == null ? null : previous.text, next.text)) affected.or(byText);
+        return affected;
+    }
+
+    private static void or(BitSet into, BitSet queries) {
+        if (queries != null) into.or(queries);
+    }
+
+    /**
+     * Copies match sets of queries, consistent with each other
+     *
+     * @param queries ids of queries
+     * @return snapshot of their match sets
+     */
+    public Snapshot snapshot(int... queries) {
+        lock.writeLock().lock();
+        try {
+            Map<Integer, Set<String>> sets = new HashMap<>();
+            for (int query : queries) {
+                sets.put(query, Collections.unmodifiableSet(new HashSet<>(matches.get(query))));
+            }
+            return new Snapshot(version.get(), sets);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static final class Record {
+        final Map<String, String> data;
+        final String text;
+        final BitSet matching = new BitSet();
+
+        Record(Map<String, String> data, String text) {
+            this.data = data;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Record entering or leaving the match set of a query
+     */
+    public static final class Delta {
+        private final int query;
+        private final String id;
+        private final boolean enter;
+
+        public Delta(int query, String id, boolean enter) {
+            this.query = query;
+            this.id = id;
+            this.enter = enter;
+        }
+
+        public int getQuery() {
+            return query;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return true when the record entered the set, false when it left
+         */
+        public boolean isEnter() {
+            return enter;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Delta delta = (Delta) o;
+            return query == delta.query && enter == delta.enter && id.equals(delta.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, id, enter);
+        }
+
+        @Override
+        public String toString() {
+            return (enter ? "+" : "-") + query + ":" + id;
+        }
+    }
+
+    /**
+     * Match sets of queries after the same completed changes
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final Map<Integer, Set<String>> sets;
+
+        Snapshot(long version, Map<Integer, Set<String>> sets) {
+            this.version = version;
+            this.sets = sets;
+        }
+
+        /**
+         * @return number of changes applied before the snapshot
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @param query id of a query of the snapshot
+         * @return ids of matching records
+         * @throws IllegalArgumentException when the query is not in the snapshot
+         */
+        public Set<String> matches(int query) {
+            Set<String> set = sets.get(query);
+            if (set == null) throw new IllegalArgumentException("Query not in snapshot: " + query);
+            return set;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package eu.cinik.colonqueryparser;
+
+import java.util.*;
+import java.util.function.BiFunction;
+
+/**
+ * <p>Cache of match sets which answers a query refining a cached one (e.g. {@code tenant:7 status:open} after
+ * {@code tenant:7}, or {@code priority>5} after {@code priority>3}) by evaluating it only over the cached match set of
+ * the broader query instead of the whole dataset.</p>
+ *
+ * <p>Containment is decided by {@link #subsumes(Parser.Node, Parser.Node)}, a cheap structural check which is
+ * conservative: it may miss that one query contains another, but never claims containment which does not hold. When
+ * several cached queries contain a new one, the smallest match set is used. Exact matches of the canonical form are
+ * returned without evaluation.</p>
+ *
+ * <p>Entries are evicted in least recently used order. The cache is thread safe, cached match sets must not be modified
+ * by callers.</p>
+ */
+public class SubsumptionCache {
+    private final int maxEntries;
+    private final ParserMetrics metrics;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Creates new cache
+     *
+     * @param maxEntries maximum number of cached match sets, every lookup checks all of them for containment
+     */
+    public SubsumptionCache(int maxEntries) {
+        this(maxEntries, ParserMetrics.NOOP);
+    }
+
+    /**
+     * Creates new cache which reports exact hits and misses (including refinements) to supplied metrics
+     *
+     * @param maxEntries maximum number of cached match sets, every lookup checks all of them for containment
+     * @param metrics    metrics to report to
+     */
+    public SubsumptionCache(int maxEntries, ParserMetrics metrics) {
+        this.maxEntries = maxEntries;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns match set of a query
+     *
+     * @param query          parsed query, may be null
+     * @param datasetVersion version of the dataset the query is evaluated against
+     * @param all            ids of all records of the dataset
+     * @param evaluate       computes ids of records matching the canonical query among the given candidate ids, must not
+     *                       modify the candidates
+     * @return ids of matching records
+     */
+    public BitSet matches(Parser.Node query, long datasetVersion, BitSet all,
+                          BiFunction<Parser.Node, BitSet, BitSet> evaluate) {
+        Parser.Node canonical = Canonicalizer.canonicalize(query);
+        Key key = new Key(Canonicalizer.fingerprint(canonical), datasetVersion);
+        BitSet candidates = all;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                metrics.cacheHit();
+                return entry.matches;
+            }
+            metrics.cacheMiss();
+            int best = Integer.MAX_VALUE;
+            for (Map.Entry<Key, Entry> e : entries.entrySet()) {
+                Entry cached = e.getValue();
+                if (e.getKey().datasetVersion == datasetVersion && cached.cardinality < best
+                        && subsumes(cached.query, canonical)) {
+                    best = cached.cardinality;
+                    candidates = cached.matches;
+                }
+            }
+        }
+        BitSet result = evaluate.apply(canonical, candidates);
+        synchronized (this) {
+            entries.put(key, new Entry(canonical, result));
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (entries.size() > maxEntries && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return number of cached match sets
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Checks whether every record matching the narrower query also matches the broader one
+     *
+     * @param broader  parsed query, null matches everything
+     * @param narrower parsed query, null matches everything
+     * @return true when the containment was proven, false when it does not hold or could not be proven
+     */
+    static public boolean subsumes(Parser.Node broader, Parser.Node narrower) {
+        if (broader == null) return true;
+        if (narrower == null) return false;
+        return implies(narrower, broader);
+    }
+
+    private static boolean implies(Parser.Node n, Parser.Node b) {
+        if (b instanceof Parser.AND || b instanceof Parser.Statement) {
+            for (Parser.Node operand : operands(b, true)) {
+                if (!implies(n, operand)) return false;
+            }
+            return true;
+        }
+        if (n instanceof Parser.OR) {
+            for (Parser.Node operand : operands(n, false)) {
+                if (!implies(operand, b)) return false;
+            }
+            return true;
+        }
+        if (n instanceof Parser.AND || n instanceof Parser.Statement) {
+            for (Parser.Node operand : operands(n, true)) {
+                if (implies(operand, b)) return true;
+            }
+        }
+        if (b instanceof Parser.OR) {
+            for (Parser.Node operand : operands(b, false)) {
+                if (implies(n, operand)) return true;
+            }
+            return false;
+        }
+        return n.equals(b) || termImplies(n, b);
+    }
+
+    private static List<Parser.Node> operands(Parser.Node node, boolean and) {
+        List<Parser.Node> operands = new ArrayList<>();
+        Canonicalizer.flatten(node, and, operands);
+        return operands;
+    }
+
+    private static boolean termImplies(Parser.Node n, Parser.Node b) {
+        if (n instanceof Parser.Text && b instanceof Parser.Text) {
+            return ((Parser.Text) n).getText().contains(((Parser.Text) b).getText());
+        }
+        if (n instanceof Parser.KeyValue && !((Parser.KeyValue) n).isNeg()) {
+            // the record value is known exactly, evaluate the broader term on it
+            Parser.KeyValue kv = (Parser.KeyValue) n;
+            return kv.getKey().equals(key(b)) && holds(b, kv.getValue());
+        }
+        if (n instanceof Parser.BinaryComparision && isComparison(n)) {
+            Parser.BinaryComparision bc = (Parser.BinaryComparision) n;
+            String key = ((Parser.Text) bc.getLeft()).getText();
+            String value = ((Parser.Text) bc.getRight()).getText();
+            if (!key.equals(key(b))) return false;
+            if (b instanceof Parser.KeyValue && ((Parser.KeyValue) b).isNeg()) {
+                // the excluded value does not satisfy the comparison
+                return !Evaluator.compare(((Parser.KeyValue) b).getValue(), bc.getOperator(), value);
+            }
+            if (b instanceof Parser.BinaryComparision && isComparison(b)) {
+                Parser.BinaryComparision other = (Parser.BinaryComparision) b;
+                String bound = ((Parser.Text) other.getRight()).getText();
+                if (bc.getOperator() != other.getOperator()) return false;
+                switch (bc.getOperator()) {
+                    case HT:
+                        return tighter(value, bound);
+                    case LT:
+                        return tighter(bound, value);
+                    default:
+                        return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true when every value greater than a is also greater than b, both for numeric and lexicographic comparison
+     */
+    private static boolean tighter(String a, String b) {
+        double x = Evaluator.number(a);
+        double y = Evaluator.number(b);
+        if (Double.isNaN(x) != Double.isNaN(y)) return false;
+        return a.compareTo(b) >= 0 && (Double.isNaN(x) || x >= y);
+    }
+
+    private static boolean isComparison(Parser.Node node) {
+        Parser.BinaryComparision bc = (Parser.BinaryComparision) node;
+        return bc.getLeft() instanceof Parser.Text && bc.getRight() instanceof Parser.Text;
+    }
+
+    private static String key(Parser.Node node) {
+        if (node instanceof Parser.KeyValue) return ((Parser.KeyValue) node).getKey();
+        if (node instanceof Parser.Wildcard) return ((Parser.Wildcard) node).getKey();
+        if (node instanceof Parser.BinaryComparision && isComparison(node)) {
+            return ((Parser.Text) ((Parser.BinaryComparision) node).getLeft()).getText();
+        }
+        return null;
+    }
+
+    private static boolean holds(Parser.Node term, String value) {
+        Map<String, String> data = Collections.singletonMap(key(term), value);
+        return Evaluator.compile(term).test(new Evaluator.Context(data, null, ParserLimits.UNLIMITED));
+    }
+
+    private static final class Entry {
+        final Parser.Node query;
+        final BitSet matches;
+        final int cardinality;
+
+        Entry(Parser.Node query, BitSet matches) {
+            this.query = query;
+            this.matches = matches;
+            this.cardinality = matches.cardinality();
+        }
+    }
+
+    private static final class Key {
+        final Canonicalizer.Fingerprint fingerprint;
+        final long datasetVersion;
+
+        Key(Canonicalizer.Fingerprint fingerprint, long datasetVersion) {
+            this.fingerprint = fingerprint;
+            this.datasetVersion = datasetVersion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return datasetVersion == key.datasetVersion && fingerprint.equals(key.fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * fingerprint.hashCode() + Long.hashCode(datasetVersion);
+        }
+    }
+}
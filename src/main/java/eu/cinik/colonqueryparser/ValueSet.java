@@ -0,0 +1,138 @@
+package eu.cinik.colonqueryparser;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * <p>Immutable set of values used by membership leaves of {@link Evaluator}, see {@link Evaluator.MembershipCondition}.</p>
+ *
+ * <p>Values which are all dense canonical non-negative integers ({@code 0}, {@code 17}, no sign or leading zeros) are
+ * stored in a bitmap, other values in an open-addressing hash table with linear probing. Both answer
+ * {@link #contains(String)} without allocation.</p>
+ */
+abstract class ValueSet {
+    /**
+     * Bitmap is used when it has at most this many bits per value
+     */
+    static final int MAX_BITS_PER_VALUE = 64;
+    private static final int MAX_INTEGER_DIGITS = 18;
+
+    /**
+     * Creates a set of values
+     *
+     * @param values values, duplicates are ignored
+     * @return the most compact set for the values
+     */
+    static ValueSet of(Collection<String> values) {
+        Set<String> distinct = new LinkedHashSet<>(values);
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (String value : distinct) {
+            long n = integer(value);
+            if (n < 0) return new HashValueSet(distinct);
+            min = Math.min(min, n);
+            max = Math.max(max, n);
+        }
+        if (distinct.isEmpty() || max - min >= (long) distinct.size() * MAX_BITS_PER_VALUE) return new HashValueSet(distinct);
+        return new BitmapValueSet(distinct, min, max);
+    }
+
+    /**
+     * @param value value, may be null
+     * @return true when the value is in the set, false for null
+     */
+    abstract boolean contains(String value);
+
+    /**
+     * @return number of distinct values
+     */
+    abstract int size();
+
+    /**
+     * Parses a canonical non-negative integer
+     *
+     * @return the number or -1 when the value is not a canonical non-negative integer
+     */
+    static long integer(String value) {
+        int len = value.length();
+        if (len == 0 || len > MAX_INTEGER_DIGITS || len > 1 && value.charAt(0) == '0') return -1;
+        long n = 0;
+        for (int i = 0; i < len; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            n = n * 10 + (c - '0');
+        }
+        return n;
+    }
+
+    static final class HashValueSet extends ValueSet {
+        private final String[] table;
+        private final int mask;
+        private final int size;
+
+        HashValueSet(Set<String> values) {
+            int capacity = Integer.highestOneBit(Math.max(4, values.size() * 2 - 1)) << 1;
+            this.table = new String[capacity];
+            this.mask = capacity - 1;
+            this.size = values.size();
+            for (String value : values) {
+                int i = hash(value) & mask;
+                while (table[i] != null) i = (i + 1) & mask;
+                table[i] = value;
+            }
+        }
+
+        private static int hash(String value) {
+            int h = value.hashCode();
+            return h ^ (h >>> 16);
+        }
+
+        @Override
+        boolean contains(String value) {
+            if (value == null) return false;
+            for (int i = hash(value) & mask; ; i = (i + 1) & mask) {
+                String v = table[i];
+                if (v == null) return false;
+                if (v.equals(value)) return true;
+            }
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+    }
+
+    static final class BitmapValueSet extends ValueSet {
+        private final long[] bits;
+        private final long min;
+        private final long max;
+        private final int size;
+
+        BitmapValueSet(Set<String> values, long min, long max) {
+            this.bits = new long[(int) ((max - min) >>> 6) + 1];
+            this.min = min;
+            this.max = max;
+            this.size = values.size();
+            for (String value : values) {
+                long offset = integer(value) - min;
+                bits[(int) (offset >>> 6)] |= 1L << offset;
+            }
+        }
+
+        @Override
+        boolean contains(String value) {
+            if (value == null) return false;
+            long n = integer(value);
+            if (n < min || n > max) return false;
+            long offset = n - min;
+            return (bits[(int) (offset >>> 6)] & 1L << offset) != 0;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+    }
+}
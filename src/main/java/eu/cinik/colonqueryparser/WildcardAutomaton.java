@@ -0,0 +1,201 @@
+package eu.cinik.colonqueryparser;
+
+import java.util.*;
+
+/**
+ * <p>Deterministic finite automaton matching up to 64 wildcard patterns at once, where '*' matches any sequence
+ * of characters and every other character matches itself.</p>
+ *
+ * <p>The automaton is built by subset construction over pattern positions, so matching reads every character exactly
+ * once, never backtracks and tells which of the patterns match in a single pass. Characters are mapped to classes
+ * (characters used by patterns plus one class for all others) to keep the transition table small.</p>
+ */
+public final class WildcardAutomaton {
+    /**
+     * Maximum number of patterns of a single automaton
+     */
+    public static final int MAX_PATTERNS = 64;
+    static final int MAX_STATES = 4096;
+    private static final int DEAD = 0;
+
+    private final String[] patterns;
+    private final char[] alphabet;
+    private final int[] asciiClasses = new int[128];
+    private final int classes;
+    private final int[] transitions;
+    private final long[] accepts;
+    private final int start;
+
+    /**
+     * Builds an automaton
+     *
+     * @param patterns patterns, at most {@link #MAX_PATTERNS}
+     * @throws IllegalArgumentException when there are too many patterns or the automaton would be too large
+     */
+    public WildcardAutomaton(List<String> patterns) {
+        if (patterns.size() > MAX_PATTERNS) {
+            throw new IllegalArgumentException("Too many patterns: " + patterns.size());
+        }
+        this.patterns = patterns.toArray(new String[0]);
+        TreeSet<Character> chars = new TreeSet<>();
+        for (String p : this.patterns) {
+            for (int i = 0; i < p.length(); i++) {
+                if (p.charAt(i) != '*') chars.add(p.charAt(i));
+            }
+        }
+        this.alphabet = new char[chars.size()];
+        int i = 0;
+        for (char c : chars) {
+            alphabet[i++] = c;
+            if (c < 128) asciiClasses[c] = i;
+        }
+        this.classes = alphabet.length + 1;
+
+        // NFA positions of all patterns numbered consecutively, position == pattern length accepts
+        int[] offsets = new int[this.patterns.length + 1];
+        for (int p = 0; p < this.patterns.length; p++) {
+            offsets[p + 1] = offsets[p] + this.patterns[p].length() + 1;
+        }
+        List<BitSet> states = new ArrayList<>();
+        Map<BitSet, Integer> ids = new HashMap<>();
+        states.add(new BitSet());
+        ids.put(new BitSet(), DEAD);
+        BitSet initial = new BitSet();
+        for (int p = 0; p < this.patterns.length; p++) {
+            initial.set(offsets[p]);
+        }
+        closure(initial, offsets);
+        this.start = id(initial, states, ids);
+        List<int[]> rows = new ArrayList<>();
+        for (int s = 0; s < states.size(); s++) {
+            BitSet state = states.get(s);
+            int[] row = new int[classes];
+            for (int cls = 0; cls < classes; cls++) {
+                BitSet next = new BitSet();
+                for (int pos = state.nextSetBit(0); pos >= 0; pos = state.nextSetBit(pos + 1)) {
+                    int p = pattern(pos, offsets);
+                    int idx = pos - offsets[p];
+                    String pattern = this.patterns[p];
+                    if (idx == pattern.length()) continue;
+                    char pc = pattern.charAt(idx);
+                    if (pc == '*') next.set(pos);
+                    else if (cls > 0 && alphabet[cls - 1] == pc) next.set(pos + 1);
+                }
+                closure(next, offsets);
+                row[cls] = id(next, states, ids);
+                if (states.size() > MAX_STATES) {
+                    throw new IllegalArgumentException("Automaton exceeds " + MAX_STATES + " states");
+                }
+            }
+            rows.add(row);
+        }
+        this.transitions = new int[states.size() * classes];
+        this.accepts = new long[states.size()];
+        for (int s = 0; s < states.size(); s++) {
+            System.arraycopy(rows.get(s), 0, transitions, s * classes, classes);
+            BitSet state = states.get(s);
+            for (int p = 0; p < this.patterns.length; p++) {
+                if (state.get(offsets[p + 1] - 1)) accepts[s] |= 1L << p;
+            }
+        }
+    }
+
+    private void closure(BitSet positions, int[] offsets) {
+        for (int pos = positions.nextSetBit(0); pos >= 0; pos = positions.nextSetBit(pos + 1)) {
+            int p = pattern(pos, offsets);
+            int idx = pos - offsets[p];
+            if (idx < patterns[p].length() && patterns[p].charAt(idx) == '*') positions.set(pos + 1);
+        }
+    }
+
+    private static int pattern(int pos, int[] offsets) {
+        int p = Arrays.binarySearch(offsets, pos);
+        return p >= 0 ? p : -p - 2;
+    }
+
+    private static int id(BitSet state, List<BitSet> states, Map<BitSet, Integer> ids) {
+        Integer id = ids.get(state);
+        if (id == null) {
+            id = states.size();
+            states.add(state);
+            ids.put(state, id);
+        }
+        return id;
+    }
+
+    private int charClass(char c) {
+        if (c < 128) return asciiClasses[c];
+        int idx = Arrays.binarySearch(alphabet, c);
+        return idx >= 0 ? idx + 1 : 0;
+    }
+
+    /**
+     * Matches whole input against all patterns
+     *
+     * @param input input
+     * @return bit mask of matching patterns, bit {@code i} for pattern {@code i}
+     */
+    public long match(CharSequence input) {
+        return match(input, 0, input.length());
+    }
+
+    long match(CharSequence input, int from, int to) {
+        int state = start;
+        for (int i = from; i < to && state != DEAD; i++) {
+            state = transitions[state * classes + charClass(input.charAt(i))];
+        }
+        return accepts[state];
+    }
+
+    /**
+     * Matches every whitespace separated word of a text against all patterns
+     *
+     * @param text text
+     * @return bit mask of patterns matching at least one word
+     */
+    public long matchWords(CharSequence text) {
+        long result = 0;
+        int len = text.length();
+        int i = 0;
+        while (i < len) {
+            while (i < len && Character.isWhitespace(text.charAt(i))) i++;
+            int from = i;
+            while (i < len && !Character.isWhitespace(text.charAt(i))) i++;
+            if (i > from) result |= match(text, from, i);
+        }
+        return result;
+    }
+
+    /**
+     * @return number of patterns
+     */
+    public int size() {
+        return patterns.length;
+    }
+
+    /**
+     * @param pattern pattern index
+     * @return the pattern
+     */
+    public String pattern(int pattern) {
+        return patterns[pattern];
+    }
+
+    /**
+     * @return number of states of the automaton
+     */
+    public int states() {
+        return accepts.length;
+    }
+
+    /**
+     * Literal prefix of a pattern preceding its first wildcard
+     *
+     * @param pattern pattern
+     * @return prefix, whole pattern if it has no wildcard
+     */
+    static public String prefix(String pattern) {
+        int idx = pattern.indexOf('*');
+        return idx < 0 ? pattern : pattern.substring(0, idx);
+    }
+}
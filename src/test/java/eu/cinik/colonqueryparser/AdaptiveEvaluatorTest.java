@@ -0,0 +1,94 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+public class AdaptiveEvaluatorTest {
+
+    /**
+     * @return clock advancing by 100 ns on every read, so all operands cost the same
+     */
+    private static LongSupplier steadyClock() {
+        AtomicLong nanos = new AtomicLong();
+        return () -> nanos.addAndGet(100);
+    }
+
+    @Test
+    public void selectiveOperandMovesFirst() {
+        AdaptiveEvaluator evaluator = new AdaptiveEvaluator(EvaluatorTest.parse("lorem status:rare"),
+                ParserLimits.UNLIMITED, 1, 64, steadyClock());
+        Assert.assertEquals("AND(\"lorem\" \"status\":\"rare\")", evaluator.toString());
+        Map<String, String> record = EvaluatorTest.record("status", "common");
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) text.append("ipsum dolor sit amet ");
+        text.append("lorem");
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertFalse(evaluator.matches(record, text.toString()));
+        }
+        Assert.assertEquals("AND(\"status\":\"rare\" \"lorem\")", evaluator.toString());
+    }
+
+    @Test
+    public void orPrefersLikelyOperand() {
+        AdaptiveEvaluator evaluator = new AdaptiveEvaluator(EvaluatorTest.parse("(status:rare OR status:common)"),
+                ParserLimits.UNLIMITED, 1, 64, steadyClock());
+        Map<String, String> record = EvaluatorTest.record("status", "common");
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(evaluator.matches(record, null));
+        }
+        Assert.assertEquals("OR(\"status\":\"common\" \"status\":\"rare\")", evaluator.toString());
+    }
+
+    @Test
+    public void zeroCostOperandsRankedBySelectivity() {
+        AdaptiveEvaluator evaluator = new AdaptiveEvaluator(EvaluatorTest.parse("status:common level:rare"),
+                ParserLimits.UNLIMITED, 1, 64, () -> 0L);
+        Map<String, String> record = EvaluatorTest.record("status", "common", "level", "often");
+        for (int i = 0; i < 100; i++) {
+            Assert.assertFalse(evaluator.matches(record, null));
+        }
+        Assert.assertEquals("AND(\"level\":\"rare\" \"status\":\"common\")", evaluator.toString());
+    }
+
+    @Test
+    public void sameResultsAsEvaluator() throws Exception {
+        QueryGenerator generator = new QueryGenerator(21);
+        List<Map<String, String>> records = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            records.add(generator.record());
+            texts.add(generator.text(5));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int q = 0; q < 30; q++) {
+                Parser.Node node = EvaluatorTest.parse(generator.query(2 + q % 5));
+                Evaluator expected = new Evaluator(node);
+                AdaptiveEvaluator adaptive = new AdaptiveEvaluator(node, ParserLimits.UNLIMITED, 2, 8);
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    futures.add(executor.submit(() -> {
+                        for (int round = 0; round < 5; round++) {
+                            for (int r = 0; r < records.size(); r++) {
+                                Assert.assertEquals(expected.matches(records.get(r), texts.get(r)),
+                                        adaptive.matches(records.get(r), texts.get(r)));
+                            }
+                        }
+                    }));
+                }
+                for (Future<?> f : futures) f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
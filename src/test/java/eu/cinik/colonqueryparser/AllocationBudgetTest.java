@@ -0,0 +1,117 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+/**
+ * Fails when bytes allocated per parsed query or per lexed token cross budgets checked in
+ * {@code allocation-budgets.properties}. Run with {@code -Dallocation.report=true} to print measured values when
+ * updating the budgets.
+ */
+public class AllocationBudgetTest {
+    static final String[] CORPUS = {"", ":", "-", "A", "AB", " ", "\"AB\"", "\"\\\"\"", "jo*", "ABC DEF", "KEY:VALUE",
+            "-KEY:VALUE", "t1 AND t2", "t1 OR t2 AND t3", "(t1 OR t2) t3", "(key1:value1 OR key2:value2) key3:value3",
+            "(-key1:value1 OR -key2:value2) -key3:value3", "t1>t2", "t1<t2", "t1=t2", "-name:*son x*",
+            "abc \"def and foo\" AND x OR y (-key1:valuezz OR key2:value2) key3:value3"};
+    private static final int ROUNDS = 5;
+
+    private static com.sun.management.ThreadMXBean threads;
+    private static final Properties budgets = new Properties();
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        try (InputStream in = AllocationBudgetTest.class.getResourceAsStream("/allocation-budgets.properties")) {
+            budgets.load(in);
+        }
+    }
+
+    /**
+     * @return minimum over rounds of bytes allocated per iteration after warm up
+     */
+    private static long allocatedPerIteration(int iterations, Runnable task) {
+        for (int i = 0; i < iterations * 20; i++) task.run();
+        long best = Long.MAX_VALUE;
+        long thread = Thread.currentThread().getId();
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < iterations; i++) task.run();
+            best = Math.min(best, (threads.getThreadAllocatedBytes(thread) - start) / iterations);
+        }
+        return best;
+    }
+
+    private static void assertWithinBudget(String name, long measured) {
+        if (Boolean.getBoolean("allocation.report")) {
+            System.out.println(name + "=" + measured);
+        }
+        String budget = budgets.getProperty(name);
+        Assert.assertNotNull("No budget for " + name, budget);
+        Assert.assertTrue(String.format("%s allocates %d bytes, budget is %s", name, measured, budget),
+                measured <= Long.parseLong(budget.trim()));
+    }
+
+    private static int tokens(String query) {
+        Lexer lexer = new Lexer();
+        StringReader reader = new StringReader(query);
+        int count = 1;
+        while (lexer.next(reader).getTokenType() != TokenType.EOF) count++;
+        return count;
+    }
+
+    private static void lex(String query) {
+        Lexer lexer = new Lexer();
+        StringReader reader = new StringReader(query);
+        while (lexer.next(reader).getTokenType() != TokenType.EOF) ;
+    }
+
+    private static long lexerBytesPerToken(int iterations, String... queries) {
+        int tokens = 0;
+        for (String query : queries) tokens += tokens(query);
+        return allocatedPerIteration(iterations, () -> {
+            for (String query : queries) lex(query);
+        }) / tokens;
+    }
+
+    private static long parserBytesPerQuery(int iterations, String... queries) {
+        return allocatedPerIteration(iterations, () -> {
+            for (String query : queries) new Parser(new StringReader(query)).statement();
+        }) / queries.length;
+    }
+
+    @Test
+    public void lexerCorpus() {
+        assertWithinBudget("lexer.corpus.bytesPerToken", lexerBytesPerToken(100, CORPUS));
+    }
+
+    @Test
+    public void lexerGenerated() {
+        assertWithinBudget("lexer.generated.bytesPerToken", lexerBytesPerToken(10, new QueryGenerator(42).query(1000)));
+    }
+
+    @Test
+    public void parserCorpus() {
+        assertWithinBudget("parser.corpus.bytesPerQuery", parserBytesPerQuery(100, CORPUS));
+    }
+
+    @Test
+    public void parserGenerated() {
+        QueryGenerator generator = new QueryGenerator(42);
+        String[] queries = new String[20];
+        for (int i = 0; i < queries.length; i++) queries[i] = generator.userQuery();
+        assertWithinBudget("parser.userQueries.bytesPerQuery", parserBytesPerQuery(100, queries));
+        assertWithinBudget("parser.generated1000.bytesPerQuery", parserBytesPerQuery(10, generator.query(1000)));
+    }
+}
@@ -0,0 +1,56 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class BatchEvaluatorTest {
+
+    private static List<Parser.Node> parse(String... programs) {
+        List<Parser.Node> queries = new ArrayList<>();
+        for (String program : programs) {
+            queries.add(EvaluatorTest.parse(program));
+        }
+        return queries;
+    }
+
+    @Test
+    public void sharesSubexpressions() {
+        BatchEvaluator batch = new BatchEvaluator(parse(
+                "tenant:42 -status:deleted",
+                "-status:deleted tenant:42",
+                "tenant:42 (region:eu OR region:us)",
+                "(region:us OR region:eu) AND tenant:42 -status:deleted"));
+        // tenant, status, region:eu, region:us, AND(tenant,status), OR(eu,us), AND(tenant,OR), AND(tenant,status,OR)
+        Assert.assertEquals(8, batch.distinctNodes());
+    }
+
+    @Test
+    public void sameResultsAsEvaluator() {
+        QueryGenerator generator = new QueryGenerator(11);
+        List<Parser.Node> queries = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            queries.add(EvaluatorTest.parse(generator.query(1 + i % 5)));
+        }
+        queries.add(null);
+        BatchEvaluator batch = new BatchEvaluator(queries);
+        Assert.assertTrue(batch.distinctNodes() < 1000);
+        for (int r = 0; r < 100; r++) {
+            Map<String, String> record = generator.record();
+            String text = generator.text(5);
+            BitSet matching = batch.matches(record, text);
+            for (int i = 0; i < queries.size(); i++) {
+                Assert.assertEquals(new Evaluator(queries.get(i)).matches(record, text), matching.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void sharedLeafEvaluatedOnce() {
+        BatchEvaluator batch = new BatchEvaluator(parse("a:1", "a:1 b:2", "b:2 OR a:1"),
+                ParserLimits.UNLIMITED.withMaxLeafEvaluations(2));
+        BitSet matching = batch.matches(EvaluatorTest.record("a", "1", "b", "2"), null);
+        Assert.assertEquals(3, matching.cardinality());
+    }
+}
@@ -0,0 +1,96 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CanonicalizerTest {
+
+    private static Parser.Node parse(String program) {
+        return EvaluatorTest.parse(program);
+    }
+
+    private void assertEquivalent(String expectedForm, String... programs) {
+        Set<Canonicalizer.Fingerprint> fingerprints = new HashSet<>();
+        for (String program : programs) {
+            Assert.assertEquals(program, expectedForm, Canonicalizer.canonicalForm(parse(program)));
+            fingerprints.add(Canonicalizer.fingerprint(parse(program)));
+        }
+        Assert.assertEquals(1, fingerprints.size());
+    }
+
+    @Test
+    public void commutativeAndStatements() {
+        assertEquivalent("AND(\"a\":\"1\",\"b\":\"2\")", "a:1 AND b:2", "b:2 a:1", "(a:1) AND b:2", "a:1 and b:2", "a:1 a:1 b:2");
+    }
+
+    @Test
+    public void nestedOr() {
+        assertEquivalent("OR(\"x\",\"y\",\"z\")", "x OR (y OR z)", "(z OR x) OR y", "(y or x) OR z");
+    }
+
+    @Test
+    public void different() {
+        Assert.assertNotEquals(Canonicalizer.fingerprint(parse("a:1 b:2")), Canonicalizer.fingerprint(parse("a:1 OR b:2")));
+        Assert.assertNotEquals(Canonicalizer.fingerprint(parse("a>1")), Canonicalizer.fingerprint(parse("a<1")));
+        Assert.assertNotEquals(Canonicalizer.fingerprint(parse("-a:1")), Canonicalizer.fingerprint(parse("a:1")));
+        Assert.assertNotEquals(Canonicalizer.fingerprint(parse("\"a:1\"")), Canonicalizer.fingerprint(parse("a:1")));
+    }
+
+    @Test
+    public void canonicalTreeIsEquivalent() {
+        String program = "abc (-key1:valuezz OR key2:value2) key3:value3";
+        Parser.Node canonical = Canonicalizer.canonicalize(parse(program));
+        Assert.assertEquals(Canonicalizer.canonicalForm(parse(program)), Canonicalizer.canonicalForm(canonical));
+        Assert.assertTrue(new Evaluator(canonical).matches(EvaluatorTest.record("key2", "value2", "key3", "value3"), "abc"));
+    }
+
+    @Test
+    public void murmur3ReferenceVector() {
+        byte[] data = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8);
+        Assert.assertEquals("e34bbc7bbc071b6c7a433ca9c49a9347", Canonicalizer.Fingerprint.of(data).toString());
+    }
+
+    @Test
+    public void resultCacheSharesEquivalentQueries() {
+        DefaultParserMetrics metrics = new DefaultParserMetrics();
+        ResultCache<Set<Integer>> cache = new ResultCache<>(100, Set::size, metrics);
+        AtomicInteger computed = new AtomicInteger();
+        cache.get(parse("a:1 AND b:2"), 1, q -> {
+            computed.incrementAndGet();
+            return Collections.singleton(1);
+        });
+        Set<Integer> result = cache.get(parse("b:2 a:1"), 1, q -> {
+            computed.incrementAndGet();
+            return Collections.singleton(2);
+        });
+        Assert.assertEquals(Collections.singleton(1), result);
+        Assert.assertEquals(1, computed.get());
+        cache.get(parse("b:2 a:1"), 2, q -> {
+            computed.incrementAndGet();
+            return Collections.singleton(2);
+        });
+        Assert.assertEquals(2, computed.get());
+        Assert.assertEquals(1, metrics.snapshot().getCacheHits());
+        Assert.assertEquals(2, metrics.snapshot().getCacheMisses());
+        cache.invalidateBefore(2);
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void resultCacheEvictsByWeight() {
+        ResultCache<String> cache = new ResultCache<>(10, String::length);
+        cache.put(Canonicalizer.fingerprint(parse("a")), 1, "12345");
+        cache.put(Canonicalizer.fingerprint(parse("b")), 1, "12345");
+        Assert.assertNotNull(cache.getIfPresent(Canonicalizer.fingerprint(parse("a")), 1));
+        cache.put(Canonicalizer.fingerprint(parse("c")), 1, "1");
+        Assert.assertNull(cache.getIfPresent(Canonicalizer.fingerprint(parse("b")), 1));
+        Assert.assertNotNull(cache.getIfPresent(Canonicalizer.fingerprint(parse("a")), 1));
+        Assert.assertEquals(6, cache.weight());
+    }
+}
@@ -0,0 +1,127 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class ColonGrepTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file(String name, String... lines) throws IOException {
+        Path path = folder.newFile(name).toPath();
+        Files.write(path, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    private static String grep(String query, int chunkSize, boolean count, List<Path> files) throws IOException {
+        Parser.Node node = new Parser(new StringReader(query)).statement();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ColonGrep(node, 4, chunkSize, count, files.size() > 1).grep(files, out, System.err);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void logfmtAndJson() throws IOException {
+        Path log = file("app.log",
+                "ts=1 service=api level=warn env=prod msg=\"slow request\"",
+                "ts=2 service=api level=error env=dev msg=\"disk failed\"",
+                "{\"ts\":3,\"service\":\"api\",\"level\":\"error\",\"env\":\"prod\",\"ctx\":{\"service\":\"db\"}}",
+                "{\"ts\":4,\"service\":\"db\",\"level\":\"warn\"}",
+                "plain line mentioning service=api level=info\r",
+                "{broken json service:api",
+                "");
+        List<Path> files = Collections.singletonList(log);
+        Assert.assertEquals("ts=1 service=api level=warn env=prod msg=\"slow request\"\n"
+                        + "{\"ts\":3,\"service\":\"api\",\"level\":\"error\",\"env\":\"prod\",\"ctx\":{\"service\":\"db\"}}\n",
+                grep("service:api -level:info -env:dev", 1 << 20, false, files));
+        Assert.assertEquals("ts=2 service=api level=error env=dev msg=\"disk failed\"\n",
+                grep("msg:\"disk failed\"", 1 << 20, false, files));
+        Assert.assertEquals("plain line mentioning service=api level=info\n", grep("mention*", 16, false, files));
+        Assert.assertEquals("4\n", grep("service:api", 16, true, files));
+    }
+
+    @Test
+    public void chunksKeepOrder() throws IOException {
+        QueryGenerator generator = new QueryGenerator(5);
+        List<String> lines = new ArrayList<>();
+        List<Map<String, String>> records = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            Map<String, String> record = generator.record();
+            records.add(record);
+            StringBuilder line = new StringBuilder("n=").append(i);
+            for (Map.Entry<String, String> e : record.entrySet()) {
+                line.append(' ').append(e.getKey()).append('=').append(e.getValue());
+            }
+            lines.add(line.toString());
+        }
+        Path a = file("a.log", lines.subList(0, 1_000).toArray(new String[0]));
+        Path b = file("b.log", lines.subList(1_000, 2_000).toArray(new String[0]));
+        for (int q = 0; q < 20; q++) {
+            String query = generator.query(2).replaceAll("\"[^\"]*\"", "x");
+            Evaluator evaluator = new Evaluator(EvaluatorTest.parse(query));
+            StringBuilder expected = new StringBuilder();
+            int[] counts = new int[2];
+            for (int i = 0; i < lines.size(); i++) {
+                if (evaluator.matches(records.get(i), lines.get(i))) {
+                    expected.append(i < 1_000 ? a : b).append(':').append(lines.get(i)).append('\n');
+                    counts[i / 1_000]++;
+                }
+            }
+            Assert.assertEquals(query, expected.toString(), grep(query, 997, false, Arrays.asList(a, b)));
+            Assert.assertEquals(query, a + ":" + counts[0] + "\n" + b + ":" + counts[1] + "\n",
+                    grep(query, 1 << 12, true, Arrays.asList(a, b)));
+        }
+    }
+
+    @Test
+    public void levelComparisons() throws IOException {
+        List<Path> files = Collections.singletonList(file("levels.log",
+                "level=debug", "level=warn", "level=warning", "level=error", "level=FATAL", "level=x",
+                "{\"level\":\"critical\",\"n\":10}", "n=9"));
+        Assert.assertEquals("level=error\nlevel=FATAL\n{\"level\":\"critical\",\"n\":10}\n",
+                grep("level>warn", 1 << 20, false, files));
+        Assert.assertEquals("level=debug\n", grep("level<info", 1 << 20, false, files));
+        Assert.assertEquals("level=warn\nlevel=warning\n", grep("level=WARN", 1 << 20, false, files));
+        Assert.assertEquals("{\"level\":\"critical\",\"n\":10}\n", grep("n>9", 1 << 20, false, files));
+    }
+
+    @Test
+    public void exitStatus() throws IOException {
+        Path log = file("x.log", "a=1", "a=2");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream err = new PrintStream(new ByteArrayOutputStream());
+        Assert.assertEquals(0, ColonGrep.run(new String[]{"-j", "2", "a:2", log.toString()}, new PrintStream(out), err));
+        Assert.assertEquals("a=2\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+        Assert.assertEquals(1, ColonGrep.run(new String[]{"a:3", log.toString()}, new PrintStream(out), err));
+        Assert.assertEquals(2, ColonGrep.run(new String[]{"a:3"}, new PrintStream(out), err));
+        Assert.assertEquals(2, ColonGrep.run(new String[]{"a:3", folder.getRoot() + "/missing.log"}, new PrintStream(out), err));
+    }
+
+    @Test
+    public void unreadableFileDoesNotStopOthers() throws IOException {
+        Path a = file("a.log", "a=1", "a=2");
+        Path b = file("b.log", "a=2");
+        String missing = folder.getRoot() + "/missing.log";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        Assert.assertEquals(2, ColonGrep.run(new String[]{"-c", "a:2", a.toString(), missing, b.toString()},
+                new PrintStream(out), new PrintStream(err)));
+        Assert.assertEquals(a + ":1\n" + b + ":1\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+        Assert.assertTrue(new String(err.toByteArray(), StandardCharsets.UTF_8).startsWith("colongrep: " + missing + ": "));
+    }
+}
@@ -0,0 +1,124 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+public class ColumnarStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ColumnarStore numbers() {
+        Map<String, ColumnarStore.Type> schema = new LinkedHashMap<>();
+        schema.put("level", ColumnarStore.Type.NUMBER);
+        schema.put("name", ColumnarStore.Type.STRING);
+        ColumnarStore.Builder builder = new ColumnarStore.Builder(schema, true);
+        builder.add(EvaluatorTest.record("level", "1", "name", "johnson"), "disk full");
+        builder.add(EvaluatorTest.record("level", "5.5", "name", "żaneta"), "timeout on żółw");
+        builder.add(EvaluatorTest.record("name", "10"), null);
+        return builder.build();
+    }
+
+    private static BitSet matching(ColumnarStore store, String program) {
+        return store.compile(EvaluatorTest.parse(program)).matching();
+    }
+
+    private static BitSet bits(int... ids) {
+        BitSet b = new BitSet();
+        for (int id : ids) b.set(id);
+        return b;
+    }
+
+    @Test
+    public void numberColumn() {
+        ColumnarStore store = numbers();
+        Assert.assertEquals(bits(1), matching(store, "level>1"));
+        Assert.assertEquals(bits(0, 1), matching(store, "level<6"));
+        Assert.assertEquals(bits(1), matching(store, "level:5.5"));
+        Assert.assertEquals(bits(0, 2), matching(store, "-level:5.5"));
+    }
+
+    @Test
+    public void stringColumnAndText() {
+        ColumnarStore store = numbers();
+        Assert.assertEquals(bits(0, 1, 2), matching(store, "name>9"));
+        Assert.assertEquals(bits(), matching(store, "name<9"));
+        Assert.assertEquals(bits(0), matching(store, "name:jo*"));
+        Assert.assertEquals(bits(1), matching(store, "name:ża*"));
+        Assert.assertEquals(bits(1), matching(store, "żół*"));
+        Assert.assertEquals(bits(1), matching(store, "\"on ż\""));
+        Assert.assertEquals(bits(0, 1, 2), matching(store, "-unknown:x"));
+        Assert.assertEquals(bits(), matching(store, "unknown>1"));
+    }
+
+    @Test
+    public void sameResultsAsEvaluator() {
+        QueryGenerator generator = new QueryGenerator(5);
+        Map<String, ColumnarStore.Type> schema = new LinkedHashMap<>();
+        for (String key : QueryGenerator.KEYS) schema.put(key, ColumnarStore.Type.STRING);
+        ColumnarStore.Builder builder = new ColumnarStore.Builder(schema, true);
+        List<Map<String, String>> records = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            records.add(generator.record());
+            texts.add(generator.text(6));
+            builder.add(records.get(i), texts.get(i));
+        }
+        ColumnarStore store = builder.build();
+        for (int q = 0; q < 100; q++) {
+            Parser.Node node = EvaluatorTest.parse(generator.query(1 + q % 4));
+            Evaluator evaluator = new Evaluator(node);
+            ColumnarStore.Query query = store.compile(node);
+            for (int row = 0; row < records.size(); row++) {
+                Assert.assertEquals(evaluator.matches(records.get(row), texts.get(row)), query.matches(row));
+            }
+        }
+    }
+
+    @Test
+    public void longNumbersAsEvaluator() {
+        String[] values = {"12345678901234567890", "12345678901234567891", "1234567890123456789.5", "0.30000000000000004",
+                "-99999999999999999999", "123456789012345.678", "9007199254740993", "1e5", "123456789012345678x"};
+        ColumnarStore.Builder builder = new ColumnarStore.Builder(Collections.singletonMap("v", ColumnarStore.Type.STRING), false);
+        List<Map<String, String>> records = new ArrayList<>();
+        for (String value : values) {
+            records.add(EvaluatorTest.record("v", value));
+            builder.add(records.get(records.size() - 1), null);
+        }
+        ColumnarStore store = builder.build();
+        for (String value : values) {
+            for (String operator : new String[]{">", "<", "="}) {
+                Parser.Node node = EvaluatorTest.parse("v" + operator + value);
+                Evaluator evaluator = new Evaluator(node);
+                ColumnarStore.Query query = store.compile(node);
+                for (int row = 0; row < records.size(); row++) {
+                    Assert.assertEquals("v" + operator + value + " " + values[row],
+                            evaluator.matches(records.get(row), null), query.matches(row));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void mappedFile() throws IOException {
+        Path path = folder.newFile("store.col").toPath();
+        numbers().write(path);
+        ColumnarStore store = ColumnarStore.map(path);
+        Assert.assertEquals(3, store.rows());
+        Assert.assertEquals(numbers().schema(), store.schema());
+        Assert.assertEquals(bits(1), matching(store, "level>1 name:ż*"));
+        Assert.assertEquals(bits(0), matching(store, "disk"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notANumber() {
+        new ColumnarStore.Builder(Collections.singletonMap("level", ColumnarStore.Type.NUMBER), false)
+                .add(EvaluatorTest.record("level", "high"), null);
+    }
+}
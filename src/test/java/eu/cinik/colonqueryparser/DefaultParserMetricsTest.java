@@ -0,0 +1,118 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Map;
+
+public class DefaultParserMetricsTest {
+
+    private Parser.Node parse(DefaultParserMetrics metrics, String program) {
+        try (StringReader r = new StringReader(program)) {
+            return new Parser(r, metrics).statement();
+        }
+    }
+
+    @Test
+    public void parsedStatement() {
+        DefaultParserMetrics metrics = new DefaultParserMetrics();
+        parse(metrics, "t1 (k1:v1 OR k2:v2)");
+        DefaultParserMetrics.Snapshot s = metrics.snapshot();
+        Assert.assertEquals(1, s.getParsed());
+        Assert.assertEquals(1, s.getParseNanos().getCount());
+        Assert.assertEquals(5, s.getNodes().getMax());
+        Assert.assertEquals(3, s.getDepth().getMax());
+        Assert.assertTrue(s.getTokens().getMax() > 10);
+    }
+
+    @Test
+    public void eventsAndArenaRecordTreeShape() {
+        QueryGenerator generator = new QueryGenerator(41);
+        for (int q = 0; q < 200; q++) {
+            String query = generator.userQuery();
+            DefaultParserMetrics tree = new DefaultParserMetrics();
+            parse(tree, query);
+            DefaultParserMetrics events = new DefaultParserMetrics();
+            new Parser(new StringReader(query), events).statement(new Parser.EventHandler() {
+            });
+            DefaultParserMetrics arena = new DefaultParserMetrics();
+            new Parser(new StringReader(query), arena).statement(new QueryArena());
+            for (DefaultParserMetrics metrics : new DefaultParserMetrics[]{events, arena}) {
+                DefaultParserMetrics.Snapshot s = metrics.snapshot();
+                Assert.assertEquals(query, 1, s.getParsed());
+                Assert.assertEquals(query, tree.snapshot().getDepth().getMax(), s.getDepth().getMax());
+                Assert.assertEquals(query, tree.snapshot().getNodes().getMax(), s.getNodes().getMax());
+                Assert.assertEquals(query, tree.snapshot().getTokens().getMax(), s.getTokens().getMax());
+            }
+        }
+        DefaultParserMetrics metrics = new DefaultParserMetrics();
+        try {
+            new Parser(new StringReader("(t1"), metrics).statement(new QueryArena());
+            Assert.fail();
+        } catch (Parser.ParserException e) {
+            Assert.assertEquals(1, metrics.snapshot().getParserErrors());
+        }
+    }
+
+    @Test
+    public void emptyStatement() {
+        DefaultParserMetrics metrics = new DefaultParserMetrics();
+        Assert.assertNull(parse(metrics, ""));
+        Assert.assertEquals(0, metrics.snapshot().getNodes().getMax());
+        Assert.assertEquals(1, metrics.snapshot().getParsed());
+    }
+
+    @Test
+    public void errorsByCategory() {
+        DefaultParserMetrics metrics = new DefaultParserMetrics();
+        try {
+            parse(metrics, "\"");
+            Assert.fail();
+        } catch (Lexer.LexerException e) {
+            //expected
+        }
+        try {
+            parse(metrics, "(t1");
+            Assert.fail();
+        } catch (Parser.ParserException e) {
+            Assert.assertEquals("Expected token CBRACKET but EOF found", e.getMessage());
+        }
+        DefaultParserMetrics.Snapshot s = metrics.snapshot();
+        Assert.assertEquals(0, s.getParsed());
+        Assert.assertEquals(1, s.getLexerErrors());
+        Assert.assertEquals(Long.valueOf(1), s.getLexerErrorCategories().get("Unexpected EOF"));
+        Assert.assertEquals(1, s.getParserErrors());
+        Assert.assertEquals(Long.valueOf(1), s.getParserErrorCategories().get("Expected token"));
+    }
+
+    @Test
+    public void export() {
+        DefaultParserMetrics metrics = new DefaultParserMetrics();
+        parse(metrics, "k:v");
+        metrics.cacheHit();
+        metrics.cacheMiss();
+        metrics.cacheMiss();
+        Map<String, Number> exported = metrics.snapshot().toMap();
+        Assert.assertEquals(1L, exported.get("parsed"));
+        Assert.assertEquals(1L, exported.get("cache.hits"));
+        Assert.assertEquals(2L, exported.get("cache.misses"));
+        Assert.assertEquals(1L, exported.get("parse.nodes.count"));
+        Assert.assertTrue(metrics.snapshot().toString().contains("parse.nanos.p99 "));
+    }
+
+    @Test
+    public void histogramPercentiles() {
+        Histogram h = new Histogram();
+        for (int i = 1; i <= 100; i++) {
+            h.record(i);
+        }
+        Histogram.Snapshot s = h.snapshot();
+        Assert.assertEquals(100, s.getCount());
+        Assert.assertEquals(5050, s.getSum());
+        Assert.assertEquals(100, s.getMax());
+        Assert.assertEquals(63, s.percentile(50));
+        Assert.assertEquals(100, s.percentile(99));
+        Assert.assertEquals(1, s.getBucketCount(1));
+    }
+}
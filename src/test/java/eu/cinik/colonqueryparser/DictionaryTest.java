@@ -0,0 +1,99 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class DictionaryTest {
+
+    @Test
+    public void encode() {
+        Dictionary dictionary = new Dictionary();
+        int[] record = dictionary.encode(EvaluatorTest.record("status", "open", "region", "eu"));
+        Assert.assertEquals(2, record.length);
+        Assert.assertEquals("open", dictionary.value(record[dictionary.keyId("status")]));
+        Assert.assertEquals(Dictionary.MISSING, dictionary.lookupValue("closed"));
+    }
+
+    @Test
+    public void unknownValueIsStaticallyResolved() {
+        Dictionary dictionary = new Dictionary();
+        int[] record = dictionary.encode(EvaluatorTest.record("status", "open"));
+        Assert.assertFalse(dictionary.compile(EvaluatorTest.parse("status:closed")).matches(record, null));
+        Assert.assertTrue(dictionary.compile(EvaluatorTest.parse("-status:closed")).matches(record, null));
+        Assert.assertTrue(dictionary.compile(EvaluatorTest.parse("-unknown:x")).matches(record, null));
+    }
+
+    @Test
+    public void valuesAddedAfterCompilation() {
+        Dictionary dictionary = new Dictionary();
+        dictionary.encode(EvaluatorTest.record("level", "1"));
+        Dictionary.Query keyValue = dictionary.compile(EvaluatorTest.parse("level:7"));
+        Dictionary.Query comparison = dictionary.compile(EvaluatorTest.parse("level>5"));
+        int[] record = dictionary.encode(EvaluatorTest.record("level", "7"));
+        long tested = dictionary.valuesTested.get();
+        Assert.assertTrue(keyValue.matches(record, null));
+        Assert.assertTrue(comparison.matches(record, null));
+        Assert.assertTrue(comparison.matches(record, null));
+        int[] other = dictionary.encode(EvaluatorTest.record("level", "3"));
+        Assert.assertFalse(keyValue.matches(other, null));
+        Assert.assertFalse(comparison.matches(other, null));
+        Assert.assertTrue(comparison.matches(record, null));
+        Assert.assertEquals("each late value is tested once", tested + 2, dictionary.valuesTested.get());
+        for (int i = 0; i < 200; i++) dictionary.encode(EvaluatorTest.record("level", "1" + i));
+        int[] last = dictionary.encode(EvaluatorTest.record("level", "1199"));
+        Assert.assertTrue(comparison.matches(last, null));
+        Assert.assertFalse(comparison.matches(other, null));
+    }
+
+    @Test
+    public void prefixWildcardsUseSortedRange() {
+        Dictionary dictionary = new Dictionary();
+        for (int i = 0; i < 1000; i++) dictionary.encode(EvaluatorTest.record("id", "v" + i));
+        int[] john = dictionary.encode(EvaluatorTest.record("name", "john"));
+        int[] johnson = dictionary.encode(EvaluatorTest.record("name", "johnson"));
+        int[] jack = dictionary.encode(EvaluatorTest.record("name", "jack"));
+        long tested = dictionary.valuesTested.get();
+        Dictionary.Query prefix = dictionary.compile(EvaluatorTest.parse("name:jo*"));
+        Assert.assertEquals("prefix pattern tests no values", tested, dictionary.valuesTested.get());
+        Dictionary.Query infix = dictionary.compile(EvaluatorTest.parse("name:jo*son"));
+        Assert.assertEquals("only the prefix range is tested", tested + 2, dictionary.valuesTested.get());
+        Dictionary.Query suffix = dictionary.compile(EvaluatorTest.parse("name:*son"));
+        Assert.assertEquals("all values are tested", tested + 2 + dictionary.values(), dictionary.valuesTested.get());
+        Assert.assertTrue(prefix.matches(john, null));
+        Assert.assertTrue(prefix.matches(johnson, null));
+        Assert.assertFalse(prefix.matches(jack, null));
+        Assert.assertFalse(infix.matches(john, null));
+        Assert.assertTrue(infix.matches(johnson, null));
+        Assert.assertTrue(suffix.matches(johnson, null));
+        int[] joe = dictionary.encode(EvaluatorTest.record("name", "joe"));
+        Assert.assertTrue(prefix.matches(joe, null));
+        Assert.assertFalse(dictionary.compile(EvaluatorTest.parse("-name:jo*")).matches(joe, null));
+        Assert.assertTrue(dictionary.compile(EvaluatorTest.parse("name:j*")).matches(joe, null));
+    }
+
+    @Test
+    public void sameResultsAsEvaluator() {
+        QueryGenerator generator = new QueryGenerator(9);
+        Dictionary dictionary = new Dictionary();
+        List<Map<String, String>> records = new ArrayList<>();
+        List<int[]> encoded = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            records.add(generator.record());
+            encoded.add(dictionary.encode(records.get(i)));
+            texts.add(generator.text(6));
+        }
+        for (int q = 0; q < 100; q++) {
+            Parser.Node node = EvaluatorTest.parse(generator.query(1 + q % 4) + " name:j*");
+            Evaluator evaluator = new Evaluator(node);
+            Dictionary.Query query = dictionary.compile(node);
+            for (int r = 0; r < records.size(); r++) {
+                Assert.assertEquals(evaluator.matches(records.get(r), texts.get(r)), query.matches(encoded.get(r), texts.get(r)));
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class EvaluatorTest {
+    private static final String TEXT = "some text to match abc";
+
+    static Map<String, String> record(String... keyValues) {
+        Map<String, String> data = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            data.put(keyValues[i], keyValues[i + 1]);
+        }
+        return data;
+    }
+
+    static Parser.Node parse(String program) {
+        try (StringReader r = new StringReader(program)) {
+            return new Parser(r).statement();
+        }
+    }
+
+    void assertMatches(boolean expected, String program, Map<String, String> data) {
+        Assert.assertEquals(program, expected, new Evaluator(parse(program)).matches(data, TEXT));
+    }
+
+    @Test
+    public void text() {
+        assertMatches(true, "abc", record());
+        assertMatches(false, "xyz", record());
+        assertMatches(true, "\"text to\"", record());
+    }
+
+    @Test
+    public void keyValue() {
+        assertMatches(true, "k:v", record("k", "v"));
+        assertMatches(false, "k:v", record("k", "w"));
+        assertMatches(true, "-k:v", record("k", "w"));
+        assertMatches(true, "-k:v", record());
+    }
+
+    @Test
+    public void andOrStatement() {
+        Map<String, String> data = record("key1", "value1", "key2", "value2", "key3", "value3");
+        assertMatches(true, "key1:value1 AND key2:value2", data);
+        assertMatches(false, "key1:value1 AND key2:x", data);
+        assertMatches(true, "key1:x OR key2:value2", data);
+        assertMatches(false, "key1:value1 key2:x", data);
+        assertMatches(false, "abc \"def and foo\" AND x OR y (-key1:valuezz OR key2:value2) key3:value3", data);
+        assertMatches(true, "abc (-key1:valuezz OR key2:value2) key3:value3", data);
+    }
+
+    @Test
+    public void comparison() {
+        Map<String, String> data = record("level", "10", "name", "bob");
+        assertMatches(true, "level>9", data);
+        assertMatches(false, "level<9", data);
+        assertMatches(true, "level=10.0", data);
+        assertMatches(true, "name>alice", data);
+        assertMatches(false, "missing>1", data);
+    }
+
+    @Test
+    public void manyMultiStarWildcards() {
+        StringBuilder program = new StringBuilder();
+        List<String> patterns = new ArrayList<>();
+        for (char c = 'a'; c < 'q'; c++) {
+            String pattern = "*" + c + "x*" + c + "y*" + c + "z*";
+            patterns.add(pattern);
+            if (program.length() > 0) program.append(" OR ");
+            program.append("name:").append(pattern);
+        }
+        try {
+            new WildcardAutomaton(patterns);
+            Assert.fail("patterns should exceed the state limit of a single automaton");
+        } catch (IllegalArgumentException expected) {
+        }
+        Evaluator evaluator = new Evaluator(parse(program.toString()));
+        Assert.assertTrue(evaluator.matches(record("name", "-px-py-pz-"), null));
+        Assert.assertTrue(evaluator.matches(record("name", "ax ay az"), null));
+        Assert.assertFalse(evaluator.matches(record("name", "px py qz"), null));
+        Assert.assertFalse(evaluator.matches(record("name", "qxqyqz"), null));
+    }
+
+    @Test
+    public void literalStar() {
+        Evaluator unquoted = new Evaluator(parse("2*3"));
+        Evaluator quoted = new Evaluator(parse("\"2*3\""));
+        Assert.assertFalse(unquoted.matches(record(), "x=2*3"));
+        Assert.assertTrue(quoted.matches(record(), "x=2*3"));
+        Assert.assertTrue(unquoted.matches(record(), "x = 2+3"));
+        Assert.assertFalse(quoted.matches(record(), "x = 2+3"));
+    }
+
+    @Test
+    public void wildcard() {
+        Map<String, String> data = record("name", "johnson");
+        assertMatches(true, "name:jo*", data);
+        assertMatches(true, "name:*son", data);
+        assertMatches(true, "name:j*n*n", data);
+        assertMatches(false, "name:jo*x", data);
+        assertMatches(true, "-name:*x", data);
+        assertMatches(true, "-other:*", data);
+        assertMatches(true, "name:x* OR name:*hn*", data);
+        assertMatches(true, "ma*", data);
+        assertMatches(false, "*at", data);
+        assertMatches(false, "name:\"jo*\"", data);
+    }
+
+    @Test
+    public void emptyQueryMatchesAll() {
+        Assert.assertTrue(new Evaluator(null).matches(record(), null));
+    }
+
+    @Test
+    public void maxLeafEvaluations() {
+        Parser.Node node = parse("a b c");
+        Assert.assertTrue(new Evaluator(node, ParserLimits.UNLIMITED.withMaxLeafEvaluations(3)).matches(record(), "a b c"));
+        try {
+            new Evaluator(node, ParserLimits.UNLIMITED.withMaxLeafEvaluations(2)).matches(record(), "a b c");
+            Assert.fail();
+        } catch (ParserLimits.LimitExceededException e) {
+            Assert.assertEquals("Evaluation exceeds limit of 2 leaf evaluations", e.getMessage());
+        }
+    }
+
+    @Test
+    public void deadline() {
+        Parser.Node node = parse(String.join(" ", Collections.nCopies(5_000, "abc")));
+        try {
+            new Evaluator(node, ParserLimits.UNLIMITED.withMaxEvaluationNanos(0)).matches(record(), TEXT);
+            Assert.fail();
+        } catch (ParserLimits.LimitExceededException e) {
+            Assert.assertEquals("Deadline exceeded", e.getCategory());
+        }
+    }
+
+    @Test
+    public void deadlineOfFewLeaves() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1_000_000; i++) text.append('x');
+        text.append(" abc def");
+        try {
+            new Evaluator(parse("abc def"), ParserLimits.UNLIMITED.withMaxEvaluationNanos(0)).matches(record(), text.toString());
+            Assert.fail();
+        } catch (ParserLimits.LimitExceededException e) {
+            Assert.assertEquals("Deadline exceeded", e.getCategory());
+        }
+    }
+
+    @Test
+    public void membership() {
+        String in = "id:1 OR id:2 OR id:3 OR id:x OR k:v";
+        assertMatches(true, in, record("id", "3"));
+        assertMatches(true, in, record("id", "x"));
+        assertMatches(true, in, record("k", "v"));
+        assertMatches(false, in, record("id", "03"));
+        assertMatches(false, in, record());
+        String notIn = "-id:1 -id:2 AND -id:3 -id:4 abc";
+        assertMatches(false, notIn, record("id", "4"));
+        assertMatches(true, notIn, record("id", "5"));
+        assertMatches(true, notIn, record());
+        Evaluator.Condition condition = Evaluator.compile(parse(in));
+        Assert.assertTrue(((Evaluator.AnyCondition) condition).conditions[0] instanceof Evaluator.MembershipCondition);
+        Assert.assertEquals(2, ((Evaluator.AnyCondition) condition).conditions.length);
+    }
+
+    @Test
+    public void largeMembership() {
+        StringBuilder query = new StringBuilder("id:0");
+        for (int i = 1; i < 50_000; i++) query.append(" OR id:").append(i * 2);
+        Evaluator evaluator = new Evaluator(parse(query.toString()), ParserLimits.UNLIMITED.withMaxLeafEvaluations(1));
+        Assert.assertTrue(evaluator.matches(record("id", "99998"), null));
+        Assert.assertFalse(evaluator.matches(record("id", "99999"), null));
+        Assert.assertFalse(evaluator.matches(record("id", "100000"), null));
+    }
+}
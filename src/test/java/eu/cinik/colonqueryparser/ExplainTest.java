@@ -0,0 +1,66 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class ExplainTest {
+
+    @Test
+    public void countsCallsPassesAndSkips() {
+        Explain explain = new Explain(EvaluatorTest.parse("status:open AND (timeout OR level>5)"));
+        List<Map<String, String>> records = Arrays.asList(
+                EvaluatorTest.record("status", "open", "level", "7"),
+                EvaluatorTest.record("status", "open", "level", "1"),
+                EvaluatorTest.record("status", "closed", "level", "9"),
+                EvaluatorTest.record("status", "open", "level", "6"));
+        List<String> texts = Arrays.asList("timeout", "ok", "timeout", "ok");
+        explain.analyze(records, texts);
+        Assert.assertEquals(4, explain.getRecords());
+        Assert.assertEquals(2, explain.getMatched());
+
+        Explain.NodeStats and = explain.getRoot();
+        Assert.assertEquals(4, and.getCalls());
+        Assert.assertEquals(2, and.getPasses());
+        Explain.NodeStats status = and.getChildren().get(0);
+        Assert.assertEquals(3, status.getPasses());
+        Explain.NodeStats or = and.getChildren().get(1);
+        Assert.assertEquals(3, or.getCalls());
+        Explain.NodeStats timeout = or.getChildren().get(0);
+        Explain.NodeStats level = or.getChildren().get(1);
+        Assert.assertEquals(1, timeout.getPasses());
+        Assert.assertEquals(2, level.getCalls());
+        Assert.assertEquals(1, level.getPasses());
+
+        String tree = explain.toTree();
+        Assert.assertTrue(tree, tree.startsWith("records=4 matched=2"));
+        Assert.assertTrue(tree, tree.contains("\n    level>5  calls=2 pass=50.0% skipped=1 "));
+        String json = explain.toJson();
+        Assert.assertTrue(json, json.startsWith("{\"records\":4,\"matched\":2,\"root\":{\"node\":\"AND\",\"calls\":4,\"passes\":2,\"skipped\":0,"));
+        Assert.assertTrue(json, json.contains("{\"node\":\"level>5\",\"calls\":2,\"passes\":1,\"skipped\":1,"));
+    }
+
+    @Test
+    public void sameResultsAsEvaluator() {
+        QueryGenerator generator = new QueryGenerator(44);
+        List<Map<String, String>> records = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            records.add(generator.record());
+            texts.add(generator.text(5));
+        }
+        for (int q = 0; q < 50; q++) {
+            Parser.Node node = EvaluatorTest.parse(generator.userQuery());
+            Evaluator evaluator = new Evaluator(node);
+            Explain explain = new Explain(node);
+            for (int i = 0; i < records.size(); i++) {
+                Assert.assertEquals(evaluator.matches(records.get(i), texts.get(i)), explain.matches(records.get(i), texts.get(i)));
+            }
+        }
+        Assert.assertEquals("records=0 matched=0" + System.lineSeparator(), new Explain(null).toTree());
+    }
+}
@@ -0,0 +1,88 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class FacetCounterTest {
+
+    @Test
+    public void countsMatchingRecords() {
+        Dictionary dictionary = new Dictionary();
+        List<int[]> records = new ArrayList<>();
+        records.add(dictionary.encode(EvaluatorTest.record("status", "open", "region", "eu", "level", "5")));
+        records.add(dictionary.encode(EvaluatorTest.record("status", "open", "region", "us", "level", "1")));
+        records.add(dictionary.encode(EvaluatorTest.record("status", "closed", "region", "eu", "level", "7")));
+        records.add(dictionary.encode(EvaluatorTest.record("status", "open", "level", "9")));
+        FacetCounter counter = new FacetCounter(dictionary, Arrays.asList("status", "region"), 1);
+        FacetCounter.Result result = counter.count(EvaluatorTest.parse("level>3"), records, null);
+        Assert.assertEquals(3, result.getMatched());
+        Assert.assertEquals("{0, 2, 3}", result.getMatches().toString());
+        Assert.assertEquals("{open=2, closed=1}", result.counts("status").toString());
+        Assert.assertEquals("{eu=2}", result.counts("region").toString());
+        Assert.assertEquals(2, result.count("region", "eu"));
+        Assert.assertEquals(0, result.count("region", "us"));
+        Assert.assertEquals(0, result.count("region", "unknown"));
+        Assert.assertEquals(0, counter.count(EvaluatorTest.parse("x"), Collections.emptyList(), null).getMatched());
+    }
+
+    @Test
+    public void highCardinalityKey() {
+        Dictionary dictionary = new Dictionary();
+        List<int[]> records = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            records.add(dictionary.encode(EvaluatorTest.record("trace", "t" + i, "status", i % 3 == 0 ? "open" : "closed")));
+        }
+        FacetCounter.Result result = new FacetCounter(dictionary, Arrays.asList("status", "trace"), 64)
+                .count(EvaluatorTest.parse("status:open"), records, null);
+        Assert.assertEquals(6667, result.getMatched());
+        Assert.assertEquals(Collections.singletonMap("open", 6667), result.counts("status"));
+        Assert.assertEquals(6667, result.counts("trace").size());
+        Assert.assertEquals(1, result.count("trace", "t3"));
+        Assert.assertEquals(0, result.count("trace", "t4"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notFacetKey() {
+        Dictionary dictionary = new Dictionary();
+        new FacetCounter(dictionary, Collections.singletonList("status"))
+                .count(null, Collections.emptyList(), null).counts("region");
+    }
+
+    @Test
+    public void matchesTwoPasses() {
+        QueryGenerator generator = new QueryGenerator(3);
+        Dictionary dictionary = new Dictionary();
+        List<Map<String, String>> data = new ArrayList<>();
+        List<int[]> records = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            Map<String, String> record = generator.record();
+            data.add(record);
+            records.add(dictionary.encode(record));
+            texts.add(generator.text(4));
+        }
+        List<String> facets = new ArrayList<>(data.get(0).keySet());
+        FacetCounter counter = new FacetCounter(dictionary, facets, 333);
+        for (int q = 0; q < 30; q++) {
+            String query = generator.userQuery();
+            Evaluator evaluator = new Evaluator(EvaluatorTest.parse(query));
+            BitSet matches = new BitSet();
+            Map<String, Map<String, Integer>> counts = new HashMap<>();
+            for (int i = 0; i < data.size(); i++) {
+                if (!evaluator.matches(data.get(i), texts.get(i))) continue;
+                matches.set(i);
+                for (String facet : facets) {
+                    String value = data.get(i).get(facet);
+                    if (value != null) counts.computeIfAbsent(facet, k -> new HashMap<>()).merge(value, 1, Integer::sum);
+                }
+            }
+            FacetCounter.Result result = counter.count(EvaluatorTest.parse(query), records, texts);
+            Assert.assertEquals(query, matches, result.getMatches());
+            for (String facet : facets) {
+                Assert.assertEquals(query, counts.getOrDefault(facet, Collections.emptyMap()), result.counts(facet));
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FilterStageTest {
+
+    /**
+     * Publishes records level=0..count-1 honouring demand, tracks the total requested amount
+     */
+    static class RangePublisher implements Reactive.Publisher<Map<String, String>> {
+        final int count;
+        final AtomicLong requested = new AtomicLong();
+        volatile boolean cancelled;
+        int next;
+
+        RangePublisher(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public void subscribe(Reactive.Subscriber<? super Map<String, String>> subscriber) {
+            subscriber.onSubscribe(new Reactive.Subscription() {
+                final AtomicLong demand = new AtomicLong();
+
+                @Override
+                public void request(long n) {
+                    requested.addAndGet(n);
+                    if (demand.getAndAdd(n) != 0) return;
+                    long d = n;
+                    while (true) {
+                        for (; d > 0 && next < count && !cancelled; d--) {
+                            subscriber.onNext(EvaluatorTest.record("level", Integer.toString(next++)));
+                        }
+                        if (next == count && !cancelled) {
+                            cancelled = true;
+                            subscriber.onComplete();
+                            return;
+                        }
+                        d = demand.addAndGet(-n);
+                        if (d == 0) return;
+                        n = d;
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+
+    static class Collector implements Reactive.Subscriber<Map<String, String>> {
+        final List<Map<String, String>> items = new CopyOnWriteArrayList<>();
+        final CountDownLatch terminated = new CountDownLatch(1);
+        volatile Throwable error;
+        Reactive.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Reactive.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Map<String, String> item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            terminated.countDown();
+        }
+    }
+
+    private static FilterStage<Map<String, String>> stage(String query, int prefetch, Executor executor) {
+        return new FilterStage<>(new Evaluator(EvaluatorTest.parse(query)), r -> r, r -> null, prefetch, executor);
+    }
+
+    @Test
+    public void filters() throws InterruptedException {
+        RangePublisher publisher = new RangePublisher(1000);
+        FilterStage<Map<String, String>> stage = stage("level<10", 16, null);
+        Collector collector = new Collector();
+        stage.subscribe(collector);
+        publisher.subscribe(stage);
+        collector.subscription.request(Long.MAX_VALUE);
+        Assert.assertTrue(collector.terminated.await(1, TimeUnit.SECONDS));
+        Assert.assertNull(collector.error);
+        Assert.assertEquals(10, collector.items.size());
+        Assert.assertEquals("9", collector.items.get(9).get("level"));
+    }
+
+    @Test
+    public void slowSubscriberThrottlesProducer() {
+        RangePublisher publisher = new RangePublisher(1000);
+        FilterStage<Map<String, String>> stage = stage("-level:x", 16, null);
+        Collector collector = new Collector();
+        stage.subscribe(collector);
+        publisher.subscribe(stage);
+        Assert.assertEquals(16, publisher.requested.get());
+        collector.subscription.request(3);
+        Assert.assertEquals(3, collector.items.size());
+        Assert.assertEquals(16, publisher.requested.get());
+        collector.subscription.request(10);
+        Assert.assertEquals(13, collector.items.size());
+        Assert.assertEquals(16 + 12, publisher.requested.get());
+        collector.subscription.cancel();
+        Assert.assertTrue(publisher.cancelled);
+    }
+
+    @Test
+    public void boundedExecutor() throws InterruptedException {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1));
+        try {
+            RangePublisher publisher = new RangePublisher(100_000);
+            FilterStage<Map<String, String>> stage = stage("level>99000", 64, executor);
+            Collector collector = new Collector();
+            stage.subscribe(collector);
+            publisher.subscribe(stage);
+            collector.subscription.request(Long.MAX_VALUE);
+            Assert.assertTrue(collector.terminated.await(10, TimeUnit.SECONDS));
+            Assert.assertNull(collector.error);
+            Assert.assertEquals(999, collector.items.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void evaluationErrorCancelsUpstream() throws InterruptedException {
+        RangePublisher publisher = new RangePublisher(1000);
+        FilterStage<Map<String, String>> stage = new FilterStage<>(
+                new Evaluator(EvaluatorTest.parse("level:1 level:2"), ParserLimits.UNLIMITED.withMaxLeafEvaluations(1)),
+                r -> r, r -> null, 16);
+        Collector collector = new Collector();
+        stage.subscribe(collector);
+        publisher.subscribe(stage);
+        collector.subscription.request(1);
+        Assert.assertTrue(collector.terminated.await(1, TimeUnit.SECONDS));
+        Assert.assertTrue(collector.error instanceof ParserLimits.LimitExceededException);
+        Assert.assertTrue(publisher.cancelled);
+    }
+
+    @Test
+    public void nonPositiveRequest() {
+        RangePublisher publisher = new RangePublisher(10);
+        FilterStage<Map<String, String>> stage = stage("level>0", 4, null);
+        Collector collector = new Collector();
+        stage.subscribe(collector);
+        publisher.subscribe(stage);
+        collector.subscription.request(0);
+        Assert.assertTrue(collector.error instanceof IllegalArgumentException);
+        Collector second = new Collector();
+        stage.subscribe(second);
+        Assert.assertTrue(second.error instanceof IllegalStateException);
+    }
+}
@@ -0,0 +1,101 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+public class JsonMatcherTest {
+
+    private static byte[] utf8(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String quote(String s) {
+        StringBuilder b = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') b.append('\\').append(c);
+            else if (c == ' ') b.append("\\u0020");
+            else b.append(c);
+        }
+        return b.append('"').toString();
+    }
+
+    private static boolean matches(String query, String json) {
+        return new JsonMatcher(EvaluatorTest.parse(query), "message").matches(utf8(json));
+    }
+
+    @Test
+    public void fields() {
+        Map<String, String> fields = JsonMatcher.fields(utf8(
+                "{ \"s\" : \"a\\\"b\\u00e9\\n\", \"n\":-1.5e3, \"t\":true, \"z\":null, \"o\":{\"x\":[1,{\"y\":\"}\"}]},"
+                        + "\"a\":[], \"ž\":\"č\", \"s\":\"second\"}"));
+        Assert.assertEquals("a\"bé\n", fields.get("s"));
+        Assert.assertEquals("-1.5e3", fields.get("n"));
+        Assert.assertEquals("true", fields.get("t"));
+        Assert.assertEquals("č", fields.get("ž"));
+        Assert.assertFalse(fields.containsKey("z"));
+        Assert.assertFalse(fields.containsKey("o"));
+        Assert.assertFalse(fields.containsKey("a"));
+        Assert.assertEquals(4, fields.size());
+        Assert.assertTrue(JsonMatcher.fields(utf8(" {} ")).isEmpty());
+    }
+
+    @Test
+    public void matchesLikeEvaluator() {
+        QueryGenerator generator = new QueryGenerator(11);
+        for (int i = 0; i < 300; i++) {
+            Map<String, String> record = generator.record();
+            String text = generator.text(6);
+            StringBuilder json = new StringBuilder("{\"nested\":{\"key1\":\"x\"},");
+            for (Map.Entry<String, String> e : record.entrySet()) {
+                json.append(quote(e.getKey())).append(':').append(quote(e.getValue())).append(',');
+            }
+            json.append("\"message\":").append(quote(text)).append('}');
+            String query = generator.userQuery();
+            Parser.Node node = EvaluatorTest.parse(query);
+            Assert.assertEquals(query + " " + json, new Evaluator(node).matches(record, text),
+                    new JsonMatcher(node, "message").matches(utf8(json.toString())));
+        }
+    }
+
+    @Test
+    public void terms() {
+        String json = "{\"status\":\"open\",\"level\":7,\"host\":\"db-1\",\"message\":\"disk failed\",\"gone\":null}";
+        Assert.assertTrue(matches("status:open level>3", json));
+        Assert.assertFalse(matches("status:open level>7", json));
+        Assert.assertTrue(matches("host:db* fail*", json));
+        Assert.assertTrue(matches("\"disk fail\" -gone:null -owner:bob", json));
+        Assert.assertFalse(matches("gone<z", json));
+        Assert.assertFalse(new JsonMatcher(EvaluatorTest.parse("disk")).matches(utf8(json)));
+        Assert.assertTrue(new JsonMatcher(null).matches(utf8(json)));
+    }
+
+    @Test
+    public void stopsWhenDecided() {
+        // the rest of the record is malformed, it must not be read
+        String json = "{\"status\":\"open\",\"level\":7, broken";
+        Assert.assertTrue(matches("status:open OR level>3", json));
+        Assert.assertFalse(matches("status:closed level>3", json));
+        try {
+            matches("status:open owner:bob", json);
+            Assert.fail();
+        } catch (JsonMatcher.JsonException e) {
+            Assert.assertEquals("Expected '\"'", e.getCategory());
+        }
+    }
+
+    @Test
+    public void offset() {
+        byte[] buffer = utf8("xx{\"a\":\"1\"}{\"a\":\"2\"}");
+        JsonMatcher matcher = new JsonMatcher(EvaluatorTest.parse("a:2"));
+        Assert.assertFalse(matcher.matches(buffer, 2, 9));
+        Assert.assertTrue(matcher.matches(buffer, 11, 9));
+    }
+
+    @Test(expected = JsonMatcher.JsonException.class)
+    public void notAnObject() {
+        matches("a:1", "[1]");
+    }
+}
@@ -124,4 +124,22 @@ public class LexerTest {
         }
         Assert.fail();
     }
+
+    @Test
+    public void lexerWildcard() throws IOException {
+        Lexer l = new Lexer();
+        try (StringReader r = new StringReader("jo*")) {
+            Token t = l.next(r);
+            Assert.assertEquals(new TextToken(TokenType.WILDCARD, "jo*"), t);
+        }
+    }
+
+    @Test
+    public void lexerQuotedWildcardIsText() throws IOException {
+        Lexer l = new Lexer();
+        try (StringReader r = new StringReader("\"jo*\"")) {
+            Token t = l.next(r);
+            Assert.assertEquals(new TextToken(TokenType.TEXTTOKEN, "jo*"), t);
+        }
+    }
 }
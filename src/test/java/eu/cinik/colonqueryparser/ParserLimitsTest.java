@@ -0,0 +1,94 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Collections;
+
+public class ParserLimitsTest {
+
+    void assertLimitExceeded(String expectedMessage, ParserLimits limits, String program) {
+        try (StringReader r = new StringReader(program)) {
+            try {
+                new Parser(r, limits).statement();
+            } catch (ParserLimits.LimitExceededException e) {
+                Assert.assertEquals(expectedMessage, e.getMessage());
+                return;
+            }
+        }
+        Assert.fail("Expected exception");
+    }
+
+    void assertParsed(ParserLimits limits, String program) {
+        try (StringReader r = new StringReader(program)) {
+            Assert.assertNotNull(new Parser(r, limits).statement());
+        }
+    }
+
+    @Test
+    public void maxChars() {
+        ParserLimits limits = ParserLimits.UNLIMITED.withMaxChars(5);
+        assertParsed(limits, "k1:v1");
+        assertLimitExceeded("Query exceeds limit of 5 characters", limits, "k1:v12");
+    }
+
+    @Test
+    public void maxCharsStopsReading() {
+        final int[] read = {0};
+        Reader endless = new Reader() {
+            @Override
+            public int read(char[] cbuf, int off, int len) {
+                read[0]++;
+                cbuf[off] = 'a';
+                return 1;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        try {
+            new Parser(endless, ParserLimits.UNLIMITED.withMaxChars(100)).statement();
+            Assert.fail();
+        } catch (ParserLimits.LimitExceededException e) {
+            Assert.assertEquals("Too many characters", e.getCategory());
+        }
+        Assert.assertEquals(101, read[0]);
+    }
+
+    @Test
+    public void maxTokens() {
+        ParserLimits limits = ParserLimits.UNLIMITED.withMaxTokens(4);
+        assertParsed(limits, "k:v");
+        assertLimitExceeded("Query exceeds limit of 4 tokens", limits, "k:v t");
+    }
+
+    @Test
+    public void maxDepth() {
+        ParserLimits limits = ParserLimits.UNLIMITED.withMaxDepth(2);
+        assertParsed(limits, "((t1) (t2))");
+        assertLimitExceeded("Query exceeds limit of 2 nested brackets", limits, "(((t1)))");
+    }
+
+    @Test
+    public void maxDepthPreventsStackOverflow() {
+        String program = String.join("", Collections.nCopies(100_000, "("));
+        assertLimitExceeded("Query exceeds limit of 64 nested brackets", ParserLimits.UNLIMITED.withMaxDepth(64), program);
+    }
+
+    @Test
+    public void maxNodes() {
+        ParserLimits limits = ParserLimits.UNLIMITED.withMaxNodes(3);
+        assertParsed(limits, "t1 AND t2");
+        assertLimitExceeded("Query exceeds limit of 3 nodes", limits, "t1 t2 t3");
+    }
+
+    @Test
+    public void maxTermsPerKey() {
+        ParserLimits limits = ParserLimits.UNLIMITED.withMaxTermsPerKey(2);
+        assertParsed(limits, "id:1 OR id:2 other:3");
+        assertLimitExceeded("Query exceeds limit of 2 terms for key 'id'", limits, "id:1 OR id:2 -id:3");
+    }
+}
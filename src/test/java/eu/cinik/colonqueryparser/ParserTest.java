@@ -4,7 +4,11 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.IntStream;
 
 public class ParserTest {
@@ -97,6 +101,28 @@ public class ParserTest {
         assertProgram("t1 AND t2 OR t3", "OR", "AND", "t1", "t2", "t3");
     }
 
+    @Test
+    public void orChain() {
+        assertProgram("t1 OR t2 OR t3", "OR", "t1", "OR", "t2", "t3");
+        assertProgram("t1 AND t2 AND t3 OR t4", "OR", "AND", "t1", "AND", "t2", "t3", "t4");
+        assertProgram("t1 OR t2 OR t3 OR t4", "OR", "OR", "t1", "t2", "OR", "t3", "t4");
+        assertProgram("t1 OR t2 OR", "OR", "t1", "t2");
+    }
+
+    @Test
+    public void longChainIsBalanced() {
+        StringBuilder program = new StringBuilder("id:0");
+        for (int i = 1; i < 50_000; i++) program.append(" OR id:").append(i);
+        Parser.Node a = new Parser(new StringReader(program.toString()), ParserLimits.UNLIMITED.withMaxDepth(1)).statement();
+        Parser.Node b = new Parser(new StringReader(program.toString())).statement();
+        Assert.assertTrue(Parser.depthAndNodes(a)[0] <= 17);
+        Assert.assertEquals(a, b);
+        Assert.assertEquals(a.hashCode(), b.hashCode());
+        Assert.assertEquals(50_000 * 4 - 1, Parser.toPolishNotation(a).size());
+        Assert.assertEquals(b, events(program.toString()).result);
+        Assert.assertNotNull(new Explain(a).getRoot());
+    }
+
     @Test
     public void testBracketed1() {
         assertProgram("(t1)", "t1");
@@ -164,4 +190,232 @@ public class ParserTest {
     }
 
 
+    @Test
+    public void wildcard1() {
+        assertProgram("name:jo*", ":", "name", "jo*");
+    }
+
+    @Test
+    public void wildcard2() {
+        assertProgram("-name:*son x*", ",", "-", ":", "name", "*son", "x*");
+    }
+
+    @Test
+    public void wildcardNode() {
+        try (StringReader r = new StringReader("name:jo* \"jo*\"")) {
+            Parser.Statement statement = (Parser.Statement) new Parser(r).statement();
+            Assert.assertTrue(statement.getNodes().get(0) instanceof Parser.Wildcard);
+            Assert.assertTrue(statement.getNodes().get(1) instanceof Parser.Text);
+        }
+    }
+
+    /**
+     * Rebuilds nodes tree from parser events
+     */
+    static class TreeBuilder implements Parser.EventHandler {
+        final Deque<List<Parser.Node>> open = new ArrayDeque<>();
+        final Deque<Object> kinds = new ArrayDeque<>();
+        final List<String> events = new ArrayList<>();
+        Parser.Node result;
+        boolean completed;
+
+        TreeBuilder() {
+            open.push(new ArrayList<>());
+        }
+
+        private void enter(Object kind) {
+            List<Parser.Node> operands = new ArrayList<>();
+            // operators are reported after their first operand
+            if (!"statement".equals(kind) && completed) operands.add(open.peek().remove(open.peek().size() - 1));
+            open.push(operands);
+            kinds.push(kind);
+            completed = false;
+        }
+
+        private void add(Parser.Node node) {
+            open.peek().add(node);
+            completed = true;
+        }
+
+        private void exit() {
+            List<Parser.Node> operands = open.pop();
+            Object kind = kinds.pop();
+            Parser.Node node;
+            if (operands.size() == 1) node = operands.get(0);
+            else if ("AND".equals(kind) || "OR".equals(kind))
+                node = Parser.chain("AND".equals(kind), operands, 0, operands.size());
+            else if (kind instanceof Parser.BinaryComparision.Operator)
+                node = new Parser.BinaryComparision((Parser.BinaryComparision.Operator) kind, operands.get(0), operands.get(1));
+            else node = operands.isEmpty() ? null : new Parser.Statement(operands);
+            if (open.size() == 1) result = node;
+            else if (node != null) add(node);
+            else completed = false;
+        }
+
+        @Override
+        public void startStatement() {
+            events.add("{");
+            enter("statement");
+        }
+
+        @Override
+        public void endStatement() {
+            events.add("}");
+            exit();
+        }
+
+        @Override
+        public void enterAnd() {
+            events.add("AND(");
+            enter("AND");
+        }
+
+        @Override
+        public void exitAnd() {
+            events.add(")");
+            exit();
+        }
+
+        @Override
+        public void enterOr() {
+            events.add("OR(");
+            enter("OR");
+        }
+
+        @Override
+        public void exitOr() {
+            events.add(")");
+            exit();
+        }
+
+        @Override
+        public void enterComparison(Parser.BinaryComparision.Operator operator) {
+            events.add(operator.getLabel() + "(");
+            enter(operator);
+        }
+
+        @Override
+        public void exitComparison(Parser.BinaryComparision.Operator operator) {
+            events.add(")");
+            exit();
+        }
+
+        @Override
+        public void comparison(CharSequence key, Parser.BinaryComparision.Operator operator, CharSequence value) {
+            events.add(key + operator.getLabel() + value);
+            add(new Parser.BinaryComparision(operator, new Parser.Text(key.toString()), new Parser.Text(value.toString())));
+        }
+
+        @Override
+        public void keyValue(CharSequence key, CharSequence value, boolean neg) {
+            events.add((neg ? "-" : "") + key + ":" + value);
+            add(new Parser.KeyValue(neg, key.toString(), value.toString()));
+        }
+
+        @Override
+        public void wildcard(CharSequence key, CharSequence pattern, boolean neg) {
+            events.add((neg ? "-" : "") + (key == null ? "" : key + ":") + pattern);
+            add(new Parser.Wildcard(neg, key == null ? null : key.toString(), pattern.toString()));
+        }
+
+        @Override
+        public void text(CharSequence text) {
+            events.add(text.toString());
+            add(new Parser.Text(text.toString()));
+        }
+    }
+
+    private TreeBuilder events(String program) {
+        TreeBuilder builder = new TreeBuilder();
+        new Parser(new StringReader(program)).statement(builder);
+        return builder;
+    }
+
+    @Test
+    public void events() {
+        Assert.assertEquals("[{, a:1, AND(, {, b, OR(, c, ), }, ), d>3, -e:f*, }]",
+                events("a:1 AND (b OR c) d>3 -e:f*").events.toString());
+        Assert.assertEquals("[{, x, OR(, ), }]", events("x OR").events.toString());
+        Assert.assertEquals("[{, a, OR(, b, c, ), }]", events("a OR b OR c").events.toString());
+        Assert.assertEquals("[{, a, AND(, b, ), OR(, c, ), }]", events("a AND b OR c").events.toString());
+        Assert.assertEquals("[{, x, <(, y=z, ), {, a, }, >(, b, ), }]", events("x<y=z (a)>b").events.toString());
+        Assert.assertEquals("[{, }]", events("").events.toString());
+    }
+
+    @Test
+    public void eventsMatchTree() {
+        QueryGenerator generator = new QueryGenerator(40);
+        List<Map<String, String>> records = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            records.add(generator.record());
+            texts.add(generator.text(5));
+        }
+        for (int q = 0; q < 200; q++) {
+            String query = generator.userQuery();
+            Evaluator tree = new Evaluator(EvaluatorTest.parse(query));
+            Evaluator events = new Evaluator(events(query).result);
+            for (int i = 0; i < records.size(); i++) {
+                Assert.assertEquals(query, tree.matches(records.get(i), texts.get(i)), events.matches(records.get(i), texts.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void eventsStreamBeforeParsingFinishes() {
+        StringBuilder query = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) query.append("key").append(i % 10).append(":value").append(i).append(' ');
+        int[] read = new int[1];
+        int[] readAtFirstEvent = {-1};
+        int[] count = new int[1];
+        StringReader reader = new StringReader(query.toString()) {
+            @Override
+            public int read() throws java.io.IOException {
+                read[0]++;
+                return super.read();
+            }
+        };
+        new Parser(reader).statement(new Parser.EventHandler() {
+            @Override
+            public void keyValue(CharSequence key, CharSequence value, boolean neg) {
+                if (count[0]++ == 0) readAtFirstEvent[0] = read[0];
+            }
+        });
+        Assert.assertEquals(100_000, count[0]);
+        Assert.assertTrue(readAtFirstEvent[0] < 100);
+    }
+
+    @Test
+    public void eventsStreamOperandsOfOperators() {
+        StringBuilder query = new StringBuilder("(");
+        for (int i = 0; i < 100_000; i++) query.append("value").append(i).append(' ');
+        query.append(") OR x");
+        int[] read = new int[1];
+        int[] readAtFirstEvent = {-1};
+        int[] count = new int[1];
+        StringReader reader = new StringReader(query.toString()) {
+            @Override
+            public int read() throws java.io.IOException {
+                read[0]++;
+                return super.read();
+            }
+        };
+        TreeBuilder builder = new TreeBuilder() {
+            @Override
+            public void text(CharSequence text) {
+                if (count[0]++ == 0) readAtFirstEvent[0] = read[0];
+                super.text(text);
+            }
+        };
+        new Parser(reader).statement(builder);
+        Assert.assertEquals(100_001, count[0]);
+        Assert.assertTrue(readAtFirstEvent[0] < 100);
+        Assert.assertTrue(builder.result instanceof Parser.OR);
+    }
+
+    @Test(expected = ParserLimits.LimitExceededException.class)
+    public void eventsEnforceLimits() {
+        new Parser(new StringReader("a b c d"), ParserLimits.UNLIMITED.withMaxNodes(3)).statement(new Parser.EventHandler() {
+        });
+    }
 }
@@ -0,0 +1,122 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.invoke.MethodHandles;
+
+public class PojoAccessorTest {
+
+    public static class Address {
+        public String city;
+        public int zip;
+
+        public Address(String city, int zip) {
+            this.city = city;
+            this.zip = zip;
+        }
+    }
+
+    public static class Event {
+        private final String status;
+        private final long level;
+        private final double load;
+        private final boolean urgent;
+        private final Address address;
+
+        public Event(String status, long level, double load, boolean urgent, Address address) {
+            this.status = status;
+            this.level = level;
+            this.load = load;
+            this.urgent = urgent;
+            this.address = address;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public long level() {
+            return level;
+        }
+
+        public double getLoad() {
+            return load;
+        }
+
+        public boolean isUrgent() {
+            return urgent;
+        }
+
+        public Address getAddress() {
+            return address;
+        }
+    }
+
+    public static class Sample {
+        public float ratio = 0.25f;
+        public char grade = 'B';
+        public char sign = '\u00e9';
+        public boolean valid = true;
+    }
+
+    private static class Hidden {
+        public String getName() {
+            return "hidden";
+        }
+    }
+
+    private final PojoAccessor<Event> accessor = new PojoAccessor<>(Event.class);
+    private final Event event = new Event("open", 7, 0.5, true, new Address("Brno", 60200));
+
+    @Test
+    public void resolvesMembers() {
+        Assert.assertEquals(RecordAccessor.Field.Type.STRING, accessor.field("status").type());
+        Assert.assertEquals("open", accessor.field("status").getString(event));
+        Assert.assertEquals(RecordAccessor.Field.Type.LONG, accessor.field("level").type());
+        Assert.assertEquals(7, accessor.field("level").getLong(event));
+        Assert.assertEquals(RecordAccessor.Field.Type.DOUBLE, accessor.field("load").type());
+        Assert.assertEquals(0.5, accessor.field("load").getDouble(event), 0);
+        Assert.assertEquals("true", accessor.field("urgent").getString(event));
+        Assert.assertEquals("7", accessor.field("level").getString(event));
+    }
+
+    @Test
+    public void nestedPath() {
+        Assert.assertEquals("Brno", accessor.field("address.city").getString(event));
+        RecordAccessor.Field<Event> zip = accessor.field("address.zip");
+        Assert.assertEquals(RecordAccessor.Field.Type.LONG, zip.type());
+        Assert.assertTrue(zip.isPresent(event));
+        Assert.assertEquals(60200, zip.getLong(event));
+        Event homeless = new Event("open", 1, 0, false, null);
+        Assert.assertNull(accessor.field("address.city").getString(homeless));
+        Assert.assertFalse(zip.isPresent(homeless));
+    }
+
+    @Test
+    public void primitiveTypes() {
+        PojoAccessor<Sample> samples = new PojoAccessor<>(Sample.class);
+        Sample sample = new Sample();
+        sample.ratio = 0.1f;
+        RecordAccessor.Field<Sample> ratio = samples.field("ratio");
+        Assert.assertEquals(RecordAccessor.Field.Type.DOUBLE, ratio.type());
+        Assert.assertEquals(0.1f, ratio.getDouble(sample), 0);
+        Assert.assertEquals("0.1", ratio.getString(sample));
+        Assert.assertEquals(RecordAccessor.Field.Type.STRING, samples.field("grade").type());
+        Assert.assertEquals("B", samples.field("grade").getString(sample));
+        Assert.assertEquals("\u00e9", samples.field("sign").getString(sample));
+        Assert.assertEquals("true", samples.field("valid").getString(sample));
+        Assert.assertTrue(new RecordEvaluator<>(EvaluatorTest.parse("ratio>0.05 grade:B valid:true ratio:0.*"), samples)
+                .matches(sample, null));
+    }
+
+    @Test
+    public void unknownKeys() {
+        Assert.assertNull(accessor.field("missing"));
+        Assert.assertNull(accessor.field("address.street"));
+        Assert.assertNull(accessor.field("address."));
+        Assert.assertNull(new PojoAccessor<>(Hidden.class).field("name"));
+        Assert.assertEquals("hidden", new PojoAccessor<>(Hidden.class, MethodHandles.lookup()).field("name")
+                .getString(new Hidden()));
+    }
+}
@@ -0,0 +1,68 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class QueryArenaTest {
+
+    private static int parse(QueryArena arena, String query) {
+        return new Parser(new StringReader(query)).statement(arena);
+    }
+
+    @Test
+    public void structOfArrays() {
+        QueryArena arena = new QueryArena();
+        int root = parse(arena, "a:1 AND -b:c* x>3");
+        Assert.assertEquals(QueryArena.STATEMENT, arena.kind(root));
+        Assert.assertEquals(2, arena.childCount(root));
+        int and = arena.child(root, 0);
+        Assert.assertEquals(QueryArena.AND, arena.kind(and));
+        Assert.assertEquals("a", arena.key(arena.left(and)).toString());
+        Assert.assertEquals("1", arena.text(arena.left(and)).toString());
+        Assert.assertEquals(QueryArena.WILDCARD, arena.kind(arena.right(and)));
+        Assert.assertTrue(arena.isNeg(arena.right(and)));
+        int comparison = arena.child(root, 1);
+        Assert.assertEquals(Parser.BinaryComparision.Operator.HT, arena.operator(comparison));
+        Assert.assertEquals("3", arena.text(arena.right(comparison)).toString());
+        Assert.assertEquals(-1, parse(arena, ""));
+        Assert.assertNull(arena.node(-1));
+    }
+
+    @Test
+    public void viewsMatchTree() {
+        QueryGenerator generator = new QueryGenerator(41);
+        QueryArena arena = new QueryArena();
+        List<String> queries = new ArrayList<>();
+        List<Integer> roots = new ArrayList<>();
+        for (int q = 0; q < 500; q++) {
+            queries.add(generator.userQuery());
+            roots.add(parse(arena, queries.get(q)));
+        }
+        List<Map<String, String>> records = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            records.add(generator.record());
+            texts.add(generator.text(5));
+        }
+        for (int q = 0; q < queries.size(); q++) {
+            Parser.Node tree = EvaluatorTest.parse(queries.get(q));
+            Parser.Node view = arena.node(roots.get(q));
+            Assert.assertEquals(queries.get(q), Parser.toPolishNotation(tree), Parser.toPolishNotation(view));
+            Assert.assertEquals(Canonicalizer.canonicalForm(tree), Canonicalizer.canonicalForm(view));
+            Assert.assertEquals(view, arena.node(roots.get(q)));
+            Assert.assertEquals(queries.get(q), tree, view);
+            Assert.assertEquals(queries.get(q), view, tree);
+            Assert.assertEquals(queries.get(q), tree.hashCode(), view.hashCode());
+            Evaluator expected = new Evaluator(tree);
+            Evaluator actual = new Evaluator(view);
+            for (int i = 0; i < records.size(); i++) {
+                Assert.assertEquals(expected.matches(records.get(i), texts.get(i)), actual.matches(records.get(i), texts.get(i)));
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package eu.cinik.colonqueryparser;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Deterministic generator of synthetic queries and records used by tests and benchmarks.
+ * The same seed always produces the same sequence of queries.
+ */
+public class QueryGenerator {
+    static final String[] KEYS = {"tenant", "status", "region", "level", "service", "env", "priority", "user", "sku", "host"};
+    static final String[] VALUES = {"open", "closed", "deleted", "eu", "us", "api", "web", "dev", "prod", "42", "7", "3", "warn", "error"};
+    static final String[] WORDS = {"timeout", "failed", "user", "login", "payment", "retry", "disk", "latency", "cache", "queue"};
+
+    private final Random random;
+
+    public QueryGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generates a query which consists of given number of top-level terms.
+     * Terms are key values (optionally negated), free text, quoted strings with escapes, comparisons,
+     * AND/OR expressions and bracketed sub-statements.
+     *
+     * @param terms number of top-level terms
+     * @return query text
+     */
+    public String query(int terms) {
+        StringBuilder b = new StringBuilder(terms * 16);
+        for (int i = 0; i < terms; i++) {
+            if (i > 0) b.append(' ');
+            term(b);
+        }
+        return b.toString();
+    }
+
+    /**
+     * Generates a short query similar to those typed by users, like {@code tenant:42 -status:deleted timeout}
+     *
+     * @return query text
+     */
+    public String userQuery() {
+        return query(1 + random.nextInt(4));
+    }
+
+    /**
+     * Generates a record whose keys and values are drawn from the same vocabulary as queries
+     *
+     * @return record
+     */
+    public Map<String, String> record() {
+        Map<String, String> record = new HashMap<>();
+        for (String key : KEYS) {
+            if (random.nextInt(4) != 0) record.put(key, pick(VALUES));
+        }
+        return record;
+    }
+
+    /**
+     * Generates free text for matching {@link Parser.Text} terms
+     *
+     * @param words number of words
+     * @return text
+     */
+    public String text(int words) {
+        StringBuilder b = new StringBuilder(words * 8);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) b.append(' ');
+            b.append(pick(WORDS));
+        }
+        return b.toString();
+    }
+
+    private void term(StringBuilder b) {
+        int kind = random.nextInt(10);
+        switch (kind) {
+            case 0:
+            case 1:
+            case 2:
+                keyValue(b);
+                break;
+            case 3:
+                b.append('-');
+                keyValue(b);
+                break;
+            case 4:
+                b.append(pick(WORDS));
+                break;
+            case 5:
+                b.append("\"").append(pick(WORDS)).append(" \\\"").append(pick(WORDS)).append("\\\"\"");
+                break;
+            case 6:
+                b.append(pick(KEYS)).append(random.nextBoolean() ? '>' : '<').append(random.nextInt(10));
+                break;
+            case 7:
+                keyValue(b);
+                b.append(" AND ");
+                keyValue(b);
+                break;
+            case 8:
+                keyValue(b);
+                b.append(" OR ");
+                keyValue(b);
+                break;
+            default:
+                b.append('(');
+                keyValue(b);
+                b.append(" OR -");
+                keyValue(b);
+                b.append(')');
+        }
+    }
+
+    private void keyValue(StringBuilder b) {
+        b.append(pick(KEYS)).append(':').append(pick(VALUES));
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,69 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class RankedIndexTest {
+
+    @Test
+    public void ranksByBm25() {
+        RankedIndex index = new RankedIndex.Builder()
+                .add(EvaluatorTest.record("status", "open"), "disk failed")
+                .add(EvaluatorTest.record("status", "open"), "disk failed disk failed disk")
+                .add(EvaluatorTest.record("status", "closed"), "disk disk disk disk")
+                .add(EvaluatorTest.record("status", "open"), "login retry")
+                .build();
+        List<RankedIndex.Hit> hits = index.search(EvaluatorTest.parse("disk status:open"), 10);
+        Assert.assertEquals(2, hits.size());
+        Assert.assertEquals(1, hits.get(0).getId());
+        Assert.assertEquals(0, hits.get(1).getId());
+        Assert.assertTrue(hits.get(0).getScore() > hits.get(1).getScore());
+        Assert.assertEquals(1, index.search(EvaluatorTest.parse("status:open"), 1).size());
+        Assert.assertEquals(4, index.search(EvaluatorTest.parse("\"disk failed\" OR retry"), 10).size());
+    }
+
+    @Test
+    public void sameTopKAsScoringEverything() {
+        QueryGenerator generator = new QueryGenerator(39);
+        RankedIndex.Builder builder = new RankedIndex.Builder();
+        List<Map<String, String>> records = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            records.add(generator.record());
+            texts.add(generator.text(3 + i % 20));
+            builder.add(records.get(i), texts.get(i));
+        }
+        RankedIndex index = builder.build();
+        String[] queries = {"timeout", "timeout latency", "disk OR queue", "payment status:open", "(retry OR login) level>5",
+                "cache queue -region:eu"};
+        for (String query : queries) {
+            Parser.Node node = EvaluatorTest.parse(query);
+            List<String> words = new ArrayList<>();
+            for (String word : query.split(" ")) {
+                if (!word.contains(":") && !word.contains(">") && !word.equals("OR")) {
+                    words.add(word.replace("(", "").replace(")", ""));
+                }
+            }
+            Evaluator evaluator = new Evaluator(EvaluatorTest.parse(query.replace("(retry OR login) ", "")
+                    .replace("disk OR queue", "").replace("timeout", "").replace("latency", "")
+                    .replace("payment", "").replace("cache queue", "")));
+            List<Double> expected = new ArrayList<>();
+            for (int id = 0; id < records.size(); id++) {
+                double score = index.score(id, words);
+                if (score > 0 && evaluator.matches(records.get(id), texts.get(id))) expected.add(score);
+            }
+            expected.sort(Collections.reverseOrder());
+            List<RankedIndex.Hit> hits = index.search(node, 20);
+            Assert.assertEquals(query, Math.min(20, expected.size()), hits.size());
+            for (int i = 0; i < hits.size(); i++) {
+                Assert.assertEquals(query, expected.get(i), hits.get(i).getScore(), 1e-9);
+                Assert.assertEquals(hits.get(i).getScore(), index.score(hits.get(i).getId(), words), 1e-9);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class RecordEvaluatorTest {
+    private static final PojoAccessor<PojoAccessorTest.Event> ACCESSOR = new PojoAccessor<>(PojoAccessorTest.Event.class);
+
+    private static PojoAccessorTest.Event event(String status, long level, double load, String city) {
+        return new PojoAccessorTest.Event(status, level, load, level % 2 == 0,
+                city == null ? null : new PojoAccessorTest.Address(city, (int) level * 100));
+    }
+
+    private static Map<String, String> map(PojoAccessorTest.Event event) {
+        Map<String, String> data = new HashMap<>();
+        data.put("status", event.getStatus());
+        data.put("level", Long.toString(event.level()));
+        data.put("load", Double.toString(event.getLoad()));
+        data.put("urgent", Boolean.toString(event.isUrgent()));
+        if (event.getAddress() != null) {
+            data.put("address.city", event.getAddress().city);
+            data.put("address.zip", Integer.toString(event.getAddress().zip));
+        }
+        return data;
+    }
+
+    @Test
+    public void matchesLikeMapEvaluator() {
+        List<PojoAccessorTest.Event> events = new ArrayList<>();
+        String[] statuses = {"open", "closed", "new"};
+        String[] cities = {"Brno", "Praha", null};
+        for (int i = 0; i < 30; i++) {
+            events.add(event(statuses[i % 3], i - 5, i * 0.25, cities[i % 3 == 0 ? 2 : i % 2]));
+        }
+        String[] queries = {
+                "status:open level>3", "-status:open OR level<0", "level:7", "level:07", "level:+7", "-level:x",
+                "load:1.5", "load>2.5 AND load<4", "load=1", "level>b", "status>n", "address.city:Br*",
+                "-address.city:Brno", "address.zip>1000 OR urgent:true", "(status:new OR status:closed) -level:3",
+                "level=-2", "level<abc"
+        };
+        for (String query : queries) {
+            Parser.Node node = EvaluatorTest.parse(query);
+            Evaluator expected = new Evaluator(node);
+            RecordEvaluator<PojoAccessorTest.Event> actual = new RecordEvaluator<>(node, ACCESSOR);
+            RecordEvaluator<Map<String, String>> onMap = new RecordEvaluator<>(node, RecordAccessor.map());
+            for (PojoAccessorTest.Event event : events) {
+                Map<String, String> data = map(event);
+                boolean matches = expected.matches(data, "some text");
+                Assert.assertEquals(query, matches, actual.matches(event, "some text"));
+                Assert.assertEquals(query, matches, onMap.matches(data, "some text"));
+            }
+        }
+    }
+
+    @Test
+    public void text() {
+        RecordEvaluator<PojoAccessorTest.Event> evaluator = new RecordEvaluator<>(EvaluatorTest.parse("disk fail*"), ACCESSOR);
+        Assert.assertTrue(evaluator.matches(event("open", 1, 0, null), "disk failed"));
+        Assert.assertFalse(evaluator.matches(event("open", 1, 0, null), "disk ok"));
+        Assert.assertFalse(evaluator.matches(event("open", 1, 0, null), null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownKeyFails() {
+        new RecordEvaluator<>(EvaluatorTest.parse("status:open owner:bob"), ACCESSOR);
+    }
+
+    @Test
+    public void unknownKeyAbsent() {
+        PojoAccessorTest.Event event = event("open", 1, 0, null);
+        Assert.assertFalse(new RecordEvaluator<>(EvaluatorTest.parse("owner:bob"), ACCESSOR,
+                RecordEvaluator.UnknownKeys.ABSENT).matches(event, null));
+        Assert.assertTrue(new RecordEvaluator<>(EvaluatorTest.parse("status:open -owner:bob"), ACCESSOR,
+                RecordEvaluator.UnknownKeys.ABSENT).matches(event, null));
+        Assert.assertFalse(new RecordEvaluator<>(EvaluatorTest.parse("owner>a"), ACCESSOR,
+                RecordEvaluator.UnknownKeys.ABSENT).matches(event, null));
+        Assert.assertTrue(new RecordEvaluator<>(EvaluatorTest.parse("-owner:b*"), ACCESSOR,
+                RecordEvaluator.UnknownKeys.ABSENT).matches(event, null));
+    }
+}
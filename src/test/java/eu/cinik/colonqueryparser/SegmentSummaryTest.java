@@ -0,0 +1,68 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class SegmentSummaryTest {
+
+    private static SegmentSummary segment(int tenant, int records) {
+        SegmentSummary.Builder builder = new SegmentSummary.Builder();
+        for (int i = 0; i < records; i++) {
+            builder.add(EvaluatorTest.record("tenant", Integer.toString(tenant), "priority", Integer.toString(tenant + i % 5),
+                    "status", i % 2 == 0 ? "open" : "closed"), "request from tenant" + tenant + " timed out");
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void selectiveQueriesSkipSegments() {
+        List<SegmentSummary> segments = new ArrayList<>();
+        for (int t = 0; t < 100; t++) segments.add(segment(t * 10, 100));
+        String[] queries = {"tenant:70", "tenant:70 status:open", "priority>985", "priority<5", "(tenant:10 OR tenant:20)",
+                "tenant70", "tenant:77*", "priority:12"};
+        for (String query : queries) {
+            Parser.Node node = EvaluatorTest.parse(query);
+            int opened = 0;
+            for (SegmentSummary s : segments) if (s.mayMatch(node)) opened++;
+            Assert.assertTrue(query + " opened " + opened, opened <= 10);
+            Assert.assertTrue(query, opened >= 1);
+        }
+    }
+
+    @Test
+    public void negation() {
+        SegmentSummary s = segment(1, 10);
+        Assert.assertFalse(s.mayMatch(EvaluatorTest.parse("-tenant:1")));
+        Assert.assertTrue(s.mayMatch(EvaluatorTest.parse("-status:open")));
+        Assert.assertTrue(s.mayMatch(EvaluatorTest.parse("-missing:x")));
+        Assert.assertFalse(s.mayMatch(EvaluatorTest.parse("missing:x")));
+        Assert.assertFalse(new SegmentSummary.Builder().build().mayMatch(null));
+    }
+
+    @Test
+    public void neverSkipsMatchingSegment() {
+        QueryGenerator generator = new QueryGenerator(37);
+        for (int segment = 0; segment < 20; segment++) {
+            List<Map<String, String>> records = new ArrayList<>();
+            List<String> texts = new ArrayList<>();
+            SegmentSummary.Builder builder = new SegmentSummary.Builder();
+            for (int i = 0; i < 20; i++) {
+                records.add(generator.record());
+                texts.add(generator.text(4));
+                builder.add(records.get(i), texts.get(i));
+            }
+            SegmentSummary summary = builder.build();
+            for (int q = 0; q < 100; q++) {
+                Parser.Node node = EvaluatorTest.parse(generator.query(1 + q % 3));
+                Evaluator evaluator = new Evaluator(node);
+                boolean any = false;
+                for (int i = 0; i < records.size(); i++) any |= evaluator.matches(records.get(i), texts.get(i));
+                if (any) Assert.assertTrue(node.toString(), summary.mayMatch(node));
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.*;
+import java.util.*;
+
+public class SqlTranslatorTest {
+    private static Connection connection;
+    private static final SqlTranslator translator;
+
+    static {
+        Map<String, String> columns = new HashMap<>();
+        columns.put("status", "status");
+        columns.put("region", "region");
+        columns.put("level", "lvl");
+        translator = new SqlTranslator(columns, Collections.singleton("level"), SqlTranslator.like("body"));
+    }
+
+    @BeforeClass
+    public static void createDatabase() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:sqltranslator");
+        try (Statement s = connection.createStatement()) {
+            s.execute("CREATE TABLE events (id INT PRIMARY KEY, status VARCHAR(20), region VARCHAR(20), lvl INT, body VARCHAR(200))");
+            s.execute("INSERT INTO events VALUES (1, 'open', 'eu', 1, 'disk full on host')");
+            s.execute("INSERT INTO events VALUES (2, 'closed', 'eu', 5, 'timeout 100%')");
+            s.execute("INSERT INTO events VALUES (3, 'open', 'us', 10, 'login failed')");
+            s.execute("INSERT INTO events VALUES (4, NULL, 'us', 3, 'payment retry')");
+        }
+    }
+
+    @AfterClass
+    public static void closeDatabase() throws SQLException {
+        connection.close();
+    }
+
+    private static Parser.Node parse(String program) {
+        return EvaluatorTest.parse(program);
+    }
+
+    private List<Integer> select(String program) throws SQLException {
+        SqlTranslator.Sql sql = translator.translate(parse(program));
+        List<Integer> ids = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement("SELECT id FROM events WHERE " + sql.getWhere() + " ORDER BY id")) {
+            sql.bind(ps, 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) ids.add(rs.getInt(1));
+            }
+        }
+        return ids;
+    }
+
+    @Test
+    public void keyValue() throws SQLException {
+        Assert.assertEquals(Arrays.asList(1, 3), select("status:open"));
+        Assert.assertEquals(Arrays.asList(2, 4), select("-status:open"));
+    }
+
+    @Test
+    public void comparison() throws SQLException {
+        Assert.assertEquals(Arrays.asList(2, 3), select("level>3"));
+        Assert.assertEquals(Arrays.asList(1, 4), select("level<5"));
+        Assert.assertEquals(Collections.singletonList(2), select("level:5"));
+    }
+
+    @Test
+    public void valuesOfKeyHaveSameType() {
+        Assert.assertEquals(Arrays.asList(new java.math.BigDecimal("5"), new java.math.BigDecimal("2")),
+                translator.translate(parse("level:5 level>2")).getParameters());
+        Assert.assertEquals(Arrays.asList("m", "5"), translator.translate(parse("status>5 status<m")).getParameters());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void numericKeyRejectsText() {
+        translator.translate(parse("level>high"));
+    }
+
+    @Test
+    public void text() throws SQLException {
+        Assert.assertEquals(Collections.singletonList(3), select("failed"));
+        Assert.assertEquals(Collections.singletonList(2), select("100%"));
+        Assert.assertEquals(Collections.emptyList(), select("\"_\""));
+    }
+
+    @Test
+    public void andOrStatement() throws SQLException {
+        Assert.assertEquals(Collections.singletonList(3), select("status:open region:us"));
+        Assert.assertEquals(Arrays.asList(1, 3), select("status:open AND (region:us OR region:eu)"));
+        Assert.assertEquals(Arrays.asList(1, 2, 3), select("region:eu OR level>5"));
+        Assert.assertEquals(Arrays.asList(1, 2, 3, 4), select(""));
+    }
+
+    @Test
+    public void sameShapeSameSql() {
+        SqlTranslator.Sql a = translator.translate(parse("status:open region:eu level>3"));
+        SqlTranslator.Sql b = translator.translate(parse("region:us status:closed level>7"));
+        Assert.assertEquals("(lvl > ? AND region = ? AND status = ?)", a.getWhere());
+        Assert.assertEquals(a.getWhere(), b.getWhere());
+        Assert.assertEquals(Arrays.asList(new java.math.BigDecimal("3"), "eu", "open"), a.getParameters());
+        assertSameShape("failed status:open", "timeout status:open");
+        assertSameShape("(region:eu OR status:x) (region:us OR level>1)", "(region:zz OR status:x) (region:us OR level>1)");
+        assertSameShape("status:open status:open", "status:open status:closed");
+        Assert.assertEquals(Arrays.asList("open", "closed"),
+                translator.translate(parse("status:open status:closed")).getParameters());
+    }
+
+    private void assertSameShape(String a, String b) {
+        SqlTranslator.Sql sqlA = translator.translate(parse(a));
+        SqlTranslator.Sql sqlB = translator.translate(parse(b));
+        Assert.assertEquals(a + " / " + b, sqlA.getWhere(), sqlB.getWhere());
+        Assert.assertEquals(a + " / " + b, sqlA.getParameters().size(), sqlB.getParameters().size());
+    }
+
+    @Test
+    public void wildcard() throws SQLException {
+        Assert.assertEquals(Arrays.asList(1, 3), select("status:op*"));
+        Assert.assertEquals(Arrays.asList(2, 4), select("-status:*en"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownKey() {
+        translator.translate(parse("password:secret"));
+    }
+}
@@ -0,0 +1,126 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class StandingQueriesTest {
+
+    @Test
+    public void deltas() {
+        StandingQueries views = new StandingQueries();
+        int open = views.register(EvaluatorTest.parse("status:open level>3"));
+        int notDeleted = views.register(EvaluatorTest.parse("-status:deleted"));
+        int disk = views.register(EvaluatorTest.parse("disk"));
+        Assert.assertEquals("[+1:a]", views.upsert("a", EvaluatorTest.record("region", "eu"), null).toString());
+        Assert.assertEquals("[+0:b, +1:b, +2:b]",
+                views.upsert("b", EvaluatorTest.record("status", "open", "level", "5"), "disk failed").toString());
+        Assert.assertEquals("[-0:b]", views.upsert("b", EvaluatorTest.record("status", "open", "level", "2"), "disk failed").toString());
+        Assert.assertEquals("[]", views.upsert("b", EvaluatorTest.record("status", "open", "level", "1"), "disk failed").toString());
+        Assert.assertEquals("[-1:b, -2:b]", views.upsert("b", EvaluatorTest.record("status", "deleted"), null).toString());
+        Assert.assertEquals("[-1:a]", views.delete("a").toString());
+        Assert.assertEquals("[]", views.delete("a").toString());
+        int late = views.register(EvaluatorTest.parse("status:deleted"));
+        StandingQueries.Snapshot snapshot = views.snapshot(open, notDeleted, disk, late);
+        Assert.assertEquals(Collections.emptySet(), snapshot.matches(open));
+        Assert.assertEquals(Collections.singleton("b"), snapshot.matches(late));
+        Assert.assertEquals(6, snapshot.getVersion());
+    }
+
+    @Test
+    public void matchesRecomputation() {
+        QueryGenerator generator = new QueryGenerator(21);
+        StandingQueries views = new StandingQueries();
+        List<Evaluator> evaluators = new ArrayList<>();
+        for (int q = 0; q < 100; q++) {
+            String query = generator.userQuery();
+            views.register(EvaluatorTest.parse(query));
+            evaluators.add(new Evaluator(EvaluatorTest.parse(query)));
+        }
+        Random random = new Random(21);
+        Map<String, Map<String, String>> data = new HashMap<>();
+        Map<String, String> texts = new HashMap<>();
+        List<Set<String>> expected = new ArrayList<>();
+        for (int q = 0; q < evaluators.size(); q++) expected.add(new HashSet<>());
+        for (int op = 0; op < 5_000; op++) {
+            String id = Integer.toString(random.nextInt(200));
+            List<StandingQueries.Delta> deltas;
+            if (random.nextInt(5) == 0) {
+                deltas = views.delete(id);
+                data.remove(id);
+                texts.remove(id);
+            } else {
+                Map<String, String> record = new HashMap<>(data.getOrDefault(id, Collections.emptyMap()));
+                // change a single key most of the time, so only some queries are affected
+                Map<String, String> fresh = generator.record();
+                String key = new ArrayList<>(fresh.keySet().isEmpty() ? Collections.singleton("k") : fresh.keySet()).get(0);
+                if (random.nextBoolean()) record.put(key, fresh.getOrDefault(key, "v"));
+                else record.remove(key);
+                String text = random.nextInt(4) == 0 ? generator.text(3) : texts.get(id);
+                deltas = views.upsert(id, record, text);
+                data.put(id, record);
+                texts.put(id, text);
+            }
+            for (StandingQueries.Delta delta : deltas) {
+                Set<String> set = expected.get(delta.getQuery());
+                Assert.assertTrue(delta.toString(), delta.isEnter() ? set.add(delta.getId()) : set.remove(delta.getId()));
+            }
+        }
+        int[] all = new int[evaluators.size()];
+        for (int q = 0; q < all.length; q++) all[q] = q;
+        StandingQueries.Snapshot snapshot = views.snapshot(all);
+        for (int q = 0; q < evaluators.size(); q++) {
+            Set<String> recomputed = new HashSet<>();
+            for (Map.Entry<String, Map<String, String>> e : data.entrySet()) {
+                if (evaluators.get(q).matches(e.getValue(), texts.get(e.getKey()))) recomputed.add(e.getKey());
+            }
+            Assert.assertEquals(recomputed, expected.get(q));
+            Assert.assertEquals(recomputed, snapshot.matches(q));
+        }
+    }
+
+    @Test
+    public void concurrentUpdatesAndConsistentSnapshots() throws Exception {
+        StandingQueries views = new StandingQueries();
+        int a = views.register(EvaluatorTest.parse("state:a"));
+        int b = views.register(EvaluatorTest.parse("state:b"));
+        int records = 100;
+        for (int i = 0; i < records; i++) views.upsert("r" + i, EvaluatorTest.record("state", "a"), null);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            int thread = t;
+            writers.add(executor.submit(() -> {
+                Random random = new Random(thread);
+                for (int i = 0; i < 20_000; i++) {
+                    // every record is in exactly one of the sets between changes
+                    views.upsert("r" + random.nextInt(records), EvaluatorTest.record("state", random.nextBoolean() ? "a" : "b"), null);
+                }
+            }));
+        }
+        Future<Integer> reader = executor.submit(() -> {
+            int snapshots = 0;
+            while (!stop.get()) {
+                StandingQueries.Snapshot snapshot = views.snapshot(a, b);
+                Assert.assertEquals(records, snapshot.matches(a).size() + snapshot.matches(b).size());
+                snapshots++;
+            }
+            return snapshots;
+        });
+        for (Future<?> writer : writers) writer.get();
+        stop.set(true);
+        Assert.assertTrue(reader.get() > 0);
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        StandingQueries.Snapshot last = views.snapshot(a, b);
+        Assert.assertEquals(records + 60_000, last.getVersion());
+        Assert.assertEquals(records, last.matches(a).size() + last.matches(b).size());
+    }
+}
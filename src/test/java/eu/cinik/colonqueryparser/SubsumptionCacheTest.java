@@ -0,0 +1,72 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+public class SubsumptionCacheTest {
+
+    private static boolean subsumes(String broader, String narrower) {
+        return SubsumptionCache.subsumes(broader == null ? null : EvaluatorTest.parse(broader),
+                narrower == null ? null : EvaluatorTest.parse(narrower));
+    }
+
+    @Test
+    public void containment() {
+        Assert.assertTrue(subsumes("tenant:7", "tenant:7 status:open"));
+        Assert.assertTrue(subsumes("tenant:7 status:open", "status:open AND tenant:7 AND priority>3"));
+        Assert.assertTrue(subsumes("priority>3", "priority>5"));
+        Assert.assertTrue(subsumes("priority<5", "priority<3"));
+        Assert.assertTrue(subsumes("priority>3", "priority:7"));
+        Assert.assertTrue(subsumes("-status:closed", "status:open"));
+        Assert.assertTrue(subsumes("-priority:1", "priority>3"));
+        Assert.assertTrue(subsumes("(status:open OR status:new)", "status:open tenant:7"));
+        Assert.assertTrue(subsumes("region:eu", "(region:eu OR region:eu) tenant:1"));
+        Assert.assertTrue(subsumes("time", "timeout"));
+        Assert.assertTrue(subsumes("name:jo*", "name:john"));
+        Assert.assertTrue(subsumes(null, "tenant:7"));
+
+        Assert.assertFalse(subsumes("tenant:7 status:open", "tenant:7"));
+        Assert.assertFalse(subsumes("priority>5", "priority>3"));
+        Assert.assertFalse(subsumes("priority>3", "priority>10"));
+        Assert.assertFalse(subsumes("status:open", "(status:open OR status:new)"));
+        Assert.assertFalse(subsumes("tenant:7", null));
+    }
+
+    @Test
+    public void refinementsEvaluateCachedMatches() {
+        QueryGenerator generator = new QueryGenerator(38);
+        List<Map<String, String>> records = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) records.add(generator.record());
+        BitSet all = new BitSet();
+        all.set(0, records.size());
+        List<Integer> evaluated = new ArrayList<>();
+        SubsumptionCache cache = new SubsumptionCache(16);
+        String[] steps = {"tenant:7", "tenant:7 status:open", "tenant:7 status:open priority>3", "tenant:7 status:open"};
+        for (String step : steps) {
+            Parser.Node query = EvaluatorTest.parse(step);
+            BitSet result = cache.matches(query, 1, all, (canonical, candidates) -> {
+                evaluated.add(candidates.cardinality());
+                Evaluator evaluator = new Evaluator(canonical);
+                BitSet matches = new BitSet();
+                for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+                    if (evaluator.matches(records.get(id), null)) matches.set(id);
+                }
+                return matches;
+            });
+            Evaluator evaluator = new Evaluator(query);
+            for (int id = 0; id < records.size(); id++) {
+                Assert.assertEquals(evaluator.matches(records.get(id), null), result.get(id));
+            }
+        }
+        Assert.assertEquals(3, evaluated.size());
+        Assert.assertEquals(1000, (int) evaluated.get(0));
+        Assert.assertTrue(evaluated.get(1) < 200);
+        Assert.assertTrue(evaluated.get(2) < evaluated.get(1));
+        Assert.assertEquals(3, cache.size());
+    }
+}
@@ -0,0 +1,60 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class ValueSetTest {
+
+    @Test
+    public void denseIntegersUseBitmap() {
+        ValueSet set = ValueSet.of(Arrays.asList("10", "12", "70", "12"));
+        Assert.assertTrue(set instanceof ValueSet.BitmapValueSet);
+        Assert.assertEquals(3, set.size());
+        Assert.assertTrue(set.contains("10"));
+        Assert.assertTrue(set.contains("70"));
+        Assert.assertFalse(set.contains("11"));
+        Assert.assertFalse(set.contains("012"));
+        Assert.assertFalse(set.contains("+12"));
+        Assert.assertFalse(set.contains("9"));
+        Assert.assertFalse(set.contains("1000000000000000000000"));
+        Assert.assertFalse(set.contains(null));
+    }
+
+    @Test
+    public void otherValuesUseHashTable() {
+        Assert.assertTrue(ValueSet.of(Arrays.asList("1", "01")) instanceof ValueSet.HashValueSet);
+        Assert.assertTrue(ValueSet.of(Arrays.asList("1", "1000000")) instanceof ValueSet.HashValueSet);
+        ValueSet set = ValueSet.of(Arrays.asList("a", "b", "", "Aa", "BB"));
+        Assert.assertEquals(5, set.size());
+        Assert.assertTrue(set.contains(""));
+        Assert.assertTrue(set.contains("Aa"));
+        Assert.assertTrue(set.contains("BB"));
+        Assert.assertFalse(set.contains("c"));
+        Assert.assertFalse(set.contains(null));
+        Assert.assertFalse(ValueSet.of(new ArrayList<>()).contains("a"));
+    }
+
+    @Test
+    public void matchesHashSet() {
+        Random random = new Random(7);
+        for (int round = 0; round < 20; round++) {
+            List<String> values = new ArrayList<>();
+            int bound = round % 2 == 0 ? 500 : 1_000_000;
+            for (int i = 0; i < 200; i++) values.add(Integer.toString(random.nextInt(bound)));
+            Set<String> expected = new HashSet<>(values);
+            ValueSet set = ValueSet.of(values);
+            Assert.assertEquals(expected.size(), set.size());
+            for (int i = 0; i < 2_000; i++) {
+                String value = Integer.toString(random.nextInt(bound));
+                Assert.assertEquals(value, expected.contains(value), set.contains(value));
+            }
+        }
+    }
+}
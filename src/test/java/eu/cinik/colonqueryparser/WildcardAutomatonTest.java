@@ -0,0 +1,48 @@
+package eu.cinik.colonqueryparser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class WildcardAutomatonTest {
+
+    private static boolean matches(String pattern, String input) {
+        return new WildcardAutomaton(Collections.singletonList(pattern)).match(input) != 0;
+    }
+
+    @Test
+    public void singlePattern() {
+        Assert.assertTrue(matches("jo*", "jo"));
+        Assert.assertTrue(matches("jo*", "john"));
+        Assert.assertFalse(matches("jo*", "j"));
+        Assert.assertTrue(matches("*son", "johnson"));
+        Assert.assertFalse(matches("*son", "sonny"));
+        Assert.assertTrue(matches("a*b*c", "aXbYc"));
+        Assert.assertTrue(matches("a**c", "ac"));
+        Assert.assertTrue(matches("*", ""));
+        Assert.assertTrue(matches("żó*", "żółw"));
+    }
+
+    @Test
+    public void mergedPatterns() {
+        WildcardAutomaton a = new WildcardAutomaton(Arrays.asList("jo*", "*son", "x*y"));
+        Assert.assertEquals(3, a.match("johnson"));
+        Assert.assertEquals(2, a.match("mason"));
+        Assert.assertEquals(4, a.match("xy"));
+        Assert.assertEquals(0, a.match("abc"));
+        Assert.assertEquals(3, a.matchWords("  jo  mason "));
+        Assert.assertEquals(5, a.matchWords("jo xzy"));
+    }
+
+    @Test
+    public void noBacktracking() {
+        String pattern = "*a*a*a*a*a*a*a*a*b";
+        WildcardAutomaton a = new WildcardAutomaton(Collections.singletonList(pattern));
+        Assert.assertTrue(a.states() < 64);
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) input.append('a');
+        Assert.assertEquals(0, a.match(input));
+    }
+}